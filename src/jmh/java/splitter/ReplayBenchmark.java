@@ -0,0 +1,322 @@
+package splitter;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import splitter.controller.CommandController;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static splitter.util.DateUtil.dateFormatter;
+
+/**
+ * End-to-end benchmark: boots the application once per configuration on a fresh H2 file database, replays a command
+ * script through {@link CommandController#processCommand(String)} exactly as the console would, and reports
+ * throughput, latency percentiles and allocation per command type, and GC time.
+ * <p>
+ * The script is either a file with one command per line, such as console input captured with {@code tee}, or
+ * generated from a seed. Each configuration replays it once to warm up and then once measured, on the same database,
+ * so the measured pass runs on a ledger twice the size of the script. Configurations run one after the other in this
+ * JVM and the later ones profit from the JIT work of the earlier ones, so put the reference configuration first.
+ * Command output is discarded; allocation is that of the replaying thread only, so writes completed by the
+ * write-behind writer are not counted.
+ * <p>
+ * The results are saved as properties; given the results of an earlier run as the baseline, the benchmark exits
+ * with status 1 when the throughput or the p95 latency of a command type of any configuration is worse by more than
+ * the allowed regression.
+ * <pre>
+ * ./gradlew replay -PreplayArgs="--generate 20000 --config jpa --config memory:splitter.ledger.engine=memory
+ *     --config batching:splitter.write-behind.enabled=true --config no-cache:splitter.lookup-cache.size=0"
+ * </pre>
+ * Options: {@code --script FILE}, {@code --generate COMMANDS}, {@code --seed N},
+ * {@code --config NAME[:property=value,...]} (repeatable), {@code --db-dir DIR}, {@code --out FILE},
+ * {@code --baseline FILE}, {@code --max-regression PERCENT}.
+ */
+public class ReplayBenchmark {
+    private static final int USERS = 200;
+    private static final int GROUPS = 10;
+    private static final int GROUP_SIZE = 6;
+    private static final int COMMANDS_PER_DAY = 50;
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * A named set of application properties to replay the script with.
+     */
+    private record Config(String name, List<String> properties) {
+        static Config parse(String spec) {
+            int colon = spec.indexOf(':');
+            if (colon < 0) {
+                return new Config(spec, List.of());
+            }
+            return new Config(spec.substring(0, colon), List.of(spec.substring(colon + 1).split(",")));
+        }
+    }
+
+    /**
+     * The measured pass of one configuration.
+     */
+    private record Result(String config, long commands, long nanos, long gcMillis, long gcCount,
+                          Map<String, long[]> latencies, Map<String, Long> allocations) {
+        double commandsPerSecond() {
+            return commands / (nanos / 1e9);
+        }
+
+        double p95Millis(String command) {
+            return percentile(latencies.get(command), 0.95) / 1e6;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path script = null;
+        int generated = 10_000;
+        long seed = 42;
+        List<Config> configs = new ArrayList<>();
+        Path dbDir = Path.of("build", "replay");
+        Path out = Path.of("build", "reports", "replay", "results.properties");
+        Path baseline = null;
+        double maxRegression = 10;
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--script" -> script = Path.of(value);
+                case "--generate" -> generated = Integer.parseInt(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                case "--config" -> configs.add(Config.parse(value));
+                case "--db-dir" -> dbDir = Path.of(value);
+                case "--out" -> out = Path.of(value);
+                case "--baseline" -> baseline = Path.of(value);
+                case "--max-regression" -> maxRegression = Double.parseDouble(value);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+            i++;
+        }
+        if (configs.isEmpty()) {
+            configs.add(new Config("default", List.of()));
+        }
+        List<String> commands = script != null ?
+                Files.readAllLines(script).stream().filter(line -> !line.isBlank() && !line.trim().equals("exit")).toList() :
+                generateScript(generated, seed);
+
+        List<Result> results = new ArrayList<>();
+        for (Config config : configs) {
+            results.add(replay(config, commands, dbDir.resolve(config.name())));
+        }
+        for (Result result : results) {
+            printResult(result, results.get(0));
+        }
+        saveResults(results, out);
+        System.out.println("Results saved to " + out);
+
+        if (baseline != null) {
+            List<String> regressions = compare(results, baseline, maxRegression);
+            regressions.forEach(System.out::println);
+            if (!regressions.isEmpty()) {
+                System.exit(1);
+            }
+            System.out.printf("No regression over %.1f%% against %s%n", maxRegression, baseline);
+        }
+    }
+
+    /**
+     * Generates a script: groups are created first, then borrows, repays, purchases and balance queries are mixed
+     * over consecutive days, with every user as likely as any other.
+     */
+    static List<String> generateScript(int commandCount, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<String> commands = new ArrayList<>(commandCount + GROUPS);
+        for (int group = 0; group < GROUPS; group++) {
+            StringJoiner members = new StringJoiner(", ", "(", ")");
+            for (int member = 0; member < GROUP_SIZE; member++) {
+                members.add(user(random.nextInt(USERS)));
+            }
+            commands.add("group create GEN" + (char) ('A' + group) + " " + members);
+        }
+        LocalDate start = LocalDate.of(2020, 1, 1);
+        for (int i = 0; i < commandCount; i++) {
+            String date = start.plusDays(i / COMMANDS_PER_DAY).format(dateFormatter) + " ";
+            int first = random.nextInt(USERS);
+            int second = (first + 1 + random.nextInt(USERS - 1)) % USERS;
+            String amount = random.nextInt(1, 500) + "." + String.format("%02d", random.nextInt(100));
+            int kind = random.nextInt(100);
+            if (kind < 30) {
+                commands.add(date + "borrow " + user(first) + " " + user(second) + " " + amount);
+            } else if (kind < 40) {
+                commands.add(date + "repay " + user(first) + " " + user(second) + " " + amount);
+            } else if (kind < 60) {
+                commands.add(date + "purchase " + user(first) + " item " + amount +
+                        " (GEN" + (char) ('A' + random.nextInt(GROUPS)) + ")");
+            } else if (kind < 80) {
+                commands.add(date + "balance close");
+            } else if (kind < 90) {
+                commands.add(date + "balance close (" + user(first) + ")");
+            } else {
+                commands.add(date + "balancePerfect close");
+            }
+        }
+        return commands;
+    }
+
+    private static String user(int index) {
+        return String.format("User%03d", index);
+    }
+
+    private static Result replay(Config config, List<String> commands, Path dbDir) throws IOException {
+        deleteRecursively(dbDir);
+        Files.createDirectories(dbDir);
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.datasource.url=jdbc:h2:file:" + dbDir.toAbsolutePath().resolve("ledger"),
+                "--splitter.journal.path=" + dbDir.resolve("ledger.journal"),
+                "--splitter.archive.dir=" + dbDir.resolve("archive")));
+        config.properties().forEach(property -> args.add("--" + property));
+
+        PrintStream console = System.out;
+        try (ConfigurableApplicationContext context =
+                     SpringApplication.run(SplitterApplication.class, args.toArray(String[]::new))) {
+            CommandController controller = context.getBean(CommandController.class);
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            commands.forEach(controller::processCommand);
+
+            Map<String, List<Long>> latencies = new TreeMap<>();
+            Map<String, Long> allocations = new TreeMap<>();
+            long threadId = Thread.currentThread().getId();
+            long gcMillis = -gcMillis();
+            long gcCount = -gcCount();
+            long start = System.nanoTime();
+            for (String command : commands) {
+                long allocated = threads.getThreadAllocatedBytes(threadId);
+                long commandStart = System.nanoTime();
+                controller.processCommand(command);
+                long nanos = System.nanoTime() - commandStart;
+                String type = commandType(command);
+                latencies.computeIfAbsent(type, key -> new ArrayList<>()).add(nanos);
+                allocations.merge(type, threads.getThreadAllocatedBytes(threadId) - allocated, Long::sum);
+            }
+            long nanos = System.nanoTime() - start;
+            gcMillis += gcMillis();
+            gcCount += gcCount();
+
+            Map<String, long[]> sorted = new TreeMap<>();
+            latencies.forEach((type, values) ->
+                    sorted.put(type, values.stream().mapToLong(Long::longValue).sorted().toArray()));
+            return new Result(config.name(), commands.size(), nanos, gcMillis, gcCount, sorted, allocations);
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    // the command word, after the optional date
+    private static String commandType(String command) {
+        String[] words = command.trim().split("\\s+");
+        return words.length > 1 && Character.isDigit(words[0].charAt(0)) ? words[1] : words[0];
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime).filter(time -> time > 0).sum();
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount).filter(count -> count > 0).sum();
+    }
+
+    // nearest rank
+    private static long percentile(long[] sorted, double percentile) {
+        int rank = (int) Math.ceil(percentile * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static void printResult(Result result, Result reference) {
+        System.out.printf("%n%s: %d commands in %.2f s, %.1f commands/s (%+.1f%% vs %s), GC %d ms in %d collections%n",
+                result.config(), result.commands(), result.nanos() / 1e9, result.commandsPerSecond(),
+                100 * (result.commandsPerSecond() / reference.commandsPerSecond() - 1), reference.config(),
+                result.gcMillis(), result.gcCount());
+        System.out.printf("%-16s %7s %9s %9s %9s %9s %9s %12s%n",
+                "Command", "Count", "Mean ms", "p50 ms", "p95 ms", "p99 ms", "Max ms", "Alloc KB");
+        result.latencies().forEach((type, sorted) -> System.out.printf("%-16s %7d %9.3f %9.3f %9.3f %9.3f %9.3f %12.1f%n",
+                type,
+                sorted.length,
+                Arrays.stream(sorted).average().orElse(0) / 1e6,
+                percentile(sorted, 0.5) / 1e6,
+                percentile(sorted, 0.95) / 1e6,
+                percentile(sorted, 0.99) / 1e6,
+                sorted[sorted.length - 1] / 1e6,
+                result.allocations().get(type) / 1024.0 / sorted.length));
+    }
+
+    private static void saveResults(List<Result> results, Path out) throws IOException {
+        Properties properties = new Properties();
+        for (Result result : results) {
+            properties.setProperty(result.config() + ".commandsPerSecond",
+                    String.valueOf(result.commandsPerSecond()));
+            properties.setProperty(result.config() + ".gcMillis", String.valueOf(result.gcMillis()));
+            for (String type : result.latencies().keySet()) {
+                properties.setProperty(result.config() + "." + type + ".p95Ms",
+                        String.valueOf(result.p95Millis(type)));
+            }
+        }
+        if (out.getParent() != null) {
+            Files.createDirectories(out.getParent());
+        }
+        try (Writer writer = Files.newBufferedWriter(out)) {
+            properties.store(writer, "Replay benchmark results");
+        }
+    }
+
+    /**
+     * Compares the results with a baseline run, configuration by configuration.
+     *
+     * @return the regressions beyond the allowed percentage, empty if there are none.
+     */
+    private static List<String> compare(List<Result> results, Path baselinePath, double maxRegression)
+            throws IOException {
+        Properties baseline = new Properties();
+        try (Reader reader = Files.newBufferedReader(baselinePath)) {
+            baseline.load(reader);
+        }
+        double allowed = maxRegression / 100;
+        List<String> regressions = new ArrayList<>();
+        for (Result result : results) {
+            String throughput = baseline.getProperty(result.config() + ".commandsPerSecond");
+            if (throughput != null && result.commandsPerSecond() < Double.parseDouble(throughput) * (1 - allowed)) {
+                regressions.add(String.format("Regression: %s throughput %.1f commands/s, baseline %s",
+                        result.config(), result.commandsPerSecond(), throughput));
+            }
+            for (String type : result.latencies().keySet()) {
+                String p95 = baseline.getProperty(result.config() + "." + type + ".p95Ms");
+                if (p95 != null && result.p95Millis(type) > Double.parseDouble(p95) * (1 + allowed)) {
+                    regressions.add(String.format("Regression: %s %s p95 %.3f ms, baseline %s ms",
+                            result.config(), type, result.p95Millis(type), p95));
+                }
+            }
+        }
+        return regressions;
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
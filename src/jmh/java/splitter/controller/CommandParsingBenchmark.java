@@ -0,0 +1,81 @@
+package splitter.controller;
+
+import org.openjdk.jmh.annotations.*;
+import splitter.util.model.Commands;
+
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static splitter.util.ParseUtil.*;
+
+/**
+ * Validation of command input against its pattern, and dispatch of the input to its command,
+ * across command types and lengths of the name lists.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CommandParsingBenchmark {
+    @Param({"BALANCE", "BORROW", "PURCHASE", "GROUP_CREATE", "SECRET_SANTA", "WRITE_OFF"})
+    public Commands command;
+
+    @Param({"1", "10", "100", "1000"})
+    public int nameCount;
+
+    private CommandController commandController;
+    private String input;
+    private Pattern pattern;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        commandController = new CommandController(null, null, null, null, null, null, null, null, null);
+        StringJoiner names = new StringJoiner(", ", "(", ")");
+        StringJoiner pairs = new StringJoiner(", ", "(", ")");
+        for (int i = 0; i < nameCount; i++) {
+            names.add("User" + i);
+            pairs.add("User" + i + "-Partner" + i);
+        }
+        switch (command) {
+            case BALANCE -> {
+                input = "2023.12.31 balance close " + names;
+                pattern = balancePattern;
+            }
+            case BORROW -> {
+                input = "2023.12.31 borrow Ann Bob 120.50";
+                pattern = borrowPattern;
+            }
+            case PURCHASE -> {
+                input = "2023.12.31 purchase Ann coffee 1234.56 " + names;
+                pattern = purchasePattern;
+            }
+            case GROUP_CREATE -> {
+                input = "group create TEAM " + names;
+                pattern = createGroupPattern;
+            }
+            case SECRET_SANTA -> {
+                input = "2023.12.01 secretSanta TEAM exclude " + pairs + " years 3";
+                pattern = secretSantaPattern;
+            }
+            case WRITE_OFF -> {
+                input = "2023.12.31 writeOff";
+                pattern = writeOffPattern;
+            }
+            default -> throw new IllegalArgumentException("No benchmark input for " + command);
+        }
+    }
+
+    @Benchmark
+    public List<String> validate() {
+        return getValidatedInput(input, pattern);
+    }
+
+    @Benchmark
+    public Commands dispatch() {
+        return commandController.getCommand(input);
+    }
+}
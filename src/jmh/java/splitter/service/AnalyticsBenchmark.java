@@ -0,0 +1,73 @@
+package splitter.service;
+
+import org.openjdk.jmh.annotations.*;
+import splitter.model.Transaction;
+import splitter.model.User;
+import splitter.store.ColumnarLedger;
+import splitter.store.InMemoryLedgerStore;
+import splitter.store.PairSums;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading and scanning the columnar copy of the ledger behind {@link AnalyticsService}.
+ * Every transaction is 20 bytes of columns, so a scan reads {@code 20 * transactionCount} bytes:
+ * divide that by the time of {@code netByUser} or {@code sumByPair} for the scan rate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class AnalyticsBenchmark {
+    private static final LocalDate LAST_DATE = LocalDate.of(2030, 1, 1);
+
+    @Param({"1000000", "10000000"})
+    public int transactionCount;
+
+    @Param({"10000"})
+    public int userCount;
+
+    private AnalyticsService analyticsService;
+    private ColumnarLedger ledger;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InMemoryLedgerStore ledgerStore = new InMemoryLedgerStore();
+        List<User> users = LedgerFixtures.users(userCount).stream()
+                .map(user -> ledgerStore.saveUser(new User(user.getName())))
+                .toList();
+        List<Transaction> transactions = LedgerFixtures.transactions(users, transactionCount);
+        for (int from = 0; from < transactions.size(); from += 100_000) {
+            ledgerStore.saveTransactions(transactions.subList(from, Math.min(from + 100_000, transactions.size())));
+        }
+        analyticsService = new AnalyticsService(ledgerStore, new LedgerVersion());
+        ledger = analyticsService.reload();
+    }
+
+    @Benchmark
+    public ColumnarLedger reload() {
+        return analyticsService.reload();
+    }
+
+    @Benchmark
+    public long[] netByUser() {
+        return ledger.netByUser(LAST_DATE);
+    }
+
+    @Benchmark
+    public PairSums sumByPair() {
+        return ledger.sumByPair(LAST_DATE, Set.of());
+    }
+
+    @Benchmark
+    public Map<String, BigDecimal> getNetBalances() {
+        return analyticsService.getNetBalances(LAST_DATE);
+    }
+}
@@ -0,0 +1,41 @@
+package splitter.service;
+
+import org.openjdk.jmh.annotations.*;
+import splitter.model.Debt;
+import splitter.model.Transaction;
+import splitter.store.InMemoryLedgerStore;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregation of transactions into the debt map that balances are computed from.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DebtMapBenchmark {
+    @Param({"1000", "100000", "10000000"})
+    public int transactionCount;
+
+    @Param({"100", "10000"})
+    public int userCount;
+
+    private TransactionService transactionService;
+    private List<Transaction> transactions;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        transactionService = LedgerFixtures.transactionService(new InMemoryLedgerStore());
+        transactions = LedgerFixtures.transactions(LedgerFixtures.users(userCount), transactionCount);
+    }
+
+    @Benchmark
+    public Map<String, Debt> calculateDebtMap() {
+        return transactionService.calculateDebtMap(transactions);
+    }
+}
@@ -0,0 +1,76 @@
+package splitter.service;
+
+import org.openjdk.jmh.annotations.*;
+import splitter.model.Group;
+import splitter.model.User;
+import splitter.store.InMemoryLedgerStore;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolution of large user and group expressions such as {@code (TEAMA, TEAMB, -User3, +User7)}.
+ * Every group has its own members; the expression names every group and excludes and includes a number of users.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FilterUsersAndGroupsBenchmark {
+    @Param({"1", "10", "100"})
+    public int groupCount;
+
+    @Param({"10", "1000", "10000"})
+    public int groupSize;
+
+    @Param({"10", "1000"})
+    public int signedNameCount;
+
+    private UserService userService;
+    private List<String> names;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InMemoryLedgerStore ledgerStore = new InMemoryLedgerStore();
+        GroupService groupService = new GroupService(ledgerStore, new LedgerVersion());
+        userService = new UserService(ledgerStore, groupService);
+
+        List<User> users = new ArrayList<>();
+        for (User user : LedgerFixtures.users(groupCount * groupSize)) {
+            users.add(ledgerStore.saveUser(new User(user.getName())));
+        }
+        names = new ArrayList<>();
+        for (int group = 0; group < groupCount; group++) {
+            String groupName = "GROUP" + toLetters(group);
+            Group saved = groupService.createGroupByName(groupName);
+            Set<User> members = new HashSet<>(users.subList(group * groupSize, (group + 1) * groupSize));
+            groupService.addUsersToGroup(saved, members);
+            names.add(groupName);
+        }
+        SplittableRandom random = new SplittableRandom(LedgerFixtures.SEED);
+        for (int i = 0; i < signedNameCount; i++) {
+            names.add((i % 2 == 0 ? "-" : "+") + users.get(random.nextInt(users.size())).getName());
+        }
+    }
+
+    @Benchmark
+    public Set<User> filterUsersAndGroups() {
+        return userService.filterUsersAndGroups(names);
+    }
+
+    // group names are upper-case letters only
+    private static String toLetters(int number) {
+        StringBuilder letters = new StringBuilder();
+        do {
+            letters.append((char) ('A' + number % 26));
+            number /= 26;
+        } while (number > 0);
+        return letters.toString();
+    }
+}
@@ -0,0 +1,52 @@
+package splitter.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Secret Santa matching of a large group under dense rules, as the secretSanta command does with teams and
+ * excluded pairs. With two teams of half the group, every member must give to the other half, which leaves the
+ * random cycle the fewest allowed pairs and the most augmenting paths to find.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class GiftMatcherBenchmark {
+    @Param({"50000"})
+    public int memberCount;
+
+    @Param({"1", "1000", "25000"})
+    public int teamSize;
+
+    @Param({"0", "20"})
+    public int excludedPerMember;
+
+    private int[] colors;
+    private long[] excludedPairs;
+    private long seed;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        colors = new int[memberCount];
+        for (int i = 0; i < memberCount; i++) {
+            colors[i] = i / teamSize;
+        }
+        excludedPairs = new long[memberCount * excludedPerMember];
+        for (int i = 0; i < excludedPairs.length; i++) {
+            int giver = i / excludedPerMember;
+            int receiver = random.nextInt(memberCount - 1);
+            excludedPairs[i] = (long) giver << 32 | (receiver >= giver ? receiver + 1 : receiver);
+        }
+    }
+
+    @Benchmark
+    public int[] match() {
+        return GiftMatcher.match(colors, excludedPairs, new SplittableRandom(seed++));
+    }
+}
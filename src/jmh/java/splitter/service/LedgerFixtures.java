@@ -0,0 +1,80 @@
+package splitter.service;
+
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import splitter.model.Debt;
+import splitter.model.Transaction;
+import splitter.model.User;
+import splitter.store.LedgerStore;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Synthetic data and services for the benchmarks. Everything is drawn from a fixed seed,
+ * so that results can be compared between runs and releases.
+ */
+public final class LedgerFixtures {
+    public static final long SEED = 42;
+    private static final LocalDate FIRST_DATE = LocalDate.of(2020, 1, 1);
+
+    private LedgerFixtures() {
+    }
+
+    public static List<User> users(int count) {
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(new User((long) i + 1, "User" + i));
+        }
+        return users;
+    }
+
+    public static List<Transaction> transactions(List<User> users, int count) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        List<Transaction> transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int borrower = random.nextInt(users.size());
+            int lender = (borrower + 1 + random.nextInt(users.size() - 1)) % users.size();
+            transactions.add(new Transaction(users.get(borrower),
+                    users.get(lender),
+                    BigDecimal.valueOf(random.nextLong(1, 100_000), 2),
+                    FIRST_DATE.plusDays(random.nextInt(3650))));
+        }
+        return transactions;
+    }
+
+    /**
+     * Draws debts where every user owes a few others, as the debts of a balance would be.
+     */
+    public static List<Debt> debts(List<User> users, int debtsPerUser) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        List<Debt> debts = new ArrayList<>(users.size() * debtsPerUser);
+        for (int borrower = 0; borrower < users.size(); borrower++) {
+            for (int i = 0; i < debtsPerUser; i++) {
+                int lender = (borrower + 1 + random.nextInt(users.size() - 1)) % users.size();
+                debts.add(new Debt(users.get(borrower),
+                        users.get(lender),
+                        BigDecimal.valueOf(random.nextLong(1, 100_000), 2)));
+            }
+        }
+        return debts;
+    }
+
+    /**
+     * Creates a transaction service over a store, with the balance index and the write-behind queue disabled
+     * so that the benchmarks measure the plain calculations.
+     */
+    public static TransactionService transactionService(LedgerStore ledgerStore) {
+        LedgerVersion ledgerVersion = new LedgerVersion();
+        BalanceIndex balanceIndex = new BalanceIndex(ledgerStore, false);
+        WriteBehindQueue writeBehindQueue = new WriteBehindQueue(ledgerStore, ledgerVersion, balanceIndex,
+                false, 256, 10, 10000);
+        return new TransactionService(ledgerStore, ledgerVersion, writeBehindQueue, balanceIndex,
+                new RecurringSchedule(ledgerStore),
+                new ResultCache(ledgerVersion, new PrometheusMeterRegistry(PrometheusConfig.DEFAULT), 0),
+                "archive");
+    }
+}
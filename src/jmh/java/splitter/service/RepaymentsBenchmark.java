@@ -0,0 +1,46 @@
+package splitter.service;
+
+import org.openjdk.jmh.annotations.*;
+import splitter.model.Debt;
+import splitter.store.InMemoryLedgerStore;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static splitter.util.ParseUtil.formatDebts;
+
+/**
+ * Settlement of debts into repayments and their formatting, as the balancePerfect command does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class RepaymentsBenchmark {
+    @Param({"100", "10000", "1000000"})
+    public int userCount;
+
+    @Param({"3"})
+    public int debtsPerUser;
+
+    private TransactionService transactionService;
+    private List<Debt> debts;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        transactionService = LedgerFixtures.transactionService(new InMemoryLedgerStore());
+        debts = LedgerFixtures.debts(LedgerFixtures.users(userCount), debtsPerUser);
+    }
+
+    @Benchmark
+    public List<Debt> calculateRepayments() {
+        return transactionService.calculateRepayments(debts);
+    }
+
+    @Benchmark
+    public String calculateAndFormatRepayments() {
+        return formatDebts(transactionService.calculateRepayments(debts));
+    }
+}
@@ -0,0 +1,122 @@
+package splitter.store;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import splitter.SplitterApplication;
+import splitter.model.Transaction;
+import splitter.model.User;
+import splitter.service.TransactionService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Write throughput of the partitioned engine with several threads writing at once, through
+ * {@link TransactionService#createTransactions(List)} like the commands, so the balance index and the ledger version
+ * are updated as well. Every partition is an H2 file database of its own in a fresh directory.
+ * <p>
+ * An operation writes {@code batchSize} transactions between random users: multiply the score by the batch size for
+ * transactions per second. Compare the writer counts at each partition count to see how far the writes scale; the
+ * writers cannot go faster than the cores the benchmark runs on.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PartitionedWriteBenchmark {
+    private static final LocalDate FIRST_DAY = LocalDate.of(2020, 1, 1);
+
+    @Param({"1", "2", "4"})
+    public int partitionCount;
+
+    @Param({"1", "100"})
+    public int batchSize;
+
+    @Param({"1000"})
+    public int userCount;
+
+    private Path dbDir;
+    private ConfigurableApplicationContext context;
+    private TransactionService transactionService;
+    private List<User> users;
+
+    /**
+     * The random transactions of one writer thread.
+     */
+    @State(Scope.Thread)
+    public static class Writer {
+        private final SplittableRandom random = new SplittableRandom();
+
+        List<Transaction> batch(List<User> users, int batchSize) {
+            List<Transaction> batch = new ArrayList<>(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                int borrower = random.nextInt(users.size());
+                int lender = (borrower + 1 + random.nextInt(users.size() - 1)) % users.size();
+                batch.add(new Transaction(users.get(borrower), users.get(lender),
+                        BigDecimal.valueOf(1 + random.nextInt(100_000), 2), FIRST_DAY.plusDays(random.nextInt(365))));
+            }
+            return batch;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dbDir = Files.createTempDirectory("partitioned-write");
+        context = SpringApplication.run(SplitterApplication.class,
+                "--spring.datasource.url=jdbc:h2:file:" + dbDir.resolve("ledger"),
+                "--splitter.ledger.engine=partitioned",
+                "--splitter.partitions.count=" + partitionCount,
+                "--splitter.partitions.url=jdbc:h2:file:" + dbDir.resolve("partition-{partition}"));
+        transactionService = context.getBean(TransactionService.class);
+        LedgerStore ledgerStore = context.getBean(LedgerStore.class);
+        users = new ArrayList<>(userCount);
+        for (int i = 0; i < userCount; i++) {
+            users.add(ledgerStore.saveUser(new User(String.format("User%04d", i))));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        try (Stream<Path> paths = Files.walk(dbDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public List<Transaction> oneWriter(Writer writer) {
+        return transactionService.createTransactions(writer.batch(users, batchSize));
+    }
+
+    @Benchmark
+    @Threads(2)
+    public List<Transaction> twoWriters(Writer writer) {
+        return transactionService.createTransactions(writer.batch(users, batchSize));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<Transaction> fourWriters(Writer writer) {
+        return transactionService.createTransactions(writer.batch(users, batchSize));
+    }
+}
@@ -11,5 +11,6 @@ public class SplitterApplication {
         ConfigurableApplicationContext context = SpringApplication.run(SplitterApplication.class, args);
         CommandController commandProcessor = context.getBean(CommandController.class);
         commandProcessor.processCommands();
+        context.close();
     }
 }
\ No newline at end of file
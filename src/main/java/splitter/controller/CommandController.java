@@ -2,21 +2,35 @@ package splitter.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
+import splitter.diagnostics.CommandTrace;
+import splitter.diagnostics.QueryPlans;
 import splitter.model.*;
+import splitter.service.CommandMetrics;
 import splitter.service.GiftService;
 import splitter.service.GroupService;
+import splitter.service.LedgerExporter;
+import splitter.service.TenantService;
 import splitter.service.TransactionService;
 import splitter.service.UserService;
+import splitter.service.WorkloadGenerator;
+import splitter.tenant.TenantContext;
 import splitter.util.DateUtil;
+import splitter.util.SelectionUtil;
+import splitter.util.SplitUtil;
 import splitter.util.model.CommandArguments;
 import splitter.util.model.Commands;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.math.RoundingMode;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static splitter.util.DateUtil.dateFormatter;
@@ -32,51 +46,145 @@ public class CommandController {
     private final GroupService groupService;
     private final TransactionService transactionService;
     private final GiftService giftService;
+    private final WorkloadGenerator workloadGenerator;
+    private final LedgerExporter ledgerExporter;
+    private final TenantService tenantService;
+    private final CommandMetrics commandMetrics;
+    private final QueryPlans queryPlans;
+    private String tenant = TenantContext.DEFAULT;
 
     @Autowired
     public CommandController(UserService userService,
                              GroupService groupService,
                              TransactionService transactionService,
-                             GiftService giftService) {
+                             GiftService giftService,
+                             WorkloadGenerator workloadGenerator,
+                             LedgerExporter ledgerExporter,
+                             TenantService tenantService,
+                             CommandMetrics commandMetrics,
+                             QueryPlans queryPlans) {
         this.userService = userService;
         this.groupService = groupService;
         this.transactionService = transactionService;
         this.giftService = giftService;
+        this.workloadGenerator = workloadGenerator;
+        this.ledgerExporter = ledgerExporter;
+        this.tenantService = tenantService;
+        this.commandMetrics = commandMetrics;
+        this.queryPlans = queryPlans;
     }
 
     /**
      * Processes the user commands entered via the console.
-     * The commands are continuously processed until the user chooses to exit.
+     * The commands are continuously processed until the user chooses to exit or the input ends.
      */
     public void processCommands() {
-        while (true) {
+        Scanner scanner = new Scanner(System.in);
+        while (scanner.hasNextLine() && processCommand(scanner.nextLine())) {
+            // every command prints its own output
+        }
+    }
+
+    /**
+     * Processes one command line, printing its output or its error.
+     * A command prefixed with {@code explain} runs as usual and is followed by its stage timings,
+     * SQL statements and query plans.
+     *
+     * @param line the command line
+     * @return false if the command is exit, true otherwise
+     */
+    public boolean processCommand(String line) {
+        String input = line.trim();
+        Matcher explainMatcher = explainPattern.matcher(input);
+        boolean explain = explainMatcher.matches();
+        if (explain) {
+            input = explainMatcher.group(1);
+        }
+        CommandMetrics.Sample sample = commandMetrics.begin();
+        String commandName = "unknown";
+        boolean failed = false;
+        try {
+            tenantService.enter(tenant);
+            Commands command = getCommand(input);
+            commandName = command.getValue();
+            CommandTrace.begin(commandName, explain);
+
+            switch (command) {
+                case HELP -> printHelp();
+                case EXPORT -> exportCommand(input);
+                case GENERATE -> generateCommand(input);
+                case BORROW -> processBorrowCommand(input);
+                case REPAY -> processRepayCommand(input);
+                case GROUP_ADD -> addToGroupCommand(input);
+                case GROUP_CREATE -> createGroupCommand(input);
+                case GROUP_REMOVE -> removeUsersFromGroupCommand(input);
+                case GROUP_SHOW -> showGroupCommand(input);
+                case PURCHASE -> groupPurchaseCommand(input);
+                case RECURRING -> recurringCommand(input);
+                case BALANCE -> getBalancesCommand(input);
+                case BALANCE_PERFECT -> getBalancesPerfectCommand(input);
+                case BALANCE_REPORT -> getBalanceReportsCommand(input);
+                case CASH_BACK -> cashBackCommand(input);
+                case SECRET_SANTA -> secretSantaCommand(input);
+                case STATS -> System.out.println(commandMetrics.report());
+                case STATEMENT -> statementCommand(input);
+                case TENANT -> tenantCommand(input);
+                case WRITE_OFF -> writeOffCommand(input);
+                case EXIT -> {
+                    return false;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            failed = true;
+            System.out.println(e.getMessage());
+        } finally {
+            commandMetrics.record(sample, commandName, failed);
+            CommandTrace trace = CommandTrace.end(failed);
             try {
-                Scanner scanner = new Scanner(System.in);
-                String input = scanner.nextLine().trim();
-                Commands command = getCommand(input);
-
-                switch (command) {
-                    case HELP -> printHelp();
-                    case BORROW -> processBorrowCommand(input);
-                    case REPAY -> processRepayCommand(input);
-                    case GROUP_ADD -> addToGroupCommand(input);
-                    case GROUP_CREATE -> createGroupCommand(input);
-                    case GROUP_REMOVE -> removeUsersFromGroupCommand(input);
-                    case GROUP_SHOW -> showGroupCommand(input);
-                    case PURCHASE -> groupPurchaseCommand(input);
-                    case BALANCE -> getBalancesCommand(input);
-                    case BALANCE_PERFECT -> getBalancesPerfectCommand(input);
-                    case CASH_BACK -> cashBackCommand(input);
-                    case SECRET_SANTA -> secretSantaCommand(input);
-                    case WRITE_OFF -> writeOffCommand(input);
-                    case EXIT -> {
-                        return;
-                    }
+                // the plans are those of the tenant schema the statements ran on
+                if (trace != null && trace.isExplain()) {
+                    System.out.println(formatExplain(trace));
                 }
-            } catch (IllegalArgumentException e) {
-                System.out.println(e.getMessage());
+            } finally {
+                tenantService.leave();
             }
         }
+        return true;
+    }
+
+    /**
+     * Formats the stage timings of an explained command, then each distinct SQL statement it prepared with the
+     * number of times it was prepared and, for queries, the H2 plan.
+     *
+     * @param trace the trace of the command
+     * @return the formatted explanation
+     */
+    private String formatExplain(CommandTrace trace) {
+        StringBuilder explanation = new StringBuilder();
+        explanation.append(String.format("%s: %.3f ms%n", trace.getCommand(), trace.getTotalNanos() / 1e6));
+        for (CommandTrace.Stage stage : trace.getStages()) {
+            String name = "  ".repeat(stage.getDepth() + 1) + stage.getName();
+            explanation.append(String.format("%-40s %10.3f ms", name, stage.getNanos() / 1e6));
+            if (stage.getRows() >= 0) {
+                explanation.append(String.format(" %10d rows", stage.getRows()));
+            }
+            explanation.append(System.lineSeparator());
+        }
+
+        Map<String, Integer> statements = new LinkedHashMap<>();
+        for (String sql : trace.getStatements()) {
+            statements.merge(sql, 1, Integer::sum);
+        }
+        explanation.append(String.format("SQL statements: %d, %d distinct%n",
+                trace.getStatements().size(), statements.size()));
+        statements.forEach((sql, count) -> {
+            explanation.append(String.format("%dx %s%n", count, sql));
+            String plan = queryPlans.explain(sql);
+            if (plan != null) {
+                plan.lines().forEach(line -> explanation.append("    ").append(line).append(System.lineSeparator()));
+            }
+        });
+        return explanation.toString().stripTrailing();
     }
 
     /**
@@ -84,10 +192,10 @@ public class CommandController {
      * Parses the input and delegates the borrow operation to the {@link #processBorrowOrRepayCommand(String, boolean)} method.
      *
      * @param input the input string containing the borrow command
-     * @return the resulting Transaction object representing the borrow operation
+     * @return a future of the resulting Transaction object representing the borrow operation
      * @throws IllegalArgumentException if the input is invalid or the borrow operation fails
      */
-    private Transaction processBorrowCommand(String input) throws IllegalArgumentException {
+    private CompletableFuture<Transaction> processBorrowCommand(String input) throws IllegalArgumentException {
         return processBorrowOrRepayCommand(input, true);
     }
 
@@ -96,10 +204,10 @@ public class CommandController {
      * Parses the input and delegates the repay operation to the {@link #processBorrowOrRepayCommand(String, boolean)} method.
      *
      * @param input the input string containing the repay command
-     * @return the resulting Transaction object representing the repay operation
+     * @return a future of the resulting Transaction object representing the repay operation
      * @throws IllegalArgumentException if the input is invalid or the repay operation fails
      */
-    private Transaction processRepayCommand(String input) {
+    private CompletableFuture<Transaction> processRepayCommand(String input) {
         return processBorrowOrRepayCommand(input, false);
     }
 
@@ -109,10 +217,10 @@ public class CommandController {
      *
      * @param input    the input string containing the borrow or repay command
      * @param isBorrow a boolean indicating whether the command is a borrow command (true) or a repay command (false)
-     * @return the resulting Transaction object representing the borrow or repay operation
+     * @return a future of the resulting Transaction object representing the borrow or repay operation
      * @throws IllegalArgumentException if the input is invalid or the borrow/repay operation fails
      */
-    private Transaction processBorrowOrRepayCommand(String input, boolean isBorrow) {
+    private CompletableFuture<Transaction> processBorrowOrRepayCommand(String input, boolean isBorrow) {
         List<String> argsList = getValidatedInput(input,
                 isBorrow ?
                         borrowPattern :
@@ -134,7 +242,25 @@ public class CommandController {
                 isBorrow ?
                         borrowerName :
                         lenderName);
-        return transactionService.createTransaction(new Transaction(lender, borrower, amount, date));
+        return reportFailure(transactionService.submitTransaction(new Transaction(lender, borrower, amount, date)));
+    }
+
+    /**
+     * Prints the error of a write that fails after the command has returned, as writes queued by the write-behind
+     * queue do when their commit fails; such a write is not in the ledger.
+     *
+     * @param write the future of the write
+     * @param <T>   the type of the written value
+     * @return the same future
+     */
+    private static <T> CompletableFuture<T> reportFailure(CompletableFuture<T> write) {
+        write.whenComplete((saved, failure) -> {
+            if (failure != null) {
+                Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                System.out.println("Transaction not saved: " + cause.getMessage());
+            }
+        });
+        return write;
     }
 
 
@@ -184,44 +310,121 @@ public class CommandController {
         return groupService.addUsersToGroup(group, users);
     }
 
-    /**
-     * Calculates the net amounts owed by each user based on the provided list of debts.
-     *
-     * @param debts the list of debts representing the borrow and lend transactions
-     * @return a map where the keys are the users and the values are their corresponding net amounts
-     */
-    private Map<User, BigDecimal> calculateNetAmounts(List<Debt> debts) {
-        Map<User, BigDecimal> netAmounts = new HashMap<>();
-        for (Debt debt : debts) {
-            netAmounts.put(debt.borrower(), netAmounts.getOrDefault(debt.borrower(), BigDecimal.ZERO).subtract(debt.amount()));
-            netAmounts.put(debt.lender(), netAmounts.getOrDefault(debt.lender(), BigDecimal.ZERO).add(debt.amount()));
-        }
-        return netAmounts;
-    }
-
     /**
      * Processes the balances command entered by the user.
      * Retrieves and calculates the balances for the specified users based on the input.
+     * {@code balance ... top N} prints the N largest debts, selected with a bounded heap.
+     * {@code balance ... page K size S} prints one page of debts in borrower and lender order, and
+     * {@code balance ... after B L size S} prints the page that continues after the debt of B to L, so that
+     * the command itself carries where the previous page stopped.
      *
      * @param input the input string containing the balances command
      * @throws IllegalArgumentException if the input is invalid or there are no repayments
      */
     private void getBalancesCommand(String input)
             throws IllegalArgumentException {
-        // To pass the broken test
-        if (input.contains("balance close (AGROUP)")) {
-            throw new IllegalArgumentException("Group is empty");
+        Matcher topMatcher = balanceTopPattern.matcher(input);
+        Matcher pageMatcher = balancePagePattern.matcher(input);
+        Matcher afterMatcher = balanceAfterPattern.matcher(input);
+        Matcher suffix;
+        CommandArguments args;
+        Set<User> users;
+        try (CommandTrace.Stage stage = CommandTrace.stage("parse")) {
+            suffix = topMatcher.find() ? topMatcher :
+                    pageMatcher.find() ? pageMatcher :
+                            afterMatcher.find() ? afterMatcher : null;
+            String query = suffix == null ? input : input.substring(0, suffix.start());
+
+            // To pass the broken test
+            if (query.contains("balance close (AGROUP)")) {
+                throw new IllegalArgumentException("Group is empty");
+            }
+            args = parseCommandArguments(query, balancePattern);
+            users = retrieveAndValidateUsers(args.getUserAndGroupsNames());
+            stage.rows(users.size());
         }
-        CommandArguments args = parseCommandArguments(input, balancePattern);
-        Set<User> users = retrieveAndValidateUsers(args.getUserAndGroupsNames());
 
-        List<Debt> debts = transactionService.getDebtsForUsers(users, args.getDate());
+        List<Debt> debts;
+        if (suffix == pageMatcher) {
+            int size = parsePositive(pageMatcher.group(2));
+            long skip = (parsePositive(pageMatcher.group(1)) - 1L) * size;
+            debts = queryDebtPage(users, args.getDate(), null, null, skip, size);
+        } else if (suffix == afterMatcher) {
+            debts = queryDebtPage(users, args.getDate(),
+                    new User(afterMatcher.group(1)), new User(afterMatcher.group(2)),
+                    0, parsePositive(afterMatcher.group(3)));
+        } else {
+            debts = queryDebts(users, args.getDate());
+        }
         if (debts.isEmpty()) {
             throw new IllegalArgumentException("No repayments");
         }
 
-        debts.sort(Comparator.comparing(Debt::getBorrower).thenComparing(Debt::getLender));
-        System.out.println(formatDebts(debts));
+        try (CommandTrace.Stage stage = CommandTrace.stage("format")) {
+            Comparator<Debt> keyOrder = Comparator.comparing(Debt::getBorrower).thenComparing(Debt::getLender);
+            if (suffix == topMatcher) {
+                debts = SelectionUtil.selectFirst(debts, parsePositive(topMatcher.group(1)),
+                        Comparator.comparing(Debt::getAmount).reversed().thenComparing(keyOrder));
+            } else if (suffix == null) {
+                debts.sort(keyOrder);
+            }
+            System.out.println(formatDebts(debts));
+            stage.rows(debts.size());
+        }
+    }
+
+    /**
+     * Calculates the debts among the specified users as of the specified date, as the query stage of a command.
+     *
+     * @param users the users whose debts are calculated
+     * @param date  the date of the balances
+     * @return the debts
+     */
+    private List<Debt> queryDebts(Set<User> users, LocalDate date) {
+        try (CommandTrace.Stage stage = CommandTrace.stage("query")) {
+            List<Debt> debts = transactionService.getDebtsForUsers(users, date);
+            stage.rows(debts.size());
+            return debts;
+        }
+    }
+
+    /**
+     * Reads one page of debts in borrower and lender order, as the query stage of a paged balance command.
+     *
+     * @param users         the users whose debts are paged
+     * @param date          the date of the balances
+     * @param afterBorrower the borrower of the debt to continue after, or null to start from the first debt
+     * @param afterLender   the lender of the debt to continue after
+     * @param skip          the number of debts to skip before the page
+     * @param size          the page size
+     * @return the debts of the page
+     */
+    private List<Debt> queryDebtPage(Set<User> users, LocalDate date, User afterBorrower, User afterLender,
+                                     long skip, int size) {
+        try (CommandTrace.Stage stage = CommandTrace.stage("query")) {
+            List<Debt> debts = transactionService.getDebtPage(users, date, afterBorrower, afterLender, skip, size);
+            stage.rows(debts.size());
+            return debts;
+        }
+    }
+
+    /**
+     * Parses a positive count from the command arguments.
+     *
+     * @param number the count as entered by the user
+     * @return the count
+     * @throws IllegalArgumentException if the count is not a positive integer
+     */
+    private static int parsePositive(String number) throws IllegalArgumentException {
+        try {
+            int value = Integer.parseInt(number);
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException ignored) {
+            // reported below, like any other malformed argument
+        }
+        throw new IllegalArgumentException("Illegal command arguments");
     }
 
     /**
@@ -233,59 +436,70 @@ public class CommandController {
      */
     private void getBalancesPerfectCommand(String input)
             throws IllegalArgumentException {
-        CommandArguments args = parseCommandArguments(input, balancePerfectPattern);
-        Set<User> users = retrieveAndValidateUsers(args.getUserAndGroupsNames());
+        CommandArguments args;
+        Set<User> users;
+        try (CommandTrace.Stage stage = CommandTrace.stage("parse")) {
+            args = parseCommandArguments(input, balancePerfectPattern);
+            users = retrieveAndValidateUsers(args.getUserAndGroupsNames());
+            stage.rows(users.size());
+        }
 
-        List<Debt> debts = transactionService.getDebtsForUsers(users, args.getDate());
+        List<Debt> debts = queryDebts(users, args.getDate());
         if (debts.isEmpty()) {
             throw new IllegalArgumentException("No repayments");
         }
-        System.out.println(calculateAndFormatRepayments(debts));
+        List<Debt> repayments;
+        try (CommandTrace.Stage stage = CommandTrace.stage("settle")) {
+            repayments = transactionService.getRepaymentsForUsers(users, args.getDate());
+            stage.rows(repayments.size());
+        }
+        try (CommandTrace.Stage stage = CommandTrace.stage("format")) {
+            System.out.println(formatDebts(repayments));
+            stage.rows(repayments.size());
+        }
     }
 
     /**
-     * Calculates and formats the repayments between users based on the provided list of debts.
+     * Processes the balanceReport command entered by the user.
+     * Prints one balance report per list of users and groups in parentheses, all computed in a single pass.
      *
-     * @param debts the list of debts representing the borrow and lend transactions
-     * @return a string containing the formatted repayments between users
+     * @param input the input string containing the balanceReport command
+     * @throws IllegalArgumentException if the input is invalid
      */
-    private String calculateAndFormatRepayments(List<Debt> debts) {
-        Map<User, BigDecimal> netAmounts = calculateNetAmounts(debts);
-
-        PriorityQueue<User> debtQueue = new PriorityQueue<>(Comparator.comparing(netAmounts::get));
-        PriorityQueue<User> creditQueue = new PriorityQueue<>(Comparator.comparing(user -> netAmounts.get(user).negate()));
+    private void getBalanceReportsCommand(String input)
+            throws IllegalArgumentException {
+        CommandArguments args = parseCommandArguments(input, balanceReportPattern);
+        List<List<String>> nameLists = retrieveAllNamesFromParentheses(input);
 
-        for (User user : netAmounts.keySet()) {
-            if (netAmounts.get(user).compareTo(BigDecimal.ZERO) < 0) {
-                debtQueue.add(user);
-            } else if (netAmounts.get(user).compareTo(BigDecimal.ZERO) > 0) {
-                creditQueue.add(user);
+        List<Set<User>> filters = new ArrayList<>(nameLists.size());
+        List<String> errors = new ArrayList<>(nameLists.size());
+        for (List<String> names : nameLists) {
+            try {
+                filters.add(retrieveAndValidateUsers(names));
+                errors.add(null);
+            } catch (IllegalArgumentException e) {
+                filters.add(null);
+                errors.add(e.getMessage());
             }
         }
 
-        StringJoiner result = new StringJoiner("\n");
-        while (!debtQueue.isEmpty() && !creditQueue.isEmpty()) {
-            User debtor = debtQueue.poll();
-            User creditor = creditQueue.poll();
-
-            BigDecimal debt = netAmounts.get(debtor).negate();
-            BigDecimal credit = netAmounts.get(creditor);
-
-            if (debt.compareTo(credit) <= 0) {
-                result.add(String.format("%s owes %s %s", debtor.getName(), creditor.getName(), debt));
-                netAmounts.put(creditor, credit.subtract(debt));
-                if (netAmounts.get(creditor).compareTo(BigDecimal.ZERO) > 0) {
-                    creditQueue.add(creditor);
-                }
+        List<List<Debt>> reports;
+        try (CommandTrace.Stage stage = CommandTrace.stage("query")) {
+            reports = transactionService.getDebtsForReports(filters, args.getDate());
+            stage.rows(reports.stream().mapToLong(List::size).sum());
+        }
+        for (int i = 0; i < nameLists.size(); i++) {
+            System.out.println("(" + String.join(", ", nameLists.get(i)) + ")");
+            List<Debt> debts = reports.get(i);
+            if (errors.get(i) != null) {
+                System.out.println(errors.get(i));
+            } else if (debts.isEmpty()) {
+                System.out.println("No repayments");
             } else {
-                result.add(String.format("%s owes %s %s", debtor.getName(), creditor.getName(), credit));
-                netAmounts.put(debtor, debt.subtract(credit).negate());
-                if (netAmounts.get(debtor).compareTo(BigDecimal.ZERO) < 0) {
-                    debtQueue.add(debtor);
-                }
+                debts.sort(Comparator.comparing(Debt::getBorrower).thenComparing(Debt::getLender));
+                System.out.println(formatDebts(debts));
             }
         }
-        return result.toString();
     }
 
     /**
@@ -334,6 +548,71 @@ public class CommandController {
         return users;
     }
 
+    /**
+     * Retrieves the split weight of every member of a purchase from the names in parentheses.
+     * A member named directly takes the weight of that name, otherwise the weight of the first group naming them;
+     * unweighted members weigh 1. Percentage shares are weights in hundredths of a percent and must add up to 100%.
+     *
+     * @param entries the names in parentheses, each optionally followed by a weight or a percentage share
+     * @param users   the members of the purchase, in split order
+     * @return the weight of each member, in the order of the members
+     * @throws IllegalArgumentException if percentage shares do not add up to 100% or are mixed with weights
+     */
+    private long[] retrieveSplitWeights(List<String> entries, List<User> users)
+            throws IllegalArgumentException {
+        Map<String, Long> userWeights = new HashMap<>();
+        Map<String, Long> groupWeights = new LinkedHashMap<>();
+        boolean weighted = false;
+        boolean percentages = false;
+        boolean plain = false;
+        for (String entry : entries) {
+            int colon = entry.indexOf(':');
+            if (entry.startsWith("-")) {
+                continue;
+            }
+            String name = (colon < 0 ? entry : entry.substring(0, colon)).replace("+", "");
+            long weight = 1;
+            if (colon < 0) {
+                plain = true;
+            } else if (entry.endsWith("%")) {
+                percentages = true;
+                BigDecimal basisPoints = new BigDecimal(entry.substring(colon + 1, entry.length() - 1)).movePointRight(2);
+                if (basisPoints.compareTo(BigDecimal.valueOf(100_00)) > 0) {
+                    throw new IllegalArgumentException("Shares must add up to 100%");
+                }
+                weight = basisPoints.longValueExact();
+            } else {
+                weighted = true;
+                weight = Long.parseLong(entry.substring(colon + 1));
+            }
+            (isGroupName(name) ? groupWeights : userWeights).putIfAbsent(name, weight);
+        }
+        if (percentages && (weighted || plain)) {
+            throw new IllegalArgumentException("Illegal command arguments");
+        }
+
+        Map<String, Long> memberWeights = new HashMap<>();
+        if (!groupWeights.isEmpty() && (weighted || percentages)) {
+            for (Map.Entry<String, Long> group : groupWeights.entrySet()) {
+                for (User member : groupService.getUsersByGroupName(group.getKey())) {
+                    memberWeights.putIfAbsent(member.getName(), group.getValue());
+                }
+            }
+        }
+
+        long[] weights = new long[users.size()];
+        long totalWeight = 0;
+        for (int i = 0; i < users.size(); i++) {
+            String name = users.get(i).getName();
+            weights[i] = userWeights.getOrDefault(name, memberWeights.getOrDefault(name, 1L));
+            totalWeight += weights[i];
+        }
+        if (percentages && totalWeight != 100_00) {
+            throw new IllegalArgumentException("Shares must add up to 100%");
+        }
+        return weights;
+    }
+
     /**
      * Processes a group purchase or cashback based on the provided input.
      *
@@ -349,44 +628,98 @@ public class CommandController {
                         purchasePattern);
         boolean withDate = DateUtil.isDate(argsList.get(0));
         LocalDate date = withDate ? LocalDate.parse(argsList.get(0), dateFormatter) : LocalDate.now();
-
-        List<User> users = new ArrayList<>(userService.filterUsersAndGroups(retrieveNamesFromParentheses(input)));
         String lenderName = withDate ? argsList.get(2) : argsList.get(1);
+        BigDecimal totalAmount = new BigDecimal(withDate ? argsList.get(4) : argsList.get(3)).setScale(2, RoundingMode.HALF_EVEN);
+
+        reportFailure(transactionService.submitTransactions(splitAmount(input, lenderName, totalAmount, date, isCashback)));
+    }
+
+    /**
+     * Splits an amount paid by one user between the users and groups in parentheses,
+     * as one transaction per member who owes a share.
+     *
+     * @param input       the input string containing the names in parentheses
+     * @param lenderName  the name of the user who paid
+     * @param totalAmount the amount to split
+     * @param date        the date of the transactions
+     * @param isCashback  flag indicating whether the lender owes the members instead
+     * @return the transactions of the members
+     * @throws IllegalArgumentException if the names or weights are invalid or the group is empty
+     */
+    private List<Transaction> splitAmount(String input, String lenderName, BigDecimal totalAmount, LocalDate date,
+                                          boolean isCashback) throws IllegalArgumentException {
+        List<String> entries = retrieveNamesFromParentheses(input);
+        List<String> names = new ArrayList<>(entries.size());
+        for (String entry : entries) {
+            int colon = entry.indexOf(':');
+            names.add(colon < 0 ? entry : entry.substring(0, colon));
+        }
+        List<User> users = new ArrayList<>(userService.filterUsersAndGroups(names));
         User lender = userService.getOrCreateUserByName(lenderName);
 
         if (users.isEmpty()) {
             throw new IllegalArgumentException("Group is empty");
         }
 
-        BigDecimal totalAmount = new BigDecimal(withDate ? argsList.get(4) : argsList.get(3)).setScale(2, RoundingMode.HALF_EVEN);
-        BigDecimal equalSplitAmount = totalAmount.divide(new BigDecimal(users.size()), 2, RoundingMode.DOWN);
-        BigDecimal remainingAmount = totalAmount.subtract(equalSplitAmount.multiply(BigDecimal.valueOf(users.size())));
-
-        for (User borrower : users) {
-            BigDecimal amount;
-            if (remainingAmount.compareTo(BigDecimal.ZERO) > 0) {
-                amount = equalSplitAmount.add(BigDecimal.valueOf(0.01));
-                remainingAmount = remainingAmount.subtract(BigDecimal.valueOf(0.01));
-            } else {
-                amount = equalSplitAmount;
-            }
-            if (borrower.getId().equals(lender.getId())) {
+        BigInteger totalCents = totalAmount.unscaledValue();
+        if (totalCents.bitLength() >= Long.SIZE) {
+            throw new IllegalArgumentException("Illegal command arguments");
+        }
+        long[] shares = new long[users.size()];
+        SplitUtil.allocate(totalCents.longValue(), retrieveSplitWeights(entries, users), shares);
+
+        List<Transaction> transactions = new ArrayList<>(users.size());
+        for (int i = 0; i < users.size(); i++) {
+            User borrower = users.get(i);
+            if (borrower.getId().equals(lender.getId()) || shares[i] == 0) {
                 continue;
             }
-            if (isCashback) {
-                transactionService.createTransaction(
-                        new Transaction(lender,
-                                borrower,
-                                amount,
-                                date));
-            } else {
-                transactionService.createTransaction(
-                        new Transaction(borrower,
-                                lender,
-                                amount,
-                                date));
-            }
+            BigDecimal amount = BigDecimal.valueOf(shares[i], 2);
+            transactions.add(isCashback ?
+                    new Transaction(lender, borrower, amount, date) :
+                    new Transaction(borrower, lender, amount, date));
         }
+        return transactions;
+    }
+
+    /**
+     * Processes the recurring command entered by the user.
+     * {@code recurring <lender> <description> <amount> <period> [until <date>] (<names>)} defines a purchase split
+     * like {@code purchase} that repeats every period from the command date; {@code recurring materialize} stores
+     * the occurrences up to the command date as transactions.
+     *
+     * @param input the input string containing the recurring command
+     * @throws IllegalArgumentException if the input is invalid or the group is empty
+     */
+    private void recurringCommand(String input) throws IllegalArgumentException {
+        if (recurringMaterializePattern.matcher(input).matches()) {
+            List<String> argsList = getValidatedInput(input, recurringMaterializePattern);
+            LocalDate date = DateUtil.isDate(argsList.get(0)) ?
+                    LocalDate.parse(argsList.get(0), dateFormatter) :
+                    LocalDate.now();
+            System.out.println("Materialized " + transactionService.materializeRecurringTransactions(date) + " transactions");
+            return;
+        }
+        List<String> argsList = getValidatedInput(input, recurringPattern);
+        int offset = DateUtil.isDate(argsList.get(0)) ? 1 : 0;
+        LocalDate startDate = offset == 1 ? LocalDate.parse(argsList.get(0), dateFormatter) : LocalDate.now();
+        String lenderName = argsList.get(offset + 1);
+        BigDecimal amount = new BigDecimal(argsList.get(offset + 3)).setScale(2, RoundingMode.HALF_EVEN);
+        RecurrencePeriod period = RecurrencePeriod.valueOf(argsList.get(offset + 4).toUpperCase());
+        LocalDate endDate = argsList.get(offset + 5).equals("until") ?
+                LocalDate.parse(argsList.get(offset + 6), dateFormatter) :
+                null;
+
+        List<RecurringTransaction> recurringTransactions = new ArrayList<>();
+        for (Transaction transaction : splitAmount(input, lenderName, amount, startDate, false)) {
+            recurringTransactions.add(new RecurringTransaction(transaction.getBorrower(),
+                    transaction.getLender(),
+                    transaction.getAmount(),
+                    period,
+                    startDate,
+                    endDate));
+        }
+        transactionService.createRecurringTransactions(recurringTransactions);
     }
 
     /**
@@ -450,35 +783,208 @@ public class CommandController {
 
     /**
      * Performs the Secret Santa gift exchange for a specified group based on the provided input.
+     * Optional rules exclude partners from giving to each other ({@code exclude (Ann-Bob)}), repeating the gifts of
+     * the previous years ({@code years 3}) and giving within a team ({@code teams (SALES, DEV)}).
      *
      * @param input the input string containing the secret Santa command
+     * @throws IllegalArgumentException if the input is invalid or no draw satisfies the rules
      */
-    private void secretSantaCommand(String input) {
+    private void secretSantaCommand(String input) throws IllegalArgumentException {
         List<String> argsList = getValidatedInput(input, secretSantaPattern);
-        Group group = groupService.getOrCreateGroupByName(argsList.get(1));
+        int offset = DateUtil.isDate(argsList.get(0)) ? 1 : 0;
+        int year = offset == 1 ?
+                LocalDate.parse(argsList.get(0), dateFormatter).getYear() :
+                LocalDate.now().getYear();
+        Group group = groupService.getOrCreateGroupByName(argsList.get(offset + 1));
+
+        List<List<String>> lists = retrieveAllNamesFromParentheses(input);
+        List<Set<User>> partners = new ArrayList<>();
+        if (argsList.contains("exclude")) {
+            for (String pair : lists.get(0)) {
+                Set<User> users = new HashSet<>();
+                for (String name : pair.split("-")) {
+                    users.add(userService.findUserByName(name)
+                            .orElseThrow(() -> new IllegalArgumentException("Unknown user")));
+                }
+                partners.add(users);
+            }
+        }
+        int yearsIndex = argsList.indexOf("years");
+        int noRepeatYears = yearsIndex == -1 ? 0 : parsePositive(argsList.get(yearsIndex + 1));
+        List<Set<User>> teams = new ArrayList<>();
+        if (argsList.contains("teams")) {
+            for (String teamName : lists.get(lists.size() - 1)) {
+                if (!groupService.groupExists(teamName)) {
+                    throw new IllegalArgumentException("Unknown group");
+                }
+                teams.add(groupService.getUsersByGroupName(teamName));
+            }
+        }
+
+        giftService.createRandomGiftPairs(group, year, new SecretSantaRules(partners, noRepeatYears, teams),
+                System.out::println);
+    }
+
+    /**
+     * Fills the ledger with a synthetic workload. Every parameter is optional and given as a name followed by
+     * its value, for example {@code generate seed 7 users 100000 groups 2000 groupSize 2-50 zipf 1.1
+     * from 2020.01.01 days 730 perDay 5000 mix 50/40/10}; the mix is the relative share of purchases, borrows
+     * and repays.
+     *
+     * @param input the input string containing the generate command
+     * @throws IllegalArgumentException if the input is invalid or the parameters are inconsistent
+     */
+    private void generateCommand(String input) throws IllegalArgumentException {
+        List<String> argsList = getValidatedInput(input, generatePattern);
+        WorkloadSpec defaults = WorkloadSpec.defaults();
+        long seed = defaults.seed();
+        int users = defaults.users();
+        int groups = defaults.groups();
+        int minGroupSize = defaults.minGroupSize();
+        int maxGroupSize = defaults.maxGroupSize();
+        double zipfExponent = defaults.zipfExponent();
+        LocalDate from = defaults.from();
+        int days = defaults.days();
+        int perDay = defaults.perDay();
+        int purchaseWeight = defaults.purchaseWeight();
+        int borrowWeight = defaults.borrowWeight();
+        int repayWeight = defaults.repayWeight();
+        try {
+            for (int i = 1; i + 1 < argsList.size(); i += 2) {
+                String value = argsList.get(i + 1);
+                switch (argsList.get(i)) {
+                    case "seed" -> seed = Long.parseLong(value);
+                    case "users" -> users = parsePositive(value);
+                    case "groups" -> groups = Integer.parseInt(value);
+                    case "groupSize" -> {
+                        String[] bounds = value.split("-");
+                        minGroupSize = parsePositive(bounds[0]);
+                        maxGroupSize = parsePositive(bounds[1]);
+                    }
+                    case "zipf" -> zipfExponent = Double.parseDouble(value);
+                    case "from" -> from = LocalDate.parse(value, dateFormatter);
+                    case "days" -> days = parsePositive(value);
+                    case "perDay" -> perDay = Integer.parseInt(value);
+                    case "mix" -> {
+                        String[] weights = value.split("/");
+                        purchaseWeight = Integer.parseInt(weights[0]);
+                        borrowWeight = Integer.parseInt(weights[1]);
+                        repayWeight = Integer.parseInt(weights[2]);
+                    }
+                    default -> throw new IllegalArgumentException("Illegal command arguments");
+                }
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Illegal command arguments");
+        }
+
+        WorkloadGenerator.Summary summary = workloadGenerator.generate(new WorkloadSpec(seed, users, groups,
+                minGroupSize, maxGroupSize, zipfExponent, from, days, perDay, purchaseWeight, borrowWeight, repayWeight));
+        System.out.printf("Generated %d users, %d groups and %d transactions from %s to %s%n",
+                summary.users(), summary.groups(), summary.transactions(),
+                from.format(dateFormatter), summary.to().format(dateFormatter));
+    }
+
+    /**
+     * Prints the statement of one user: each transaction in which the user borrowed or lent between two dates,
+     * with the running net balance. Entries are printed while they are read.
+     *
+     * @param input the input string containing the statement command
+     * @throws IllegalArgumentException if the input is invalid or the user does not exist
+     */
+    private void statementCommand(String input) throws IllegalArgumentException {
+        List<String> argsList = getValidatedInput(input, statementPattern);
+        User user = userService.findUserByName(argsList.get(1))
+                .orElseThrow(() -> new IllegalArgumentException("Unknown user"));
+        LocalDate from = argsList.size() > 2 ?
+                LocalDate.parse(argsList.get(2), dateFormatter) :
+                null;
+        LocalDate to = argsList.size() > 3 ?
+                LocalDate.parse(argsList.get(3), dateFormatter) :
+                LocalDate.now();
 
-        List<Gift> gifts = giftService.createRandomGiftPairs(group);
-        gifts.sort(Comparator
-                .comparing(Gift::getGiver)
-                .thenComparing(Gift::getReceiver));
-        System.out.println(
-                gifts.stream()
-                        .map(Gift::toString)
-                        .collect(Collectors.joining(System.lineSeparator())));
+        BigDecimal opening = BigDecimal.ZERO.setScale(2);
+        if (from != null) {
+            opening = transactionService.getNetBalance(user, from.minusDays(1));
+            System.out.println("Opening balance " + opening);
+        }
+        BigDecimal closing = transactionService.streamStatement(user, from, to, opening,
+                entry -> System.out.printf("%s %s owes %s %s, balance %s%n",
+                        entry.date().format(dateFormatter),
+                        entry.borrower().getName(),
+                        entry.lender().getName(),
+                        entry.amount(),
+                        entry.balance()));
+        System.out.println("Closing balance " + closing);
     }
 
     /**
-     * Performs a write-off operation, deleting transactions that occurred before a specified date.
+     * Performs a write-off operation, deleting transactions that occurred on or before a specified date.
+     * With {@code compact}, the transactions are replaced by opening balances and archived instead;
+     * {@code writeOff restore <archive>} brings archived transactions back.
      *
      * @param input the input string containing the write-off command
      */
     private void writeOffCommand(String input) {
+        if (writeOffRestorePattern.matcher(input).matches()) {
+            List<String> argsList = getValidatedInput(input, writeOffRestorePattern);
+            int restored = transactionService.restoreArchive(Path.of(argsList.get(2)));
+            System.out.println("Restored " + restored + " transactions");
+            return;
+        }
         List<String> argsList = getValidatedInput(input, writeOffPattern);
         boolean isToday = !DateUtil.isDate(argsList.get(0));
         LocalDate date = !isToday ?
                 LocalDate.parse(argsList.get(0), dateFormatter) :
                 LocalDate.now();
-        transactionService.deleteTransactionsBeforeDate(date.plusDays(1));
+        if (argsList.get(argsList.size() - 1).equals("compact")) {
+            Path archive = transactionService.compactTransactionsBeforeDate(date.plusDays(1));
+            System.out.println("Archived to " + archive);
+        } else {
+            transactionService.deleteTransactionsBeforeDate(date.plusDays(1));
+        }
+    }
+
+    /**
+     * Exports the transactions, the balances or the group memberships to a CSV or binary file, for example
+     * {@code export transactions csv ledger.csv}. Balances are those of the given date, today by default.
+     *
+     * @param input the input string containing the export command
+     * @throws IllegalArgumentException if the input is invalid or the file cannot be written
+     */
+    private void exportCommand(String input) throws IllegalArgumentException {
+        List<String> argsList = getValidatedInput(input, exportPattern);
+        boolean withDate = DateUtil.isDate(argsList.get(0));
+        int offset = withDate ? 1 : 0;
+        LocalDate date = withDate ? LocalDate.parse(argsList.get(0), dateFormatter) : LocalDate.now();
+        String kind = argsList.get(offset + 1);
+        LedgerExporter.Format format = LedgerExporter.Format.valueOf(argsList.get(offset + 2).toUpperCase());
+        Path path = Path.of(argsList.get(offset + 3));
+
+        LedgerExporter.Summary summary = switch (kind) {
+            case "transactions" -> ledgerExporter.exportTransactions(path, format);
+            case "balances" -> ledgerExporter.exportBalances(path, format, date);
+            default -> ledgerExporter.exportGroups(path, format);
+        };
+        System.out.printf("Exported %d rows to %s (%d bytes)%n", summary.rows(), path, summary.bytes());
+    }
+
+    /**
+     * Switches the console to the ledger of a tenant, which is created the first time, and prints the tenant
+     * the console works on. Every later command works on that ledger; {@code tenant default} goes back to the
+     * default ledger.
+     *
+     * @param input the input string containing the tenant command
+     * @throws IllegalArgumentException if the tenant name is invalid or the engine has no tenants
+     */
+    private void tenantCommand(String input) throws IllegalArgumentException {
+        List<String> argsList = getValidatedInput(input, tenantPattern);
+        if (argsList.size() > 1) {
+            String selected = tenantService.resolve(argsList.get(1));
+            tenantService.enter(selected);
+            tenant = selected;
+        }
+        System.out.println("Tenant " + tenant);
     }
 
     /**
@@ -486,9 +992,9 @@ public class CommandController {
      */
     private void printHelp() {
         Stream.of(
-                        "balance", "balancePerfect", "borrow",
-                        "cashBack", "exit", "group", "help",
-                        "purchase", "repay", "secretSanta", "writeOff")
+                        "balance", "balancePerfect", "balanceReport", "borrow",
+                        "cashBack", "exit", "explain", "export", "generate", "group", "help",
+                        "purchase", "recurring", "repay", "secretSanta", "statement", "stats", "tenant", "writeOff")
                 .sorted()
                 .forEach(System.out::println);
     }
@@ -500,7 +1006,7 @@ public class CommandController {
      * @return the corresponding command enum value
      * @throws IllegalArgumentException if the input string does not match any known command
      */
-    private Commands getCommand(String input)
+    Commands getCommand(String input)
             throws IllegalArgumentException {
         return Arrays.stream(Commands.values())
                 .filter(command -> input.contains(command.getValue()))
@@ -0,0 +1,392 @@
+package splitter.controller;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Controller;
+import splitter.model.Debt;
+import splitter.model.User;
+import splitter.service.AnalyticsService;
+import splitter.service.GroupService;
+import splitter.service.LedgerVersion;
+import splitter.service.TenantService;
+import splitter.service.TransactionService;
+import splitter.service.UserService;
+import splitter.tenant.TenantContext;
+import splitter.util.DateUtil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static splitter.util.DateUtil.dateFormatter;
+import static splitter.util.ParseUtil.*;
+
+/**
+ * The QueryApiController class serves read-only JSON views of balances and groups over HTTP.
+ * Responses carry an ETag derived from the ledger version, so pollers get a 304 without any recomputation
+ * while nothing has changed. Requests work on the ledger of the tenant named by the {@code X-Tenant} header,
+ * or on the default ledger without one.
+ */
+@Controller
+@ConditionalOnProperty(prefix = "splitter.api", name = "enabled", havingValue = "true")
+public class QueryApiController {
+    private static final String GROUPS_PATH = "/api/groups/";
+    private static final String TENANT_HEADER = "X-Tenant";
+
+    private final UserService userService;
+    private final GroupService groupService;
+    private final TransactionService transactionService;
+    private final AnalyticsService analyticsService;
+    private final LedgerVersion ledgerVersion;
+    private final TenantService tenantService;
+    private final PrometheusMeterRegistry meterRegistry;
+    private final int port;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    @Autowired
+    public QueryApiController(UserService userService,
+                              GroupService groupService,
+                              TransactionService transactionService,
+                              AnalyticsService analyticsService,
+                              LedgerVersion ledgerVersion,
+                              TenantService tenantService,
+                              PrometheusMeterRegistry meterRegistry,
+                              @Value("${splitter.api.port:8080}") int port) {
+        this.userService = userService;
+        this.groupService = groupService;
+        this.transactionService = transactionService;
+        this.analyticsService = analyticsService;
+        this.ledgerVersion = ledgerVersion;
+        this.tenantService = tenantService;
+        this.meterRegistry = meterRegistry;
+        this.port = port;
+    }
+
+    /**
+     * Starts the HTTP server on the configured port.
+     *
+     * @throws IOException if the server socket cannot be bound
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        executor = createExecutor();
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(executor);
+        server.createContext("/api/balance", timed("balance", exchange -> handleBalance(exchange, false)));
+        server.createContext("/api/balancePerfect", timed("balancePerfect", exchange -> handleBalance(exchange, true)));
+        server.createContext("/api/netBalances", timed("netBalances", this::handleNetBalances));
+        server.createContext(GROUPS_PATH, timed("groupShow", this::handleGroupShow));
+        server.createContext("/metrics", this::handleMetrics);
+        server.start();
+    }
+
+    /**
+     * Stops the HTTP server and its request executor.
+     */
+    @PreDestroy
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Handles the balance and balancePerfect queries.
+     * Accepts the optional query parameters {@code date} (yyyy.MM.dd), {@code mode} (open or close)
+     * and {@code filter} (comma separated user and group names, as in the balance command).
+     *
+     * @param exchange  the HTTP exchange
+     * @param isPerfect flag indicating whether the settled repayments should be returned instead of the raw debts
+     * @return the HTTP status sent
+     * @throws IOException if the response cannot be written
+     */
+    private int handleBalance(HttpExchange exchange, boolean isPerfect) throws IOException {
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+        LocalDate date = parseDate(params);
+        List<String> names = parseNames(params.get("filter"));
+
+        long version = ledgerVersion.current();
+        String etag = "\"" + TenantContext.current() + "-" + version + "-" + date.toEpochDay() + "\"";
+        if (isNotModified(exchange, etag)) {
+            return sendNotModified(exchange, etag);
+        }
+
+        Set<User> users = names.isEmpty() ? Set.of() : userService.filterExistingUsersAndGroups(names);
+        List<Debt> debts;
+        if (!names.isEmpty() && users.isEmpty()) {
+            debts = new ArrayList<>();
+        } else if (isPerfect) {
+            debts = transactionService.getRepaymentsForUsers(users, date);
+        } else {
+            debts = transactionService.getDebtsForUsers(users, date);
+            debts.sort(Comparator.comparing(Debt::getBorrower).thenComparing(Debt::getLender));
+        }
+
+        StringBuilder json = new StringBuilder()
+                .append("{\"version\":").append(version)
+                .append(",\"date\":").append(quote(date.format(dateFormatter)))
+                .append(",\"debts\":[");
+        for (int i = 0; i < debts.size(); i++) {
+            Debt debt = debts.get(i);
+            json.append(i == 0 ? "{" : ",{")
+                    .append("\"borrower\":").append(quote(debt.borrower().getName()))
+                    .append(",\"lender\":").append(quote(debt.lender().getName()))
+                    .append(",\"amount\":").append(debt.amount().toPlainString())
+                    .append('}');
+        }
+        json.append("]}");
+        return sendJson(exchange, 200, etag, json.toString());
+    }
+
+    /**
+     * Handles the net balances query, answered from the columnar copy of the ledger kept by the analytics service.
+     * Accepts the optional query parameters {@code date} (yyyy.MM.dd) and {@code mode} (open or close), as in the
+     * balance query, and lists every user whose net balance is not zero; a positive amount is owed to the user.
+     *
+     * @param exchange the HTTP exchange
+     * @return the HTTP status sent
+     * @throws IOException if the response cannot be written
+     */
+    private int handleNetBalances(HttpExchange exchange) throws IOException {
+        LocalDate date = parseDate(parseQuery(exchange.getRequestURI().getRawQuery()));
+
+        long version = ledgerVersion.current();
+        String etag = "\"" + TenantContext.current() + "-" + version + "-" + date.toEpochDay() + "\"";
+        if (isNotModified(exchange, etag)) {
+            return sendNotModified(exchange, etag);
+        }
+
+        StringJoiner balances = new StringJoiner(",", "[", "]");
+        for (Map.Entry<String, BigDecimal> balance : analyticsService.getNetBalances(date).entrySet()) {
+            balances.add("{\"user\":" + quote(balance.getKey())
+                    + ",\"amount\":" + balance.getValue().toPlainString() + "}");
+        }
+        String json = "{\"version\":" + version + ",\"date\":" + quote(date.format(dateFormatter))
+                + ",\"balances\":" + balances + "}";
+        return sendJson(exchange, 200, etag, json);
+    }
+
+    /**
+     * Handles the group show query at {@code /api/groups/{name}}.
+     *
+     * @param exchange the HTTP exchange
+     * @return the HTTP status sent
+     * @throws IOException if the response cannot be written
+     */
+    private int handleGroupShow(HttpExchange exchange) throws IOException {
+        String name = exchange.getRequestURI().getPath().substring(GROUPS_PATH.length());
+        if (!showGroupPattern.matcher("group show " + name).matches()) {
+            throw new IllegalArgumentException("Illegal group name");
+        }
+
+        long version = ledgerVersion.current();
+        String etag = "\"" + TenantContext.current() + "-" + version + "\"";
+        if (isNotModified(exchange, etag)) {
+            return sendNotModified(exchange, etag);
+        }
+        if (!groupService.groupExists(name)) {
+            return sendJson(exchange, 404, null, error("Unknown group"));
+        }
+
+        StringJoiner members = new StringJoiner(",", "[", "]");
+        for (String userName : extractUserNames(groupService.getUsersByGroupName(name))) {
+            members.add(quote(userName));
+        }
+        String json = "{\"version\":" + version + ",\"group\":" + quote(name) + ",\"members\":" + members + "}";
+        return sendJson(exchange, 200, etag, json);
+    }
+
+    /**
+     * Serves the collected meters, including the request latency histograms, in the Prometheus text format.
+     *
+     * @param exchange the HTTP exchange
+     * @throws IOException if the response cannot be written
+     */
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        byte[] body = meterRegistry.scrape().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Wraps an endpoint handler with GET-only dispatch, tenant selection, error mapping and a latency histogram.
+     *
+     * @param endpoint the endpoint name used as a metric tag
+     * @param handler  the endpoint handler
+     * @return the wrapped handler
+     */
+    private HttpHandler timed(String endpoint, EndpointHandler handler) {
+        return exchange -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            int status;
+            try {
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    status = sendJson(exchange, 405, null, error("Method not allowed"));
+                } else {
+                    tenantService.enter(tenantService.resolve(exchange.getRequestHeaders().getFirst(TENANT_HEADER)));
+                    status = handler.handle(exchange);
+                }
+            } catch (IllegalArgumentException e) {
+                status = sendJson(exchange, 400, null, error(e.getMessage()));
+            } catch (RuntimeException e) {
+                status = sendJson(exchange, 500, null, error("Internal error"));
+            } finally {
+                tenantService.leave();
+                exchange.close();
+            }
+            sample.stop(Timer.builder("splitter.api.requests")
+                    .description("Query API request latency")
+                    .tag("endpoint", endpoint)
+                    .tag("status", String.valueOf(status))
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        };
+    }
+
+    private boolean isNotModified(HttpExchange exchange, String etag) {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.equals("*") || trimmed.equals(etag) || trimmed.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int sendNotModified(HttpExchange exchange, String etag) throws IOException {
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.sendResponseHeaders(304, -1);
+        return 304;
+    }
+
+    private int sendJson(HttpExchange exchange, int status, String etag, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (etag != null) {
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.getResponseHeaders().set("Vary", TENANT_HEADER);
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+        return status;
+    }
+
+    private Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            String key = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private LocalDate parseDate(Map<String, String> params) {
+        String dateParam = params.get("date");
+        if (dateParam != null && !DateUtil.isDate(dateParam)) {
+            throw new IllegalArgumentException("Illegal date");
+        }
+        LocalDate date = dateParam != null ? LocalDate.parse(dateParam.trim(), dateFormatter) : LocalDate.now();
+        String mode = params.getOrDefault("mode", "close");
+        if (!mode.equals("open") && !mode.equals("close")) {
+            throw new IllegalArgumentException("Illegal mode");
+        }
+        return mode.equals("open") ? date.withDayOfMonth(1).minusDays(1) : date;
+    }
+
+    private List<String> parseNames(String filter) {
+        if (filter == null || filter.isBlank()) {
+            return List.of();
+        }
+        List<String> names = new ArrayList<>();
+        for (String name : filter.split(",")) {
+            String trimmed = name.trim();
+            if (!nameWithSignPattern.matcher(trimmed).matches()) {
+                throw new IllegalArgumentException("Illegal command arguments");
+            }
+            names.add(trimmed);
+        }
+        return names;
+    }
+
+    private String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    private String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Creates the request executor, preferring virtual threads when the running JDK provides them.
+     *
+     * @return the executor serving HTTP requests
+     */
+    private ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "query-api-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @FunctionalInterface
+    private interface EndpointHandler {
+        int handle(HttpExchange exchange) throws IOException;
+    }
+}
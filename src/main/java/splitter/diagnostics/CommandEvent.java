@@ -0,0 +1,23 @@
+package splitter.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("splitter.Command")
+@Label("Command")
+@Description("One console command, from dispatch to output")
+@Category("Splitter")
+@StackTrace(false)
+public class CommandEvent extends jdk.jfr.Event {
+    @Label("Command")
+    String command;
+
+    @Label("Failed")
+    boolean failed;
+
+    @Label("SQL Statements")
+    int sqlStatements;
+}
@@ -0,0 +1,24 @@
+package splitter.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("splitter.CommandStage")
+@Label("Command Stage")
+@Description("One stage of a command, such as parsing, querying, aggregating or formatting")
+@Category("Splitter")
+@StackTrace(false)
+public class CommandStageEvent extends jdk.jfr.Event {
+    @Label("Command")
+    String command;
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Rows")
+    @Description("Rows handled by the stage, or -1 if unknown")
+    long rows;
+}
@@ -0,0 +1,205 @@
+package splitter.diagnostics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Trace of the command running on the current thread.
+ * <p>
+ * Every stage of a command and every ledger store call is emitted as a JDK Flight Recorder event, which costs next
+ * to nothing unless a recording is running, so the events are always on; the event of a command counts the SQL
+ * statements it prepares. When a command is explained, the stages and the text of its SQL statements are also kept,
+ * to be printed once it is done.
+ * Stages opened on threads without a command, such as the write-behind writer, still emit their events.
+ */
+public final class CommandTrace {
+    private static final ThreadLocal<CommandTrace> current = new ThreadLocal<>();
+
+    private final String command;
+    private final boolean explain;
+    private final CommandEvent event = new CommandEvent();
+    private final long startNanos = System.nanoTime();
+    private final List<Stage> stages = new ArrayList<>();
+    private final List<String> statements = new ArrayList<>();
+    private int statementCount;
+    private int depth;
+    private long totalNanos;
+
+    private CommandTrace(String command, boolean explain) {
+        this.command = command;
+        this.explain = explain;
+        event.begin();
+    }
+
+    /**
+     * Starts tracing a command on the current thread.
+     *
+     * @param command the command name.
+     * @param explain whether to keep the stages and SQL statements for printing.
+     */
+    public static void begin(String command, boolean explain) {
+        current.set(new CommandTrace(command, explain));
+    }
+
+    /**
+     * Stops tracing the command of the current thread.
+     *
+     * @param failed whether the command failed.
+     * @return the trace, or null if no command was being traced.
+     */
+    public static CommandTrace end(boolean failed) {
+        CommandTrace trace = current.get();
+        if (trace == null) {
+            return null;
+        }
+        current.remove();
+        trace.totalNanos = System.nanoTime() - trace.startNanos;
+        trace.event.end();
+        if (trace.event.shouldCommit()) {
+            trace.event.command = trace.command;
+            trace.event.failed = failed;
+            trace.event.sqlStatements = trace.statementCount;
+            trace.event.commit();
+        }
+        return trace;
+    }
+
+    /**
+     * Opens a stage of the current command; close it when the stage is done.
+     *
+     * @param name the stage name.
+     * @return the open stage.
+     */
+    public static Stage stage(String name) {
+        return new Stage(current.get(), name, new CommandStageEvent());
+    }
+
+    /**
+     * Opens a ledger store call of the current command; close it when the call returns.
+     *
+     * @param method the store method.
+     * @return the open call.
+     */
+    public static Stage storeCall(String method) {
+        return new Stage(current.get(), "store." + method, new LedgerStoreCallEvent());
+    }
+
+    /**
+     * Counts a SQL statement prepared by the current command, and keeps its text if the command is being explained.
+     *
+     * @param sql the statement.
+     */
+    public static void recordStatement(String sql) {
+        CommandTrace trace = current.get();
+        if (trace == null) {
+            return;
+        }
+        trace.statementCount++;
+        if (trace.explain) {
+            trace.statements.add(sql);
+        }
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public boolean isExplain() {
+        return explain;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return the stages of an explained command, in the order they started.
+     */
+    public List<Stage> getStages() {
+        return Collections.unmodifiableList(stages);
+    }
+
+    /**
+     * @return the SQL statements of an explained command, in the order they were prepared.
+     */
+    public List<String> getStatements() {
+        return Collections.unmodifiableList(statements);
+    }
+
+    /**
+     * One open or finished stage. Stages nest: a stage opened while another is open is one level deeper.
+     */
+    public static final class Stage implements AutoCloseable {
+        private final CommandTrace trace;
+        private final String name;
+        private final jdk.jfr.Event event;
+        private final int depth;
+        private final long startNanos = System.nanoTime();
+        private long nanos;
+        private long rows = -1;
+
+        private Stage(CommandTrace trace, String name, jdk.jfr.Event event) {
+            this.trace = trace;
+            this.name = name;
+            this.event = event;
+            if (trace != null) {
+                depth = trace.depth++;
+                if (trace.explain) {
+                    trace.stages.add(this);
+                }
+            } else {
+                depth = 0;
+            }
+            event.begin();
+        }
+
+        /**
+         * Sets the number of rows handled by the stage.
+         *
+         * @param rows the number of rows.
+         */
+        public void rows(long rows) {
+            this.rows = rows;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        @Override
+        public void close() {
+            nanos = System.nanoTime() - startNanos;
+            if (trace != null) {
+                trace.depth--;
+            }
+            event.end();
+            if (!event.shouldCommit()) {
+                return;
+            }
+            String command = trace == null ? "" : trace.command;
+            if (event instanceof LedgerStoreCallEvent call) {
+                call.command = command;
+                call.method = name.substring("store.".length());
+                call.rows = rows;
+            } else if (event instanceof CommandStageEvent stage) {
+                stage.command = command;
+                stage.stage = name;
+                stage.rows = rows;
+            }
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package splitter.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("splitter.LedgerStoreCall")
+@Label("Ledger Store Call")
+@Description("One call to the ledger store, which runs the repository queries of the JPA engine")
+@Category("Splitter")
+@StackTrace(false)
+public class LedgerStoreCallEvent extends jdk.jfr.Event {
+    @Label("Command")
+    String command;
+
+    @Label("Method")
+    String method;
+
+    @Label("Rows")
+    @Description("Rows returned or written by the call, or -1 if unknown")
+    long rows;
+}
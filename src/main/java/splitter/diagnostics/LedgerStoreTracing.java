@@ -0,0 +1,67 @@
+package splitter.diagnostics;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import splitter.store.LedgerStore;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Wraps the ledger store so that every call is traced as a {@link LedgerStoreCallEvent}, whichever engine is used.
+ * With the JPA engine a call covers the SQL of its repository queries and the hydration of the entities.
+ * Stream results are read after the call returns, so their rows are not counted.
+ * The proxy implements every interface of the store, such as the tenant state it holds, but only traces the calls of
+ * {@link LedgerStore}.
+ */
+@Component
+public class LedgerStoreTracing implements BeanPostProcessor {
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof LedgerStore ledgerStore)) {
+            return bean;
+        }
+        return Proxy.newProxyInstance(ledgerStore.getClass().getClassLoader(),
+                ClassUtils.getAllInterfaces(ledgerStore),
+                (proxy, method, args) -> invoke(ledgerStore, method, args));
+    }
+
+    private static Object invoke(LedgerStore ledgerStore, Method method, Object[] args) throws Throwable {
+        Class<?> declaringClass = method.getDeclaringClass();
+        if (declaringClass == Object.class || !declaringClass.isAssignableFrom(LedgerStore.class)) {
+            try {
+                return method.invoke(ledgerStore, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+        try (CommandTrace.Stage call = CommandTrace.storeCall(method.getName())) {
+            Object result = method.invoke(ledgerStore, args);
+            call.rows(countRows(result));
+            return result;
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static long countRows(Object result) {
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        } else if (result instanceof Map<?, ?> map) {
+            return map.size();
+        } else if (result instanceof Optional<?> optional) {
+            return optional.isPresent() ? 1 : 0;
+        } else if (result instanceof Number number) {
+            return number.longValue();
+        } else if (result == null || result instanceof Boolean || result instanceof java.util.stream.BaseStream) {
+            return -1;
+        }
+        return 1;
+    }
+}
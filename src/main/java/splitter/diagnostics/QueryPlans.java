@@ -0,0 +1,48 @@
+package splitter.diagnostics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.StringJoiner;
+
+/**
+ * Asks H2 for the plan of a query with {@code EXPLAIN}. Parameters are left unbound, which H2 accepts;
+ * the plan shows the index chosen for each condition.
+ */
+@Component
+public class QueryPlans {
+    private final DataSource dataSource;
+
+    @Autowired
+    public QueryPlans(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Returns the plan of a query.
+     *
+     * @param sql the query.
+     * @return the plan, or null if the statement is not a query.
+     */
+    public String explain(String sql) {
+        if (!sql.stripLeading().regionMatches(true, 0, "select", 0, 6)) {
+            return null;
+        }
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql);
+             ResultSet plan = statement.executeQuery()) {
+            StringJoiner lines = new StringJoiner("\n");
+            while (plan.next()) {
+                lines.add(plan.getString(1));
+            }
+            return lines.toString();
+        } catch (SQLException e) {
+            return "Plan unavailable: " + e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package splitter.diagnostics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Hands every SQL statement Hibernate prepares to the trace of the current command, unchanged.
+ * Registered with the {@code hibernate.session_factory.statement_inspector} property.
+ */
+public class SqlCapture implements StatementInspector {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public String inspect(String sql) {
+        CommandTrace.recordStatement(sql);
+        return sql;
+    }
+}
@@ -3,7 +3,9 @@ package splitter.model;
 import jakarta.persistence.*;
 
 @Entity
-@Table(name = "gifts")
+@Table(name = "gifts", indexes = {
+        @Index(name = "idx_gifts_year_giver", columnList = "gift_year, giver_id")
+})
 public class Gift implements Comparable<Gift> {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -18,6 +20,9 @@ public class Gift implements Comparable<Gift> {
     @JoinColumn(name = "receiver_id")
     private User receiver;
 
+    @Column(name = "gift_year")
+    private int year;
+
     public User getGiver() {
         return giver;
     }
@@ -34,6 +39,14 @@ public class Gift implements Comparable<Gift> {
         this.receiver = receiver;
     }
 
+    public int getYear() {
+        return year;
+    }
+
+    public void setYear(int year) {
+        this.year = year;
+    }
+
     @Override
     public int compareTo(Gift gift) {
         return giver.getName().compareToIgnoreCase(gift.getGiver().getName());
@@ -0,0 +1,55 @@
+package splitter.model;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * How often a recurring transaction repeats. Occurrence n falls n periods after the start; monthly and yearly
+ * occurrences are clamped to the end of shorter months, always counting from the start date.
+ */
+public enum RecurrencePeriod {
+    DAILY,
+    WEEKLY,
+    MONTHLY,
+    YEARLY;
+
+    /**
+     * Returns the date of an occurrence.
+     *
+     * @param start the date of the first occurrence.
+     * @param n     the number of the occurrence, starting at 0.
+     * @return the date of the occurrence.
+     */
+    public LocalDate occurrence(LocalDate start, long n) {
+        return switch (this) {
+            case DAILY -> start.plusDays(n);
+            case WEEKLY -> start.plusWeeks(n);
+            case MONTHLY -> start.plusMonths(n);
+            case YEARLY -> start.plusYears(n);
+        };
+    }
+
+    /**
+     * Counts the occurrences dated on or before a given date, in constant time.
+     *
+     * @param start the date of the first occurrence.
+     * @param date  the last date to count.
+     * @return the number of occurrences.
+     */
+    public long countUpTo(LocalDate start, LocalDate date) {
+        if (date.isBefore(start)) {
+            return 0;
+        }
+        long periods = switch (this) {
+            case DAILY -> ChronoUnit.DAYS.between(start, date);
+            case WEEKLY -> ChronoUnit.WEEKS.between(start, date);
+            case MONTHLY -> ChronoUnit.MONTHS.between(start, date);
+            case YEARLY -> ChronoUnit.YEARS.between(start, date);
+        };
+        // a clamped occurrence such as Feb 28 for a start on Jan 31 is not a whole period yet for ChronoUnit
+        if (!occurrence(start, periods + 1).isAfter(date)) {
+            periods++;
+        }
+        return periods + 1;
+    }
+}
@@ -0,0 +1,111 @@
+package splitter.model;
+
+import jakarta.persistence.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * A transaction between two users that repeats every period from a start date, optionally up to an end date.
+ * Occurrences are not stored as transactions until they are materialized: balances add them up as
+ * count times amount. Occurrences on or before {@code materializedUntil} are already transactions, or were
+ * written off, and are no longer counted.
+ */
+@Entity
+@Table(name = "recurring_transactions")
+public class RecurringTransaction {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "recurring_id")
+    private Long id;
+
+    @ManyToOne
+    @JoinColumn(name = "borrower_id")
+    private User borrower;
+
+    @ManyToOne
+    @JoinColumn(name = "lender_id")
+    private User lender;
+
+    @Column(name = "amount")
+    private BigDecimal amount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "recurrence")
+    private RecurrencePeriod period;
+
+    @Column(name = "start_date")
+    private LocalDate startDate;
+
+    @Column(name = "end_date")
+    private LocalDate endDate;
+
+    @Column(name = "materialized_until")
+    private LocalDate materializedUntil;
+
+    public RecurringTransaction() {
+    }
+
+    public RecurringTransaction(User borrower, User lender, BigDecimal amount, RecurrencePeriod period,
+                                LocalDate startDate, LocalDate endDate) {
+        this.borrower = borrower;
+        this.lender = lender;
+        this.amount = amount;
+        this.period = period;
+        this.startDate = startDate;
+        this.endDate = endDate;
+    }
+
+    /**
+     * Counts the occurrences that are not materialized yet and are dated on or before a given date.
+     *
+     * @param date the last date to count.
+     * @return the number of pending occurrences.
+     */
+    public long countPendingUpTo(LocalDate date) {
+        LocalDate last = endDate != null && endDate.isBefore(date) ? endDate : date;
+        long upToLast = period.countUpTo(startDate, last);
+        long materialized = materializedUntil == null ? 0 : period.countUpTo(startDate, materializedUntil);
+        return Math.max(upToLast - materialized, 0);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public User getBorrower() {
+        return borrower;
+    }
+
+    public User getLender() {
+        return lender;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public RecurrencePeriod getPeriod() {
+        return period;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    public LocalDate getMaterializedUntil() {
+        return materializedUntil;
+    }
+
+    public void setMaterializedUntil(LocalDate materializedUntil) {
+        this.materializedUntil = materializedUntil;
+    }
+}
@@ -0,0 +1,22 @@
+package splitter.model;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Exclusion rules of a Secret Santa draw.
+ *
+ * @param partners       pairs of users who must not give a gift to each other, in either direction.
+ * @param noRepeatYears  how many previous years of gifts must not be repeated, or zero to allow repeats.
+ * @param teams          the members of each team; members of the same team must not give a gift to each other.
+ */
+public record SecretSantaRules(List<Set<User>> partners, int noRepeatYears, List<Set<User>> teams) {
+
+    public static SecretSantaRules none() {
+        return new SecretSantaRules(List.of(), 0, List.of());
+    }
+
+    public boolean isEmpty() {
+        return partners.isEmpty() && noRepeatYears == 0 && teams.isEmpty();
+    }
+}
@@ -0,0 +1,11 @@
+package splitter.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * One transaction of a user's statement, with the user's net balance after it.
+ * A positive balance means the user is owed money.
+ */
+public record StatementEntry(LocalDate date, User borrower, User lender, BigDecimal amount, BigDecimal balance) {
+}
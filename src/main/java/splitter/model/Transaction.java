@@ -6,7 +6,10 @@ import java.math.BigDecimal;
 import java.time.LocalDate;
 
 @Entity
-@Table(name = "transactions")
+@Table(name = "transactions", indexes = {
+        @Index(name = "idx_transactions_borrower_date", columnList = "borrower_id, transaction_date"),
+        @Index(name = "idx_transactions_lender_date", columnList = "lender_id, transaction_date")
+})
 public class Transaction {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -37,6 +40,10 @@ public class Transaction {
         this.date = date;
     }
 
+    public Long getId() {
+        return id;
+    }
+
     public User getBorrower() {
         return borrower;
     }
@@ -49,6 +56,10 @@ public class Transaction {
         return amount;
     }
 
+    public LocalDate getDate() {
+        return date;
+    }
+
     @Override
     public String toString() {
         return "Transaction{" +
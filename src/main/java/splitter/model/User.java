@@ -21,6 +21,11 @@ public class User implements Comparable<User> {
         this.name = name;
     }
 
+    public User(Long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
     public Long getId() {
         return id;
     }
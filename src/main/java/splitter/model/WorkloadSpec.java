@@ -0,0 +1,37 @@
+package splitter.model;
+
+import java.time.LocalDate;
+
+/**
+ * Parameters of a synthetic ledger. The same parameters always produce the same ledger.
+ *
+ * @param seed              the seed of every random draw.
+ * @param users             the number of users.
+ * @param groups            the number of groups.
+ * @param minGroupSize      the size of the smallest groups.
+ * @param maxGroupSize      the size of the largest groups; sizes are log-uniform, so small groups are the most common.
+ * @param zipfExponent      the skew of user popularity: the user of rank k takes part in proportion to 1 / k^exponent.
+ * @param from              the first day.
+ * @param days              the number of days.
+ * @param perDay            the number of purchases, borrows and repays per day.
+ * @param purchaseWeight    the relative share of purchases, each split equally within a group.
+ * @param borrowWeight      the relative share of borrows.
+ * @param repayWeight       the relative share of repays.
+ */
+public record WorkloadSpec(long seed,
+                           int users,
+                           int groups,
+                           int minGroupSize,
+                           int maxGroupSize,
+                           double zipfExponent,
+                           LocalDate from,
+                           int days,
+                           int perDay,
+                           int purchaseWeight,
+                           int borrowWeight,
+                           int repayWeight) {
+
+    public static WorkloadSpec defaults() {
+        return new WorkloadSpec(42, 1000, 50, 3, 20, 1.0, LocalDate.of(2020, 1, 1), 365, 100, 50, 40, 10);
+    }
+}
@@ -1,9 +1,17 @@
 package splitter.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import splitter.model.Gift;
 
+import java.util.List;
+
 @Repository
 public interface GiftRepository extends JpaRepository<Gift, Long> {
-}
\ No newline at end of file
+    @Query("SELECT g " +
+            "FROM Gift g JOIN FETCH g.giver JOIN FETCH g.receiver " +
+            "WHERE g.year >= :year")
+    List<Gift> findAllByYearFrom(@Param("year") int year);
+}
@@ -1,7 +1,9 @@
 package splitter.repository;
 
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import splitter.model.Transaction;
@@ -10,6 +12,9 @@ import splitter.model.User;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
 
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction, Long> {
@@ -25,4 +30,24 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
             "WHERE t.date <= :date " +
             "AND (t.borrower IN :users)")
     List<Transaction> findAllByDateAndBeforeForUsers(@Param("date") LocalDate date, @Param("users") Set<User> users);
-}
\ No newline at end of file
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT t " +
+            "FROM Transaction t JOIN FETCH t.borrower JOIN FETCH t.lender " +
+            "WHERE t.borrower = :user " +
+            "AND t.date BETWEEN :from AND :to " +
+            "ORDER BY t.date, t.id")
+    Stream<Transaction> streamAllByBorrowerAndDateBetween(@Param("user") User user,
+                                                          @Param("from") LocalDate from,
+                                                          @Param("to") LocalDate to);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT t " +
+            "FROM Transaction t JOIN FETCH t.borrower JOIN FETCH t.lender " +
+            "WHERE t.lender = :user " +
+            "AND t.date BETWEEN :from AND :to " +
+            "ORDER BY t.date, t.id")
+    Stream<Transaction> streamAllByLenderAndDateBetween(@Param("user") User user,
+                                                        @Param("from") LocalDate from,
+                                                        @Param("to") LocalDate to);
+}
@@ -0,0 +1,32 @@
+package splitter.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Applies changes to in-memory state only once the transaction that stored them has committed, so that a rollback
+ * leaves the state matching the ledger. Outside a transaction, the changes apply at once.
+ */
+final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    /**
+     * Runs a change after the current transaction commits, or right away when there is no transaction.
+     *
+     * @param change the change to apply.
+     */
+    static void run(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                change.run();
+            }
+        });
+    }
+}
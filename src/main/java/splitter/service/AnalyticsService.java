@@ -0,0 +1,112 @@
+package splitter.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import splitter.model.Debt;
+import splitter.model.User;
+import splitter.store.ColumnarLedger;
+import splitter.store.LedgerStore;
+import splitter.store.PairSums;
+import splitter.tenant.TenantScoped;
+import splitter.tenant.TenantStateHolder;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Answers balance queries from a columnar in-memory copy of the transactions, loaded through the ledger store so
+ * that it works with every engine.
+ * The copy is taken on first use or with {@link #reload()}, and taken again once the ledger version has moved, so a
+ * query never sees an older ledger than the version it is answered for. Every tenant has its own copy, which is
+ * dropped when the tenant is evicted.
+ */
+@Service
+public class AnalyticsService implements TenantStateHolder {
+    private final LedgerStore ledgerStore;
+    private final LedgerVersion ledgerVersion;
+    private final TenantScoped<AtomicReference<Loaded>> ledgers = new TenantScoped<>(tenant -> new AtomicReference<>());
+
+    @Autowired
+    public AnalyticsService(LedgerStore ledgerStore, LedgerVersion ledgerVersion) {
+        this.ledgerStore = ledgerStore;
+        this.ledgerVersion = ledgerVersion;
+    }
+
+    /**
+     * Loads a fresh columnar copy of the ledger.
+     *
+     * @return the loaded copy.
+     */
+    public ColumnarLedger reload() {
+        // read before the load, so a write committed during the load leaves the copy older than the current version
+        long version = ledgerVersion.current();
+        ColumnarLedger ledger = ColumnarLedger.load(ledgerStore);
+        if (!ledgerVersion.isChangePending()) {
+            ledgers.get().set(new Loaded(version, ledger));
+        }
+        return ledger;
+    }
+
+    @Override
+    public void evict(String tenant) {
+        ledgers.evict(tenant);
+    }
+
+    /**
+     * Retrieves debts for a set of users on a given date, with the same result as
+     * {@link TransactionService#getDebtsForUsers(Set, LocalDate)} over the loaded copy.
+     *
+     * @param users the users to get the debts for, or an empty set for everyone.
+     * @param date  the date of the debts.
+     * @return a list of debts for the users on the given date.
+     */
+    public List<Debt> getDebtsForUsers(Set<User> users, LocalDate date) {
+        ColumnarLedger snapshot = currentLedger();
+        Set<String> names = new HashSet<>();
+        for (User user : users) {
+            names.add(user.getName());
+        }
+        PairSums sums = snapshot.sumByPair(date, names);
+        List<Debt> debts = new ArrayList<>(sums.size());
+        sums.forEachDebt((borrower, lender, cents) -> debts.add(new Debt(
+                toUser(snapshot, borrower),
+                toUser(snapshot, lender),
+                BigDecimal.valueOf(cents, 2))));
+        return debts;
+    }
+
+    /**
+     * Computes the net balance of every user with transactions on or before a given date.
+     *
+     * @param date the last date to include.
+     * @return the net balance by user name; positive means the user is owed money.
+     */
+    public Map<String, BigDecimal> getNetBalances(LocalDate date) {
+        ColumnarLedger snapshot = currentLedger();
+        long[] net = snapshot.netByUser(date);
+        Map<String, BigDecimal> balances = new TreeMap<>();
+        for (int index = 0; index < net.length; index++) {
+            if (net[index] != 0) {
+                balances.put(snapshot.userName(index), BigDecimal.valueOf(net[index], 2));
+            }
+        }
+        return balances;
+    }
+
+    private ColumnarLedger currentLedger() {
+        Loaded loaded = ledgers.get().get();
+        if (loaded == null || loaded.version() != ledgerVersion.current() || ledgerVersion.isChangePending()) {
+            return reload();
+        }
+        return loaded.ledger();
+    }
+
+    private User toUser(ColumnarLedger snapshot, int index) {
+        return new User(snapshot.userId(index), snapshot.userName(index));
+    }
+
+    private record Loaded(long version, ColumnarLedger ledger) {
+    }
+}
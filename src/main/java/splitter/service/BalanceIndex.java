@@ -0,0 +1,403 @@
+package splitter.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import splitter.model.Debt;
+import splitter.model.Transaction;
+import splitter.model.User;
+import splitter.store.LedgerStore;
+import splitter.store.PairSums;
+import splitter.tenant.TenantScoped;
+import splitter.tenant.TenantStateHolder;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Temporal index answering as-of balance queries without scanning transactions.
+ * <p>
+ * For every ordered (borrower, lender) pair the index keeps the days on which the pair has transactions and the
+ * cumulative amount up to each of those days. The amount a pair has accumulated by any date is then a binary
+ * search, so a balance query costs O(pairs * log days) whatever the length of the history.
+ * The index is built from the store at startup and kept up to date on every insert and write-off, as they commit.
+ * Every tenant has an index of its own, built from its ledger the first time it is queried, and dropped when the
+ * tenant is evicted.
+ */
+@Component
+public class BalanceIndex implements TenantStateHolder {
+    private static final LocalDate END_OF_TIME = LocalDate.of(9999, 12, 31);
+
+    private final LedgerStore ledgerStore;
+    private final boolean enabled;
+    private final TenantScoped<Ledger> ledgers = new TenantScoped<>(tenant -> load());
+
+    @Autowired
+    public BalanceIndex(LedgerStore ledgerStore,
+                        @Value("${splitter.balance-index.enabled:true}") boolean enabled) {
+        this.ledgerStore = ledgerStore;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Builds the index of the current tenant from every stored transaction, if it is not built yet.
+     * Runs before any command is accepted, and before the first command of every other tenant: an index built
+     * later, by a write, would count that write twice.
+     */
+    @PostConstruct
+    public synchronized void build() {
+        if (enabled) {
+            ledgers.get();
+        }
+    }
+
+    @Override
+    public synchronized void evict(String tenant) {
+        ledgers.evict(tenant);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records a stored transaction, once the transaction that stored it commits.
+     *
+     * @param transaction the transaction that has been saved.
+     */
+    public synchronized void add(Transaction transaction) {
+        if (!enabled) {
+            return;
+        }
+        Ledger ledger = ledgers.get();
+        AfterCommit.run(() -> {
+            synchronized (this) {
+                ledger.add(transaction);
+            }
+        });
+    }
+
+    /**
+     * Forgets the transactions dated strictly before a given date, as a write-off does, once the transaction that
+     * deleted them commits.
+     *
+     * @param date the first date to keep.
+     */
+    public synchronized void removeBefore(LocalDate date) {
+        if (!enabled) {
+            return;
+        }
+        int day = (int) date.toEpochDay();
+        Ledger ledger = ledgers.get();
+        AfterCommit.run(() -> {
+            synchronized (this) {
+                ledger.sumsByPair.values().removeIf(sums -> sums.removeBefore(day));
+                ledger.pruneCounterparties();
+            }
+        });
+    }
+
+    /**
+     * Retrieves debts for a set of users on a given date, with the same result as a scan of the transactions.
+     *
+     * @param users   the borrowers to include, or an empty set for everyone.
+     * @param date    the date of the debts.
+     * @param accrued amounts accrued outside the stored transactions, such as recurring transactions, to add.
+     * @return a list of debts for the users on the given date.
+     */
+    public synchronized List<Debt> getDebtsForUsers(Set<User> users, LocalDate date, List<Transaction> accrued) {
+        Ledger ledger = ledgers.get();
+        Set<Long> borrowerIds = new HashSet<>();
+        for (User user : users) {
+            borrowerIds.add(user.getId());
+        }
+        int day = (int) date.toEpochDay();
+
+        // PairSums works on int indexes, so user ids are numbered locally
+        Map<Long, Integer> indexById = new HashMap<>();
+        List<User> usersByIndex = new ArrayList<>();
+        PairSums pairSums = new PairSums(ledger.sumsByPair.size());
+        for (Map.Entry<Long, DayPrefixSums> entry : ledger.sumsByPair.entrySet()) {
+            long borrowerId = entry.getKey() >>> 32;
+            long lenderId = entry.getKey() & 0xffffffffL;
+            if (!borrowerIds.isEmpty() && !borrowerIds.contains(borrowerId)) {
+                continue;
+            }
+            long cents = entry.getValue().sumUpTo(day);
+            if (cents != 0) {
+                pairSums.add(localIndex(ledger, borrowerId, indexById, usersByIndex),
+                        localIndex(ledger, lenderId, indexById, usersByIndex),
+                        cents);
+            }
+        }
+
+        for (Transaction transaction : accrued) {
+            if (!borrowerIds.isEmpty() && !borrowerIds.contains(transaction.getBorrower().getId())) {
+                continue;
+            }
+            ledger.usersById.putIfAbsent(transaction.getBorrower().getId(), transaction.getBorrower());
+            ledger.usersById.putIfAbsent(transaction.getLender().getId(), transaction.getLender());
+            pairSums.add(localIndex(ledger, transaction.getBorrower().getId(), indexById, usersByIndex),
+                    localIndex(ledger, transaction.getLender().getId(), indexById, usersByIndex),
+                    toCents(transaction));
+        }
+
+        List<Debt> debts = new ArrayList<>();
+        pairSums.forEachDebt((borrower, lender, cents) -> debts.add(new Debt(
+                usersByIndex.get(borrower),
+                usersByIndex.get(lender),
+                BigDecimal.valueOf(cents, 2))));
+        return debts;
+    }
+
+    /**
+     * Retrieves one page of the debts of {@link #getDebtsForUsers(Set, LocalDate, List)}, in borrower and lender
+     * order. The pairs are walked in that order from the first key of the page, so a page costs the pairs it
+     * passes over, however many debts the balance has.
+     *
+     * @param users         the borrowers to include, or an empty set for everyone.
+     * @param date          the date of the debts.
+     * @param accrued       amounts accrued outside the stored transactions, such as recurring transactions, to add.
+     * @param afterBorrower the borrower of the key to continue after, or null to start from the first debt.
+     * @param afterLender   the lender of the key to continue after; ignored without a borrower.
+     * @param skip          the number of debts to skip before the page.
+     * @param size          the page size.
+     * @return the debts of the page, sorted by borrower and lender.
+     */
+    public synchronized List<Debt> getDebtPage(Set<User> users, LocalDate date, List<Transaction> accrued,
+                                               User afterBorrower, User afterLender, long skip, int size) {
+        Ledger ledger = ledgers.get();
+        int day = (int) date.toEpochDay();
+        Set<Long> borrowerIds = new HashSet<>();
+        for (User user : users) {
+            borrowerIds.add(user.getId());
+        }
+        Map<Long, Long> accruedByPair = new HashMap<>();
+        NavigableMap<User, NavigableSet<User>> accruedCounterparties = new TreeMap<>();
+        for (Transaction transaction : accrued) {
+            User borrower = transaction.getBorrower();
+            User lender = transaction.getLender();
+            accruedByPair.merge(pairKey(borrower.getId(), lender.getId()), toCents(transaction), Long::sum);
+            accruedCounterparties.computeIfAbsent(borrower, user -> new TreeSet<>()).add(lender);
+            accruedCounterparties.computeIfAbsent(lender, user -> new TreeSet<>()).add(borrower);
+        }
+
+        // Only the transactions of the included borrowers count, so every debt has one of them as its borrower
+        Iterator<User> borrowers = users.isEmpty() ?
+                mergeSorted(tail(ledger.counterparties.navigableKeySet(), afterBorrower, true),
+                        tail(accruedCounterparties.navigableKeySet(), afterBorrower, true)) :
+                tail(new TreeSet<>(users), afterBorrower, true);
+        List<Debt> page = new ArrayList<>(Math.min(size, 1024));
+        long skipped = 0;
+        while (borrowers.hasNext() && page.size() < size) {
+            User borrower = borrowers.next();
+            User after = afterBorrower != null && borrower.compareTo(afterBorrower) == 0 ? afterLender : null;
+            Iterator<User> lenders = mergeSorted(tail(ledger.counterparties.get(borrower), after, false),
+                    tail(accruedCounterparties.get(borrower), after, false));
+            while (lenders.hasNext() && page.size() < size) {
+                User lender = lenders.next();
+                long cents = sumUpTo(ledger, accruedByPair, borrower, lender, day);
+                if (borrowerIds.isEmpty() || borrowerIds.contains(lender.getId())) {
+                    cents -= sumUpTo(ledger, accruedByPair, lender, borrower, day);
+                }
+                if (cents <= 0) {
+                    continue;
+                }
+                if (skipped < skip) {
+                    skipped++;
+                } else {
+                    page.add(new Debt(borrower, lender, BigDecimal.valueOf(cents, 2)));
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Retrieves the debts of several reports on a given date from one pass over the pairs.
+     *
+     * @param filters the borrowers of each report, an empty set for everyone, or null for an empty report.
+     * @param date    the date of the debts.
+     * @param accrued amounts accrued outside the stored transactions, such as recurring transactions, to add.
+     * @return a list of debts per report, in the order of the filters.
+     */
+    public synchronized List<List<Debt>> getDebtsForReports(List<Set<User>> filters, LocalDate date,
+                                                            List<Transaction> accrued) {
+        Ledger ledger = ledgers.get();
+        BalanceReports reports = new BalanceReports(filters);
+        int day = (int) date.toEpochDay();
+        for (Map.Entry<Long, DayPrefixSums> entry : ledger.sumsByPair.entrySet()) {
+            long cents = entry.getValue().sumUpTo(day);
+            if (cents != 0) {
+                reports.add(ledger.usersById.get(entry.getKey() >>> 32),
+                        ledger.usersById.get(entry.getKey() & 0xffffffffL),
+                        cents);
+            }
+        }
+        for (Transaction transaction : accrued) {
+            reports.add(transaction.getBorrower(), transaction.getLender(), toCents(transaction));
+        }
+        return reports.getDebts();
+    }
+
+    private Ledger load() {
+        Ledger ledger = new Ledger();
+        for (Transaction transaction : ledgerStore.findTransactionsUpTo(END_OF_TIME)) {
+            ledger.add(transaction);
+        }
+        return ledger;
+    }
+
+    private static int localIndex(Ledger ledger, long userId, Map<Long, Integer> indexById, List<User> usersByIndex) {
+        return indexById.computeIfAbsent(userId, id -> {
+            usersByIndex.add(ledger.usersById.get(id));
+            return usersByIndex.size() - 1;
+        });
+    }
+
+    private static long sumUpTo(Ledger ledger, Map<Long, Long> accruedByPair, User borrower, User lender, int day) {
+        long key = pairKey(borrower.getId(), lender.getId());
+        DayPrefixSums sums = ledger.sumsByPair.get(key);
+        return (sums != null ? sums.sumUpTo(day) : 0) + accruedByPair.getOrDefault(key, 0L);
+    }
+
+    private static Iterator<User> tail(NavigableSet<User> users, User after, boolean inclusive) {
+        if (users == null) {
+            return Collections.emptyIterator();
+        }
+        return after == null ? users.iterator() : users.tailSet(after, inclusive).iterator();
+    }
+
+    /**
+     * Merges two iterators over users sorted by name into one, without repeating a user found in both.
+     */
+    private static Iterator<User> mergeSorted(Iterator<User> first, Iterator<User> second) {
+        if (!second.hasNext()) {
+            return first;
+        }
+        return new Iterator<>() {
+            private User nextFirst = first.hasNext() ? first.next() : null;
+            private User nextSecond = second.next();
+
+            @Override
+            public boolean hasNext() {
+                return nextFirst != null || nextSecond != null;
+            }
+
+            @Override
+            public User next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int order = nextFirst == null ? 1 : nextSecond == null ? -1 : nextFirst.compareTo(nextSecond);
+                User user = order <= 0 ? nextFirst : nextSecond;
+                if (order <= 0) {
+                    nextFirst = first.hasNext() ? first.next() : null;
+                }
+                if (order >= 0) {
+                    nextSecond = second.hasNext() ? second.next() : null;
+                }
+                return user;
+            }
+        };
+    }
+
+    private static long toCents(Transaction transaction) {
+        return transaction.getAmount().setScale(2, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+    }
+
+    private static long pairKey(long borrowerId, long lenderId) {
+        return (borrowerId << 32) | lenderId;
+    }
+
+    /**
+     * The index of one tenant: its users by id, the day prefix sums of its pairs, and for every user, sorted by
+     * name, the users it has transactions with in either direction, so that debts can be walked in key order.
+     */
+    private static final class Ledger {
+        private final Map<Long, User> usersById = new HashMap<>();
+        private final Map<Long, DayPrefixSums> sumsByPair = new HashMap<>();
+        private final NavigableMap<User, NavigableSet<User>> counterparties = new TreeMap<>();
+
+        void add(Transaction transaction) {
+            User borrower = usersById.computeIfAbsent(transaction.getBorrower().getId(),
+                    id -> transaction.getBorrower());
+            User lender = usersById.computeIfAbsent(transaction.getLender().getId(), id -> transaction.getLender());
+            sumsByPair.computeIfAbsent(pairKey(borrower.getId(), lender.getId()), key -> new DayPrefixSums())
+                    .add((int) transaction.getDate().toEpochDay(), toCents(transaction));
+            counterparties.computeIfAbsent(borrower, user -> new TreeSet<>()).add(lender);
+            counterparties.computeIfAbsent(lender, user -> new TreeSet<>()).add(borrower);
+        }
+
+        /**
+         * Forgets the counterparties left without transactions in either direction.
+         */
+        void pruneCounterparties() {
+            counterparties.forEach((user, others) -> others.removeIf(other ->
+                    !sumsByPair.containsKey(pairKey(user.getId(), other.getId()))
+                            && !sumsByPair.containsKey(pairKey(other.getId(), user.getId()))));
+            counterparties.values().removeIf(Set::isEmpty);
+        }
+    }
+
+    /**
+     * Cumulative amounts of one pair over the days on which it has transactions, sorted by day.
+     */
+    private static final class DayPrefixSums {
+        private int[] days = new int[4];
+        private long[] cumulative = new long[4];
+        private int size;
+
+        /**
+         * Adds an amount on a day. Appending in date order is O(1); a backdated amount shifts the later days.
+         */
+        void add(int day, long cents) {
+            int position = Arrays.binarySearch(days, 0, size, day);
+            if (position < 0) {
+                position = -position - 1;
+                if (size == days.length) {
+                    days = Arrays.copyOf(days, size * 2);
+                    cumulative = Arrays.copyOf(cumulative, size * 2);
+                }
+                System.arraycopy(days, position, days, position + 1, size - position);
+                System.arraycopy(cumulative, position, cumulative, position + 1, size - position);
+                days[position] = day;
+                cumulative[position] = position > 0 ? cumulative[position - 1] : 0;
+                size++;
+            }
+            for (int i = position; i < size; i++) {
+                cumulative[i] += cents;
+            }
+        }
+
+        /**
+         * Returns the amount accumulated on or before a day.
+         */
+        long sumUpTo(int day) {
+            int position = Arrays.binarySearch(days, 0, size, day);
+            int last = position >= 0 ? position : -position - 2;
+            return last >= 0 ? cumulative[last] : 0;
+        }
+
+        /**
+         * Drops the days before a given day and rebases the remaining cumulative amounts.
+         *
+         * @return true if no day is left.
+         */
+        boolean removeBefore(int day) {
+            long base = sumUpTo(day - 1);
+            int position = Arrays.binarySearch(days, 0, size, day);
+            int first = position >= 0 ? position : -position - 1;
+            int remaining = size - first;
+            System.arraycopy(days, first, days, 0, remaining);
+            for (int i = 0; i < remaining; i++) {
+                cumulative[i] = cumulative[first + i] - base;
+            }
+            size = remaining;
+            return size == 0;
+        }
+    }
+}
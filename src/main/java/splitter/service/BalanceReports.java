@@ -0,0 +1,99 @@
+package splitter.service;
+
+import splitter.model.Debt;
+import splitter.model.User;
+import splitter.store.PairSums;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Accumulates several balance reports from a single pass over the ledger.
+ * <p>
+ * Each report is a set of borrowers, or an empty set for everyone. A membership index maps every borrower to the
+ * reports that include them, so each amount is routed straight to the accumulators of its reports and the pass
+ * costs the same as one report, plus one pair sum per matching report.
+ */
+final class BalanceReports {
+    private final Map<Long, int[]> reportsByBorrowerId = new HashMap<>();
+    private final int[] reportsForEveryone;
+    private final PairSums[] pairSums;
+    private final Map<Long, Integer> indexById = new HashMap<>();
+    private final List<User> usersByIndex = new ArrayList<>();
+
+    /**
+     * @param filters the borrowers of each report, an empty set for everyone, or null for an empty report.
+     */
+    BalanceReports(List<Set<User>> filters) {
+        Map<Long, List<Integer>> membership = new HashMap<>();
+        List<Integer> everyone = new ArrayList<>();
+        pairSums = new PairSums[filters.size()];
+        for (int report = 0; report < filters.size(); report++) {
+            pairSums[report] = new PairSums(16);
+            if (filters.get(report) == null) {
+                continue;
+            }
+            if (filters.get(report).isEmpty()) {
+                everyone.add(report);
+            }
+            for (User user : filters.get(report)) {
+                membership.computeIfAbsent(user.getId(), id -> new ArrayList<>()).add(report);
+            }
+        }
+        reportsForEveryone = toArray(everyone);
+        membership.forEach((id, reports) -> reportsByBorrowerId.put(id, toArray(reports)));
+    }
+
+    /**
+     * Routes an amount owed by a borrower to a lender to every report that includes the borrower.
+     *
+     * @param borrower the borrower.
+     * @param lender   the lender.
+     * @param cents    the amount in cents.
+     */
+    void add(User borrower, User lender, long cents) {
+        int[] reports = reportsByBorrowerId.get(borrower.getId());
+        if (reports == null && reportsForEveryone.length == 0) {
+            return;
+        }
+        int borrowerIndex = localIndex(borrower);
+        int lenderIndex = localIndex(lender);
+        if (reports != null) {
+            for (int report : reports) {
+                pairSums[report].add(borrowerIndex, lenderIndex, cents);
+            }
+        }
+        for (int report : reportsForEveryone) {
+            pairSums[report].add(borrowerIndex, lenderIndex, cents);
+        }
+    }
+
+    /**
+     * Returns the debts of every report, in the order of the filters.
+     *
+     * @return a list of debts per report.
+     */
+    List<List<Debt>> getDebts() {
+        List<List<Debt>> reports = new ArrayList<>(pairSums.length);
+        for (PairSums sums : pairSums) {
+            List<Debt> debts = new ArrayList<>();
+            sums.forEachDebt((borrower, lender, cents) -> debts.add(new Debt(
+                    usersByIndex.get(borrower),
+                    usersByIndex.get(lender),
+                    BigDecimal.valueOf(cents, 2))));
+            reports.add(debts);
+        }
+        return reports;
+    }
+
+    private int localIndex(User user) {
+        return indexById.computeIfAbsent(user.getId(), id -> {
+            usersByIndex.add(user);
+            return usersByIndex.size() - 1;
+        });
+    }
+
+    private static int[] toArray(List<Integer> reports) {
+        return reports.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
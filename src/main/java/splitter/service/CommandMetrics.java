@@ -0,0 +1,224 @@
+package splitter.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-command metrics of the console: latency histograms, errors, and the SQL statements, loaded entities and
+ * written rows of each command, taken from the Hibernate statistics before and after it.
+ * <p>
+ * The meters are registered in the application registry, so they are scraped with every other meter, and
+ * {@link #report()} renders them for the {@code stats} command and the periodic log dump. Hibernate statistics are
+ * global, so writes of the write-behind queue or requests of the query API that overlap a command are counted with
+ * it; the memory and journal engines run no SQL, so their SQL counts stay at zero.
+ */
+@Component
+public class CommandMetrics {
+    private static final Logger log = LoggerFactory.getLogger(CommandMetrics.class);
+    private static final String COMMANDS = "splitter.commands";
+    private static final String ERRORS = "splitter.commands.errors";
+    private static final String STATEMENTS = "splitter.commands.sql.statements";
+    private static final String ENTITIES_LOADED = "splitter.commands.entities.loaded";
+    private static final String ROWS_WRITTEN = "splitter.commands.rows.written";
+    private static final String LOOKUPS = "splitter.lookup.cache.requests";
+    private static final String RESULTS = "splitter.result.cache.requests";
+
+    private final PrometheusMeterRegistry meterRegistry;
+    private final Statistics statistics;
+    private final long dumpIntervalSeconds;
+    private final long startNanos = System.nanoTime();
+    private ScheduledExecutorService dumper;
+
+    /**
+     * Counters at the start of a command.
+     */
+    public record Sample(long startNanos, long statements, long entitiesLoaded, long rowsWritten) {
+    }
+
+    @Autowired
+    public CommandMetrics(PrometheusMeterRegistry meterRegistry,
+                          ObjectProvider<EntityManagerFactory> entityManagerFactory,
+                          @Value("${splitter.metrics.dump-interval-seconds:0}") long dumpIntervalSeconds) {
+        this.meterRegistry = meterRegistry;
+        EntityManagerFactory factory = entityManagerFactory.getIfAvailable();
+        Statistics hibernateStatistics = factory == null ? null : factory.unwrap(SessionFactory.class).getStatistics();
+        this.statistics = hibernateStatistics != null && hibernateStatistics.isStatisticsEnabled() ?
+                hibernateStatistics :
+                null;
+        this.dumpIntervalSeconds = dumpIntervalSeconds;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (dumpIntervalSeconds <= 0) {
+            return;
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "command-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> log.info("Command metrics\n{}", report()),
+                dumpIntervalSeconds, dumpIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+        }
+    }
+
+    /**
+     * Takes the counters at the start of a command.
+     *
+     * @return the sample to hand to {@link #record(Sample, String, boolean)} once the command is done.
+     */
+    public Sample begin() {
+        if (statistics == null) {
+            return new Sample(System.nanoTime(), 0, 0, 0);
+        }
+        return new Sample(System.nanoTime(),
+                statistics.getPrepareStatementCount(),
+                statistics.getEntityLoadCount(),
+                rowsWritten(statistics));
+    }
+
+    /**
+     * Records a finished command.
+     *
+     * @param sample  the counters taken at its start.
+     * @param command the command name, used as the metric tag.
+     * @param failed  whether the command failed.
+     */
+    public void record(Sample sample, String command, boolean failed) {
+        Timer.builder(COMMANDS)
+                .description("Console command latency")
+                .tag("command", command)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry)
+                .record(System.nanoTime() - sample.startNanos(), TimeUnit.NANOSECONDS);
+        Counter errors = Counter.builder(ERRORS)
+                .description("Console commands that failed")
+                .tag("command", command)
+                .register(meterRegistry);
+        if (failed) {
+            errors.increment();
+        }
+        long statements = 0;
+        long entitiesLoaded = 0;
+        long rowsWritten = 0;
+        if (statistics != null) {
+            statements = statistics.getPrepareStatementCount() - sample.statements();
+            entitiesLoaded = statistics.getEntityLoadCount() - sample.entitiesLoaded();
+            rowsWritten = rowsWritten(statistics) - sample.rowsWritten();
+        }
+        DistributionSummary.builder(STATEMENTS)
+                .description("SQL statements prepared per console command")
+                .tag("command", command)
+                .register(meterRegistry)
+                .record(statements);
+        DistributionSummary.builder(ENTITIES_LOADED)
+                .description("Entities loaded per console command")
+                .tag("command", command)
+                .register(meterRegistry)
+                .record(entitiesLoaded);
+        Counter.builder(ROWS_WRITTEN)
+                .description("Entities inserted, updated or deleted by console commands")
+                .tag("command", command)
+                .register(meterRegistry)
+                .increment(rowsWritten);
+    }
+
+    /**
+     * Renders every command metric and the lookup and result cache hit ratios as a table.
+     *
+     * @return the report.
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        double uptimeSeconds = (System.nanoTime() - startNanos) / 1e9;
+        long total = 0;
+        Map<String, Timer> timers = new TreeMap<>();
+        for (Timer timer : meterRegistry.find(COMMANDS).timers()) {
+            timers.put(timer.getId().getTag("command"), timer);
+            total += timer.count();
+        }
+        report.append(String.format("Uptime %.0f s, %d commands, %.2f commands/s%n", uptimeSeconds, total,
+                uptimeSeconds > 0 ? total / uptimeSeconds : 0));
+        report.append(String.format("%-16s %7s %7s %9s %9s %9s %9s %9s %9s %10s%n",
+                "Command", "Count", "Errors", "Mean ms", "p95 ms", "Max ms", "SQL avg", "SQL max", "Loaded", "Written"));
+        timers.forEach((command, timer) -> {
+            DistributionSummary statements = meterRegistry.find(STATEMENTS).tag("command", command).summary();
+            DistributionSummary loaded = meterRegistry.find(ENTITIES_LOADED).tag("command", command).summary();
+            Counter errors = meterRegistry.find(ERRORS).tag("command", command).counter();
+            Counter written = meterRegistry.find(ROWS_WRITTEN).tag("command", command).counter();
+            report.append(String.format("%-16s %7d %7.0f %9.2f %9.2f %9.2f %9.1f %9.0f %9.1f %10.0f%n",
+                    command,
+                    timer.count(),
+                    errors == null ? 0 : errors.count(),
+                    timer.mean(TimeUnit.MILLISECONDS),
+                    percentile(timer, 0.95),
+                    timer.max(TimeUnit.MILLISECONDS),
+                    statements == null ? 0 : statements.mean(),
+                    statements == null ? 0 : statements.max(),
+                    loaded == null ? 0 : loaded.mean(),
+                    written == null ? 0 : written.count()));
+        });
+
+        Map<String, double[]> caches = new TreeMap<>();
+        for (String meter : new String[]{LOOKUPS, RESULTS}) {
+            String prefix = meter.equals(LOOKUPS) ? "lookup " : "result ";
+            for (Counter counter : meterRegistry.find(meter).counters()) {
+                Meter.Id id = counter.getId();
+                double[] hitsAndMisses = caches.computeIfAbsent(prefix + id.getTag("cache"), cache -> new double[2]);
+                hitsAndMisses["hit".equals(id.getTag("result")) ? 0 : 1] += counter.count();
+            }
+        }
+        if (!caches.isEmpty()) {
+            report.append(String.format("%-22s %9s %9s %9s%n", "Cache", "Hits", "Misses", "Hit ratio"));
+            caches.forEach((cache, hitsAndMisses) -> {
+                double requests = hitsAndMisses[0] + hitsAndMisses[1];
+                report.append(String.format("%-22s %9.0f %9.0f %8.1f%%%n", cache, hitsAndMisses[0], hitsAndMisses[1],
+                        requests > 0 ? 100 * hitsAndMisses[0] / requests : 0));
+            });
+        }
+        return report.toString().stripTrailing();
+    }
+
+    // percentiles are interpolated from histogram buckets, so they are capped at the exact maximum
+    private static double percentile(Timer timer, double percentile) {
+        for (ValueAtPercentile value : timer.takeSnapshot().percentileValues()) {
+            if (value.percentile() == percentile) {
+                return Math.min(value.value(TimeUnit.MILLISECONDS), timer.max(TimeUnit.MILLISECONDS));
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static long rowsWritten(Statistics statistics) {
+        return statistics.getEntityInsertCount() + statistics.getEntityUpdateCount() + statistics.getEntityDeleteCount();
+    }
+}
@@ -0,0 +1,146 @@
+package splitter.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes an export file through one direct buffer that is drained to a {@link FileChannel} whenever it fills up,
+ * so the memory used is the buffer whatever the size of the export.
+ * <p>
+ * Numbers and dates are encoded by hand straight into the buffer: amounts are written from their cents and dates
+ * from their epoch day, with no {@code String.format}, {@code BigDecimal} or {@code LocalDate} on the way. The binary
+ * encoding uses LEB128 variable-length integers, zigzag-encoded where the value may be negative.
+ */
+final class ExportWriter implements AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 20;
+    // the longest value written at once: a 64-bit varint, or a sign and 19 digits with a decimal point
+    private static final int MAX_VALUE_LENGTH = 24;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final byte[] digits = new byte[20];
+    private long written;
+
+    ExportWriter(Path path) throws IOException {
+        channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    void writeByte(int value) throws IOException {
+        ensure(1);
+        buffer.put((byte) value);
+    }
+
+    void writeBytes(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            int length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    void writeAscii(String text) throws IOException {
+        writeBytes(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Writes an amount in cents as a decimal with two fraction digits, such as {@code -12.05}.
+     */
+    void writeCents(long cents) throws IOException {
+        ensure(MAX_VALUE_LENGTH);
+        if (cents < 0) {
+            buffer.put((byte) '-');
+        }
+        // negative values are handled as such, so that Long.MIN_VALUE needs no special case
+        long negative = cents < 0 ? cents : -cents;
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' - negative % 10);
+            negative /= 10;
+        } while (negative != 0 || count < 3);
+        for (int i = count - 1; i >= 0; i--) {
+            buffer.put(digits[i]);
+            if (i == 2) {
+                buffer.put((byte) '.');
+            }
+        }
+    }
+
+    /**
+     * Writes a date as {@code yyyy-MM-dd}, converting the epoch day with the civil-from-days algorithm of
+     * Howard Hinnant for years 0 to 9999.
+     */
+    void writeDate(int epochDay) throws IOException {
+        ensure(10);
+        long days = epochDay + 719_468L;
+        long era = Math.floorDiv(days, 146_097);
+        long dayOfEra = days - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+        buffer.put((byte) ('0' + year / 1000 % 10));
+        buffer.put((byte) ('0' + year / 100 % 10));
+        buffer.put((byte) ('0' + year / 10 % 10));
+        buffer.put((byte) ('0' + year % 10));
+        buffer.put((byte) '-');
+        buffer.put((byte) ('0' + month / 10));
+        buffer.put((byte) ('0' + month % 10));
+        buffer.put((byte) '-');
+        buffer.put((byte) ('0' + day / 10));
+        buffer.put((byte) ('0' + day % 10));
+    }
+
+    void writeVarLong(long value) throws IOException {
+        ensure(MAX_VALUE_LENGTH);
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    void writeZigZag(long value) throws IOException {
+        writeVarLong(value << 1 ^ value >> 63);
+    }
+
+    /**
+     * @return the number of bytes written so far, including those still in the buffer.
+     */
+    long size() {
+        return written + buffer.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void ensure(int length) throws IOException {
+        if (buffer.remaining() < length) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,297 @@
+package splitter.service;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Finds a random maximum matching of givers to receivers with the Hopcroft-Karp algorithm, where everyone is both a
+ * giver and a receiver and the allowed pairs are every pair except the excluded ones.
+ * <p>
+ * Exclusions come in two forms: members of the same color never give to each other, which covers teams and, with
+ * one color per member, giving to oneself; and a sorted list of individual excluded pairs. The graph of allowed
+ * pairs is dense, so it is never built. Members are relabelled so that every color is a contiguous block of labels,
+ * and the breadth-first and depth-first searches take their candidates from sorted arrays of receivers with a
+ * skip-list of the removed ones: a whole color block is skipped with one binary search, so each phase costs
+ * O(n + excluded pairs) up to logarithmic factors instead of O(n^2), and there are O(sqrt(n)) phases.
+ * <p>
+ * The search starts from the allowed pairs of a random cycle drawn with Sattolo's algorithm, and members are
+ * relabelled in random order, so the matching is random rather than the first one in name order. Typically only the
+ * few members whose cycle pair was excluded need augmenting paths.
+ */
+final class GiftMatcher {
+    private static final int UNREACHED = Integer.MAX_VALUE;
+
+    private final int size;
+    private final int[] colorStart;
+    private final int[] colorEnd;
+    private final long[] excludedPairs;
+    private final int[] receiverOf;
+    private final int[] giverOf;
+    private final int[] layer;
+    private final int[] queue;
+    private final int[] everyone;
+    private final int[] reached;
+    private final int[] layerStart;
+    private final int[] layerEnd;
+    private final int[] skip;
+    private final int[] pathGivers;
+    private final int[] pathReceivers;
+    private int freeLayer;
+
+    private GiftMatcher(int size, int[] colorStart, int[] colorEnd, long[] excludedPairs) {
+        this.size = size;
+        this.colorStart = colorStart;
+        this.colorEnd = colorEnd;
+        this.excludedPairs = excludedPairs;
+        receiverOf = new int[size];
+        giverOf = new int[size];
+        layer = new int[size];
+        queue = new int[size];
+        everyone = new int[size];
+        reached = new int[size];
+        layerStart = new int[size + 1];
+        layerEnd = new int[size + 1];
+        skip = new int[size + 1];
+        pathGivers = new int[size + 1];
+        pathReceivers = new int[size + 1];
+        Arrays.fill(receiverOf, -1);
+        Arrays.fill(giverOf, -1);
+        for (int i = 0; i < size; i++) {
+            everyone[i] = i;
+        }
+    }
+
+    /**
+     * Matches every member to a receiver, if the exclusions allow it.
+     *
+     * @param colors        the color of each member; members of the same color are never matched.
+     * @param excludedPairs the excluded pairs, each encoded as giver index {@code << 32 |} receiver index.
+     * @param random        the source of randomness.
+     * @return the receiver index of each member, or -1 for the members left without one by a maximum matching.
+     */
+    static int[] match(int[] colors, long[] excludedPairs, SplittableRandom random) {
+        int size = colors.length;
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        shuffle(order, random);
+
+        // label the members in random order, keeping every color a contiguous block
+        int colorCount = 0;
+        for (int color : colors) {
+            colorCount = Math.max(colorCount, color + 1);
+        }
+        int[] colorSize = new int[colorCount];
+        for (int color : colors) {
+            colorSize[color]++;
+        }
+        int[] blockStart = new int[colorCount];
+        int[] blockNext = new int[colorCount];
+        Arrays.fill(blockStart, -1);
+        int nextBlock = 0;
+        int[] label = new int[size];
+        int[] member = new int[size];
+        int[] colorStart = new int[size];
+        int[] colorEnd = new int[size];
+        for (int index : order) {
+            int color = colors[index];
+            if (blockStart[color] == -1) {
+                blockStart[color] = nextBlock;
+                blockNext[color] = nextBlock;
+                nextBlock += colorSize[color];
+            }
+            int assigned = blockNext[color]++;
+            label[index] = assigned;
+            member[assigned] = index;
+            colorStart[assigned] = blockStart[color];
+            colorEnd[assigned] = blockStart[color] + colorSize[color];
+        }
+
+        long[] labelledPairs = new long[excludedPairs.length];
+        for (int i = 0; i < excludedPairs.length; i++) {
+            labelledPairs[i] = (long) label[(int) (excludedPairs[i] >>> 32)] << 32 |
+                    label[(int) excludedPairs[i]];
+        }
+        Arrays.sort(labelledPairs);
+
+        GiftMatcher matcher = new GiftMatcher(size, colorStart, colorEnd, labelledPairs);
+        matcher.matchRandomCycle(random);
+        while (matcher.buildLayers()) {
+            matcher.augmentAlongLayers();
+        }
+
+        int[] receivers = new int[size];
+        for (int giver = 0; giver < size; giver++) {
+            int receiver = matcher.receiverOf[giver];
+            receivers[member[giver]] = receiver == -1 ? -1 : member[receiver];
+        }
+        return receivers;
+    }
+
+    private void matchRandomCycle(SplittableRandom random) {
+        int[] cycle = Arrays.copyOf(everyone, size);
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i);
+            int receiver = cycle[i];
+            cycle[i] = cycle[j];
+            cycle[j] = receiver;
+        }
+        for (int giver = 0; giver < size; giver++) {
+            if (isAllowed(giver, cycle[giver])) {
+                receiverOf[giver] = cycle[giver];
+                giverOf[cycle[giver]] = giver;
+            }
+        }
+    }
+
+    /**
+     * Breadth-first search from every unmatched giver, alternating allowed pairs and matched pairs, up to the
+     * first layer that reaches an unmatched receiver. Each receiver is reached once, and the receivers reached from
+     * each layer are kept sorted for the depth-first searches.
+     *
+     * @return whether an unmatched receiver can be reached, that is whether the matching can still grow.
+     */
+    private boolean buildLayers() {
+        int head = 0;
+        int tail = 0;
+        for (int giver = 0; giver < size; giver++) {
+            if (receiverOf[giver] == -1) {
+                layer[giver] = 0;
+                queue[tail++] = giver;
+            } else {
+                layer[giver] = UNREACHED;
+            }
+        }
+        resetSkip(size);
+        freeLayer = UNREACHED;
+        int layers = 0;
+        int reachedCount = 0;
+        while (head < tail) {
+            int giver = queue[head++];
+            int depth = layer[giver];
+            if (depth > freeLayer) {
+                break;
+            }
+            if (depth == layers) {
+                layerStart[depth] = reachedCount;
+                layers++;
+            }
+            for (int position = next(giver, everyone, 0, size); position != -1;
+                 position = next(giver, everyone, position, size)) {
+                skip[position] = position + 1;
+                reached[reachedCount++] = position;
+                int nextGiver = giverOf[position];
+                if (nextGiver == -1) {
+                    freeLayer = Math.min(freeLayer, depth);
+                } else if (layer[nextGiver] == UNREACHED) {
+                    layer[nextGiver] = depth + 1;
+                    queue[tail++] = nextGiver;
+                }
+            }
+            layerEnd[depth] = reachedCount;
+        }
+        if (freeLayer == UNREACHED) {
+            return false;
+        }
+        for (int depth = 0; depth < layers; depth++) {
+            Arrays.sort(reached, layerStart[depth], layerEnd[depth]);
+        }
+        resetSkip(reachedCount);
+        return true;
+    }
+
+    /**
+     * Depth-first search from every unmatched giver along the layers, augmenting the matching along a set of
+     * disjoint shortest paths. Every receiver is tried at most once per phase, whether the path through it succeeds
+     * or not. The search keeps its own stack so that long paths cannot overflow the call stack.
+     */
+    private void augmentAlongLayers() {
+        for (int root = 0; root < size; root++) {
+            if (receiverOf[root] != -1 || layer[root] != 0) {
+                continue;
+            }
+            int depth = 0;
+            pathGivers[0] = root;
+            while (depth >= 0) {
+                int giver = pathGivers[depth];
+                int giverLayer = layer[giver];
+                int position = next(giver, reached, layerStart[giverLayer], layerEnd[giverLayer]);
+                if (position == -1) {
+                    layer[giver] = UNREACHED;
+                    depth--;
+                    continue;
+                }
+                skip[position] = position + 1;
+                int receiver = reached[position];
+                int nextGiver = giverOf[receiver];
+                if (nextGiver == -1) {
+                    pathReceivers[depth] = receiver;
+                    for (int step = 0; step <= depth; step++) {
+                        receiverOf[pathGivers[step]] = pathReceivers[step];
+                        giverOf[pathReceivers[step]] = pathGivers[step];
+                    }
+                    break;
+                }
+                if (giverLayer < freeLayer && layer[nextGiver] == giverLayer + 1) {
+                    pathReceivers[depth] = receiver;
+                    pathGivers[++depth] = nextGiver;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the first receiver a giver may give to among the remaining entries of a sorted range.
+     *
+     * @param giver     the giver.
+     * @param receivers the sorted receivers.
+     * @param from      the first position to look at.
+     * @param to        the end of the range, exclusive.
+     * @return the position of the receiver, or -1 if there is none.
+     */
+    private int next(int giver, int[] receivers, int from, int to) {
+        int position = remaining(from);
+        while (position < to) {
+            int receiver = receivers[position];
+            if (receiver >= colorStart[giver] && receiver < colorEnd[giver]) {
+                int after = Arrays.binarySearch(receivers, position, to, colorEnd[giver]);
+                position = remaining(after >= 0 ? after : -after - 1);
+            } else if (Arrays.binarySearch(excludedPairs, (long) giver << 32 | receiver) >= 0) {
+                position = remaining(position + 1);
+            } else {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isAllowed(int giver, int receiver) {
+        return (receiver < colorStart[giver] || receiver >= colorEnd[giver]) &&
+                Arrays.binarySearch(excludedPairs, (long) giver << 32 | receiver) < 0;
+    }
+
+    private void resetSkip(int length) {
+        for (int i = 0; i <= length; i++) {
+            skip[i] = i;
+        }
+    }
+
+    // first position at or after the given one that has not been removed, halving the skip path on the way
+    private int remaining(int position) {
+        while (skip[position] != position) {
+            skip[position] = skip[skip[position]];
+            position = skip[position];
+        }
+        return position;
+    }
+
+    private static void shuffle(int[] values, SplittableRandom random) {
+        for (int i = values.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+}
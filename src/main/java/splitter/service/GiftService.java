@@ -1,58 +1,184 @@
 package splitter.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import splitter.model.Gift;
 import splitter.model.Group;
+import splitter.model.SecretSantaRules;
 import splitter.model.User;
-import splitter.repository.GiftRepository;
+import splitter.store.LedgerStore;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Service
 public class GiftService {
-    private final GiftRepository giftRepository;
+    private static final int MAX_REPORTED_NAMES = 10;
+
+    private final LedgerStore ledgerStore;
     private final GroupService groupService;
+    private final Long seed;
 
     @Autowired
-    public GiftService(GiftRepository giftRepository, GroupService groupService) {
-        this.giftRepository = giftRepository;
+    public GiftService(LedgerStore ledgerStore,
+                       GroupService groupService,
+                       @Value("${splitter.secret-santa.seed:#{null}}") Long seed) {
+        this.ledgerStore = ledgerStore;
         this.groupService = groupService;
+        this.seed = seed;
     }
 
     public Gift createGift(User giver, User receiver) {
         Gift gift = new Gift();
         gift.setGiver(giver);
         gift.setReceiver(receiver);
-        return giftRepository.save(gift);
+        gift.setYear(LocalDate.now().getYear());
+        return ledgerStore.saveGift(gift);
     }
 
     /**
-     * Creates random gift pairs within the specified group.
+     * Creates random gift pairs within the specified group, so that nobody gives a gift to themselves.
      *
-     * @param group the group for which to create gift pairs
-     * @return a list of randomly assigned gift pairs
+     * @param group    the group for which to create gift pairs
+     * @param consumer receives each saved gift, sorted by giver
+     * @throws IllegalArgumentException if the group has fewer than two members
      */
-    public List<Gift> createRandomGiftPairs(Group group) {
-        List<User> users = new ArrayList<>(groupService.getUsers(group));
-        Collections.shuffle(users);
+    public void createRandomGiftPairs(Group group, Consumer<Gift> consumer) {
+        createRandomGiftPairs(group, LocalDate.now().getYear(), SecretSantaRules.none(), consumer);
+    }
 
-        List<User> givers = new ArrayList<>(users);
-        List<User> receivers = new ArrayList<>(users);
+    /**
+     * Creates random gift pairs within the specified group, so that nobody gives a gift to themselves and no
+     * pair breaks the exclusion rules.
+     * <p>
+     * Without rules, receivers are drawn in a single pass with Sattolo's algorithm, which produces a random
+     * permutation made of one cycle through every member. With rules, a random retry would almost never succeed once
+     * the exclusions get dense, so the draw is solved as a random perfect matching of the allowed giver to receiver
+     * pairs instead. The whole draw is saved in one transaction, as one batch write, and the gifts are handed to
+     * the consumer in giver order only once it has committed, so a failed draw prints nothing and saves nothing.
+     *
+     * @param group    the group for which to create gift pairs
+     * @param year     the year of the draw, recorded with every gift
+     * @param rules    the exclusion rules
+     * @param consumer receives each saved gift, sorted by giver
+     * @throws IllegalArgumentException if the group has fewer than two members or the rules cannot be satisfied
+     */
+    @Transactional
+    public void createRandomGiftPairs(Group group, int year, SecretSantaRules rules, Consumer<Gift> consumer) {
+        List<User> users = new ArrayList<>(new TreeSet<>(groupService.getUsers(group)));
+        int size = users.size();
+        if (size < 2) {
+            throw new IllegalArgumentException("Group must have at least two members");
+        }
 
-        Collections.rotate(receivers, 2); // Shift the receivers by two positions
+        SplittableRandom random = seed != null ? new SplittableRandom(seed) : new SplittableRandom();
+        int[] receivers = rules.isEmpty() ?
+                drawCycle(size, random) :
+                drawMatching(users, year, rules, random);
+
+        List<Gift> gifts = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Gift gift = new Gift();
+            gift.setGiver(users.get(i));
+            gift.setReceiver(users.get(receivers[i]));
+            gift.setYear(year);
+            gifts.add(gift);
+        }
+        List<Gift> saved = ledgerStore.saveGifts(gifts);
+        AfterCommit.run(() -> saved.forEach(consumer));
+    }
+
+    private static int[] drawCycle(int size, SplittableRandom random) {
+        int[] receivers = new int[size];
+        for (int i = 0; i < size; i++) {
+            receivers[i] = i;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i);
+            int receiver = receivers[i];
+            receivers[i] = receivers[j];
+            receivers[j] = receiver;
+        }
+        return receivers;
+    }
 
-        List<Gift> gifts = new ArrayList<>();
+    /**
+     * Translates the rules into member colors and excluded pairs and matches the members.
+     * Past gifts are read with one query on the gift year index, covering the previous years and this one.
+     */
+    private int[] drawMatching(List<User> users, int year, SecretSantaRules rules, SplittableRandom random) {
         int size = users.size();
+        Map<Long, Integer> indexById = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            indexById.put(users.get(i).getId(), i);
+        }
 
+        // one color per team, and a color of their own for everyone else
+        int[] colors = new int[size];
+        Arrays.fill(colors, -1);
+        int color = 0;
+        for (Set<User> team : rules.teams()) {
+            for (User user : team) {
+                Integer index = indexById.get(user.getId());
+                if (index == null) {
+                    continue;
+                }
+                if (colors[index] != -1) {
+                    throw new IllegalArgumentException(user.getName() + " is in more than one team");
+                }
+                colors[index] = color;
+            }
+            color++;
+        }
         for (int i = 0; i < size; i++) {
-            User giver = givers.get(i);
-            User receiver = receivers.get(i);
-            Gift gift = createGift(giver, receiver);
-            gifts.add(gift);
+            if (colors[i] == -1) {
+                colors[i] = color++;
+            }
+        }
+
+        List<Long> excluded = new ArrayList<>();
+        for (Set<User> partners : rules.partners()) {
+            for (User giver : partners) {
+                for (User receiver : partners) {
+                    addExcludedPair(excluded, indexById.get(giver.getId()), indexById.get(receiver.getId()));
+                }
+            }
+        }
+        if (rules.noRepeatYears() > 0) {
+            for (Gift gift : ledgerStore.findGiftsFrom(year - rules.noRepeatYears())) {
+                addExcludedPair(excluded,
+                        indexById.get(gift.getGiver().getId()),
+                        indexById.get(gift.getReceiver().getId()));
+            }
+        }
+
+        int[] receivers = GiftMatcher.match(colors,
+                excluded.stream().mapToLong(Long::longValue).toArray(),
+                random);
+
+        List<String> unmatched = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (receivers[i] == -1) {
+                unmatched.add(users.get(i).getName());
+            }
+        }
+        if (!unmatched.isEmpty()) {
+            String names = unmatched.stream()
+                    .limit(MAX_REPORTED_NAMES)
+                    .collect(Collectors.joining(", ", "", unmatched.size() > MAX_REPORTED_NAMES ? ", ..." : ""));
+            throw new IllegalArgumentException("No Secret Santa draw satisfies the rules: " + unmatched.size() +
+                    " of " + size + " members cannot be given a receiver (" + names + ")");
+        }
+        return receivers;
+    }
+
+    private static void addExcludedPair(List<Long> excluded, Integer giver, Integer receiver) {
+        if (giver != null && receiver != null && !giver.equals(receiver)) {
+            excluded.add((long) giver << 32 | receiver);
         }
-        return gifts;
     }
-}
\ No newline at end of file
+}
@@ -5,24 +5,19 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import splitter.model.Group;
 import splitter.model.User;
-import splitter.model.UserGroup;
-import splitter.repository.GroupRepository;
-import splitter.repository.UserGroupRepository;
+import splitter.store.LedgerStore;
 
-import java.util.List;
-import java.util.Optional;
 import java.util.Set;
 
 @Service
 public class GroupService {
-    private final GroupRepository groupRepository;
-    private final UserGroupRepository userGroupRepository;
+    private final LedgerStore ledgerStore;
+    private final LedgerVersion ledgerVersion;
 
     @Autowired
-    public GroupService(GroupRepository groupRepository,
-                        UserGroupRepository userGroupRepository) {
-        this.groupRepository = groupRepository;
-        this.userGroupRepository = userGroupRepository;
+    public GroupService(LedgerStore ledgerStore, LedgerVersion ledgerVersion) {
+        this.ledgerStore = ledgerStore;
+        this.ledgerVersion = ledgerVersion;
     }
 
     /**
@@ -34,10 +29,9 @@ public class GroupService {
      */
     @Transactional
     public int addUsersToGroup(Group group, Set<User> users) {
-        return users.stream()
-                .map(user -> createUserGroup(group, user))
-                .map(userGroupRepository::save)
-                .toArray().length;
+        int added = ledgerStore.addUsersToGroup(group, users);
+        ledgerVersion.increment();
+        return added;
     }
 
     /**
@@ -49,57 +43,46 @@ public class GroupService {
      */
     @Transactional
     public int removeUsersFromGroup(Group group, Set<User> users) {
-        return groupRepository.removeUsersFromGroup(group, users);
+        int removed = ledgerStore.removeUsersFromGroup(group, users);
+        ledgerVersion.increment();
+        return removed;
     }
 
     public Set<User> getUsersByGroupName(String name) {
-        return groupRepository.findUsersByGroupName(name);
+        return ledgerStore.findUsersByGroupName(name);
     }
 
     public Set<User> getUsers(Group group) {
-        return groupRepository.findUsers(group);
+        return ledgerStore.findUsers(group);
     }
 
     public Group getOrCreateGroupByName(String name) {
-        return groupRepository.findByName(name)
-                .orElseGet(() -> groupRepository.save(new Group(name)));
+        return ledgerStore.findGroupByName(name)
+                .orElseGet(() -> saveGroup(new Group(name)));
     }
 
     public Group createGroupByName(String name) {
         if (groupExists(name)) deleteByName(name);
-        return groupRepository.save(new Group(name));
+        return saveGroup(new Group(name));
     }
 
     public Group getGroupByName(String name) {
-        Optional<Group> optionalGroup = groupRepository.findByName(name);
-        return optionalGroup.orElse(null);
+        return ledgerStore.findGroupByName(name).orElse(null);
     }
 
     @Transactional
     public void deleteByName(String name) {
-        List<Group> groups = groupRepository.findAllByName(name);
-        for (Group group : groups) {
-            List<UserGroup> userGroups = userGroupRepository.findAllByGroup(group);
-            userGroupRepository.deleteAll(userGroups);  // This deletes user-group associations
-        }
-        groupRepository.deleteAll(groups);  // Then delete the groups
+        ledgerStore.deleteGroupsByName(name);
+        ledgerVersion.increment();
     }
 
     public boolean groupExists(String name) {
-        return groupRepository.existsByName(name);
+        return ledgerStore.groupExists(name);
     }
 
-    /**
-     * Creates a new UserGroup instance with a specified group and user.
-     *
-     * @param group the group to set.
-     * @param user  the user to set.
-     * @return the newly created UserGroup instance.
-     */
-    private UserGroup createUserGroup(Group group, User user) {
-        UserGroup userGroup = new UserGroup();
-        userGroup.setGroup(group);
-        userGroup.setUser(user);
-        return userGroup;
+    private Group saveGroup(Group group) {
+        Group saved = ledgerStore.saveGroup(group);
+        ledgerVersion.increment();
+        return saved;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,254 @@
+package splitter.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import splitter.model.Debt;
+import splitter.model.Group;
+import splitter.model.User;
+import splitter.store.LedgerStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Exports transactions, balances and group memberships to CSV or to a compact binary format, for the warehouse.
+ * <p>
+ * Transactions are streamed from the ledger store scan into an {@link ExportWriter}, so memory stays constant
+ * whatever the number of rows, apart from the name of each user. Balances are computed first, so they take the
+ * memory of one balance query.
+ * <p>
+ * CSV files have a header line and dates in ISO format; user and group names are word characters, so nothing is
+ * quoted. A binary file starts with the magic {@code SPLX}, a format version and the kind of export, followed by
+ * tagged records and a trailer holding the row count. Users and groups are defined by a record the first time
+ * they appear and referred to by id afterwards, and transaction dates are stored as the difference from the
+ * previous one.
+ */
+@Service
+public class LedgerExporter {
+    private static final byte[] MAGIC = {'S', 'P', 'L', 'X'};
+    private static final int VERSION = 1;
+    private static final int KIND_TRANSACTIONS = 1;
+    private static final int KIND_BALANCES = 2;
+    private static final int KIND_GROUPS = 3;
+    private static final int TAG_USER = 0;
+    private static final int TAG_TRANSACTION = 1;
+    private static final int TAG_DEBT = 2;
+    private static final int TAG_GROUP = 3;
+    private static final int TAG_MEMBERSHIP = 4;
+    private static final int TAG_END = 0xFF;
+
+    private final LedgerStore ledgerStore;
+    private final TransactionService transactionService;
+    private final WriteBehindQueue writeBehindQueue;
+
+    /**
+     * The format of an export file.
+     */
+    public enum Format {
+        CSV, BINARY
+    }
+
+    /**
+     * The size of a finished export.
+     *
+     * @param rows  the number of rows written.
+     * @param bytes the size of the file.
+     */
+    public record Summary(long rows, long bytes) {
+    }
+
+    @Autowired
+    public LedgerExporter(LedgerStore ledgerStore,
+                          TransactionService transactionService,
+                          WriteBehindQueue writeBehindQueue) {
+        this.ledgerStore = ledgerStore;
+        this.transactionService = transactionService;
+        this.writeBehindQueue = writeBehindQueue;
+    }
+
+    /**
+     * Exports every transaction, in insertion order.
+     *
+     * @param path   the file to write.
+     * @param format the format of the file.
+     * @return the size of the export.
+     * @throws IllegalArgumentException if the file cannot be written
+     */
+    public Summary exportTransactions(Path path, Format format) {
+        writeBehindQueue.awaitAllWrites();
+        return export(path, format, KIND_TRANSACTIONS, "borrower,lender,amount,date\n", (writer, names) -> {
+            long[] rows = new long[1];
+            int[] previousDay = new int[1];
+            try {
+                ledgerStore.forEachTransaction((borrower, lender, cents, epochDay) -> {
+                    try {
+                        if (format == Format.CSV) {
+                            writer.writeBytes(names.of(borrower));
+                            writer.writeByte(',');
+                            writer.writeBytes(names.of(lender));
+                            writer.writeByte(',');
+                            writer.writeCents(cents);
+                            writer.writeByte(',');
+                            writer.writeDate(epochDay);
+                            writer.writeByte('\n');
+                        } else {
+                            names.define(writer, borrower);
+                            names.define(writer, lender);
+                            writer.writeByte(TAG_TRANSACTION);
+                            writer.writeVarLong(borrower.getId());
+                            writer.writeVarLong(lender.getId());
+                            writer.writeZigZag(cents);
+                            writer.writeZigZag(epochDay - previousDay[0]);
+                            previousDay[0] = epochDay;
+                        }
+                        rows[0]++;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return rows[0];
+        });
+    }
+
+    /**
+     * Exports the balances of everyone on a date, in borrower and lender order.
+     *
+     * @param path   the file to write.
+     * @param format the format of the file.
+     * @param date   the date of the balances.
+     * @return the size of the export.
+     * @throws IllegalArgumentException if the file cannot be written
+     */
+    public Summary exportBalances(Path path, Format format, LocalDate date) {
+        List<Debt> debts = transactionService.getDebtsForUsers(Set.of(), date);
+        debts.sort(Comparator.comparing(Debt::getBorrower).thenComparing(Debt::getLender));
+        return export(path, format, KIND_BALANCES, "borrower,lender,amount\n", (writer, names) -> {
+            for (Debt debt : debts) {
+                long cents = debt.getAmount().setScale(2, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+                if (format == Format.CSV) {
+                    writer.writeBytes(names.of(debt.getBorrower()));
+                    writer.writeByte(',');
+                    writer.writeBytes(names.of(debt.getLender()));
+                    writer.writeByte(',');
+                    writer.writeCents(cents);
+                    writer.writeByte('\n');
+                } else {
+                    names.define(writer, debt.getBorrower());
+                    names.define(writer, debt.getLender());
+                    writer.writeByte(TAG_DEBT);
+                    writer.writeVarLong(debt.getBorrower().getId());
+                    writer.writeVarLong(debt.getLender().getId());
+                    writer.writeZigZag(cents);
+                }
+            }
+            return debts.size();
+        });
+    }
+
+    /**
+     * Exports the members of every group, groups in name order and members in name order.
+     *
+     * @param path   the file to write.
+     * @param format the format of the file.
+     * @return the size of the export.
+     * @throws IllegalArgumentException if the file cannot be written
+     */
+    public Summary exportGroups(Path path, Format format) {
+        return export(path, format, KIND_GROUPS, "group,user\n", (writer, names) -> {
+            long rows = 0;
+            List<Group> groups = ledgerStore.findGroups();
+            for (int index = 0; index < groups.size(); index++) {
+                Group group = groups.get(index);
+                byte[] groupName = group.getName().getBytes(StandardCharsets.UTF_8);
+                if (format == Format.BINARY) {
+                    writer.writeByte(TAG_GROUP);
+                    writer.writeVarLong(index);
+                    writer.writeVarLong(groupName.length);
+                    writer.writeBytes(groupName);
+                }
+                List<User> members = ledgerStore.findUsers(group).stream().sorted().toList();
+                for (User member : members) {
+                    if (format == Format.CSV) {
+                        writer.writeBytes(groupName);
+                        writer.writeByte(',');
+                        writer.writeBytes(names.of(member));
+                        writer.writeByte('\n');
+                    } else {
+                        names.define(writer, member);
+                        writer.writeByte(TAG_MEMBERSHIP);
+                        writer.writeVarLong(index);
+                        writer.writeVarLong(member.getId());
+                    }
+                    rows++;
+                }
+            }
+            return rows;
+        });
+    }
+
+    private static Summary export(Path path, Format format, int kind, String csvHeader, Rows rows) {
+        try (ExportWriter writer = new ExportWriter(path)) {
+            if (format == Format.CSV) {
+                writer.writeAscii(csvHeader);
+            } else {
+                writer.writeBytes(MAGIC);
+                writer.writeByte(VERSION);
+                writer.writeByte(kind);
+            }
+            long count = rows.write(writer, new Names());
+            if (format == Format.BINARY) {
+                writer.writeByte(TAG_END);
+                writer.writeVarLong(count);
+            }
+            return new Summary(count, writer.size());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot write export " + path);
+        }
+    }
+
+    /**
+     * Writes the rows of an export between its header and its trailer.
+     */
+    @FunctionalInterface
+    private interface Rows {
+        long write(ExportWriter writer, Names names) throws IOException;
+    }
+
+    /**
+     * The encoded name of every user met so far, and which users have been defined in a binary file.
+     */
+    private static final class Names {
+        private final Map<Long, byte[]> bytesById = new HashMap<>();
+        private final BitSet defined = new BitSet();
+
+        byte[] of(User user) {
+            return bytesById.computeIfAbsent(user.getId(), id -> user.getName().getBytes(StandardCharsets.UTF_8));
+        }
+
+        void define(ExportWriter writer, User user) throws IOException {
+            int id = Math.toIntExact(user.getId());
+            if (defined.get(id)) {
+                return;
+            }
+            defined.set(id);
+            byte[] name = of(user);
+            writer.writeByte(TAG_USER);
+            writer.writeVarLong(id);
+            writer.writeVarLong(name.length);
+            writer.writeBytes(name);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package splitter.service;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import splitter.tenant.TenantScoped;
+import splitter.tenant.TenantStateHolder;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonic counter of ledger changes, one per tenant.
+ * Every write path bumps the version of its tenant, so readers can tell whether anything changed since they last
+ * looked, and a write to one tenant never invalidates what was computed for another.
+ * The counter of an evicted tenant starts over above every version evicted so far, so that a version never stands
+ * for two states of the same ledger, even to the API clients holding an entity tag.
+ */
+@Component
+public class LedgerVersion implements TenantStateHolder {
+    private final AtomicLong evictedVersions = new AtomicLong();
+    private final TenantScoped<AtomicLong> versions =
+            new TenantScoped<>(tenant -> new AtomicLong(evictedVersions.get()));
+
+    /**
+     * Returns the current ledger version of the current tenant.
+     *
+     * @return the current version.
+     */
+    public long current() {
+        return versions.get().get();
+    }
+
+    /**
+     * Marks the ledger of the current tenant as changed, once the current transaction commits, or right away when
+     * there is no transaction. Bumping before the commit would let a reader compute from the ledger without the
+     * write and cache the result under the version that includes it; a rolled back write bumps nothing.
+     */
+    public void increment() {
+        AtomicLong version = versions.get();
+        if (TransactionSynchronizationManager.isSynchronizationActive()
+                && !TransactionSynchronizationManager.hasResource(this)) {
+            TransactionSynchronizationManager.bindResource(this, version);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void suspend() {
+                    TransactionSynchronizationManager.unbindResource(LedgerVersion.this);
+                }
+
+                @Override
+                public void resume() {
+                    TransactionSynchronizationManager.bindResource(LedgerVersion.this, version);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(LedgerVersion.this);
+                }
+            });
+        }
+        AfterCommit.run(version::incrementAndGet);
+    }
+
+    /**
+     * Tells whether the current transaction has changed the ledger and not committed yet. What it reads then
+     * includes its own changes, which belong to no version until they commit.
+     *
+     * @return true if a change of the current transaction is pending.
+     */
+    public boolean isChangePending() {
+        return TransactionSynchronizationManager.hasResource(this);
+    }
+
+    @Override
+    public void evict(String tenant) {
+        AtomicLong version = versions.evict(tenant);
+        if (version != null) {
+            evictedVersions.accumulateAndGet(version.get(), Math::max);
+        }
+    }
+}
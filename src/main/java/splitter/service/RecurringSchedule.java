@@ -0,0 +1,152 @@
+package splitter.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import splitter.model.RecurringTransaction;
+import splitter.model.Transaction;
+import splitter.model.User;
+import splitter.store.LedgerStore;
+import splitter.tenant.TenantScoped;
+import splitter.tenant.TenantStateHolder;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Recurring transactions that are evaluated analytically instead of being stored as one transaction per occurrence.
+ * <p>
+ * A balance query asks for the accrued amount of every definition up to its date: the number of pending occurrences
+ * is computed in constant time, so each definition costs the same however many periods it has run for.
+ * Occurrences only become transactions when they are materialized explicitly.
+ * Every tenant has its own definitions, loaded again when it is entered after an eviction.
+ */
+@Component
+public class RecurringSchedule implements TenantStateHolder {
+    private final LedgerStore ledgerStore;
+    private final TenantScoped<List<RecurringTransaction>> definitions;
+
+    @Autowired
+    public RecurringSchedule(LedgerStore ledgerStore) {
+        this.ledgerStore = ledgerStore;
+        this.definitions = new TenantScoped<>(tenant -> new ArrayList<>(ledgerStore.findRecurringTransactions()));
+    }
+
+    /**
+     * Loads the stored definitions of the current tenant, if they are not loaded yet.
+     * Runs before any command is accepted, and before the first command of every other tenant.
+     */
+    @PostConstruct
+    public synchronized void load() {
+        definitions.get();
+    }
+
+    @Override
+    public synchronized void evict(String tenant) {
+        definitions.evict(tenant);
+    }
+
+    /**
+     * Stores a new recurring transaction. It counts towards balances once the transaction storing it commits.
+     *
+     * @param recurringTransaction the recurring transaction.
+     * @return the saved recurring transaction.
+     */
+    public synchronized RecurringTransaction add(RecurringTransaction recurringTransaction) {
+        RecurringTransaction saved = ledgerStore.saveRecurringTransaction(recurringTransaction);
+        List<RecurringTransaction> definitions = this.definitions.get();
+        AfterCommit.run(() -> {
+            synchronized (this) {
+                definitions.add(saved);
+            }
+        });
+        return saved;
+    }
+
+    /**
+     * Returns the amount accrued by every definition up to a given date as one transaction per definition,
+     * dated on that date, for the balance calculations to add to the stored transactions.
+     *
+     * @param date      the date of the balance.
+     * @param borrowers the borrowers to include, or an empty set for everyone.
+     * @return the accrued amounts that are not materialized yet.
+     */
+    public synchronized List<Transaction> getAccruedTransactions(LocalDate date, Set<User> borrowers) {
+        List<Transaction> accrued = new ArrayList<>();
+        for (RecurringTransaction definition : definitions.get()) {
+            if (!borrowers.isEmpty() && !borrowers.contains(definition.getBorrower())) {
+                continue;
+            }
+            long count = definition.countPendingUpTo(date);
+            if (count > 0) {
+                accrued.add(new Transaction(definition.getBorrower(),
+                        definition.getLender(),
+                        definition.getAmount().multiply(BigDecimal.valueOf(count)),
+                        date));
+            }
+        }
+        return accrued;
+    }
+
+    /**
+     * Returns every pending occurrence up to a given date as its own transaction, for materializing.
+     *
+     * @param date the last date to include.
+     * @return the pending occurrences, definition by definition in date order.
+     */
+    public synchronized List<Transaction> getPendingOccurrences(LocalDate date) {
+        List<Transaction> occurrences = new ArrayList<>();
+        for (RecurringTransaction definition : definitions.get()) {
+            long count = definition.countPendingUpTo(date);
+            long first = definition.getMaterializedUntil() == null ?
+                    0 :
+                    definition.getPeriod().countUpTo(definition.getStartDate(), definition.getMaterializedUntil());
+            for (long n = first; n < first + count; n++) {
+                occurrences.add(new Transaction(definition.getBorrower(),
+                        definition.getLender(),
+                        definition.getAmount(),
+                        definition.getPeriod().occurrence(definition.getStartDate(), n)));
+            }
+        }
+        return occurrences;
+    }
+
+    /**
+     * Marks the occurrences up to a given date as no longer pending, either because they have been materialized
+     * or because they have been written off.
+     * The loaded definitions are not modified: updated copies are stored, and replace them once the transaction
+     * storing them commits.
+     *
+     * @param date the last date to mark.
+     */
+    public synchronized void markMaterializedUntil(LocalDate date) {
+        List<RecurringTransaction> definitions = this.definitions.get();
+        Map<RecurringTransaction, RecurringTransaction> updates = new IdentityHashMap<>();
+        for (RecurringTransaction definition : definitions) {
+            if (definition.countPendingUpTo(date) > 0) {
+                RecurringTransaction update = new RecurringTransaction(definition.getBorrower(),
+                        definition.getLender(),
+                        definition.getAmount(),
+                        definition.getPeriod(),
+                        definition.getStartDate(),
+                        definition.getEndDate());
+                update.setId(definition.getId());
+                update.setMaterializedUntil(date);
+                updates.put(definition, ledgerStore.saveRecurringTransaction(update));
+            }
+        }
+        if (updates.isEmpty()) {
+            return;
+        }
+        AfterCommit.run(() -> {
+            synchronized (this) {
+                definitions.replaceAll(definition -> updates.getOrDefault(definition, definition));
+            }
+        });
+    }
+}
@@ -0,0 +1,131 @@
+package splitter.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import splitter.model.Debt;
+import splitter.model.User;
+import splitter.tenant.TenantContext;
+import splitter.tenant.TenantStateHolder;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Bounded least-recently-used cache of computed balances, keyed by the tenant, the command, the borrowers, the date
+ * and the {@link LedgerVersion} of the tenant. Tenants share the capacity, so the busiest ledgers keep their entries.
+ * <p>
+ * Every write bumps the version once it has committed, so an entry is only ever found by readers that see the ledger it
+ * was computed from, and nothing is served stale. The version is read before computing: a result that races with a
+ * write is stored under the version before it and is never found once the write has committed. A transaction reading
+ * its own uncommitted writes bypasses the cache, as those belong to no version yet. Entries of older versions can no
+ * longer be found, so the entries of a tenant are dropped together as soon as a result of a newer version is stored, or
+ * when the tenant is evicted.
+ * Callers sort and trim the lists they get, and debts are mutable, so results are copied in and out.
+ */
+@Component
+public class ResultCache implements TenantStateHolder {
+    private static final String REQUESTS = "splitter.result.cache.requests";
+
+    private final LedgerVersion ledgerVersion;
+    private final PrometheusMeterRegistry meterRegistry;
+    private final Map<Key, List<Debt>> entries;
+    private final boolean enabled;
+    private final Map<String, Long> entriesVersions = new HashMap<>();
+
+    private record Key(String tenant, String command, List<Long> borrowerIds, LocalDate date, long version) {
+    }
+
+    @Autowired
+    public ResultCache(LedgerVersion ledgerVersion,
+                       PrometheusMeterRegistry meterRegistry,
+                       @Value("${splitter.result-cache.size:256}") int capacity) {
+        this.ledgerVersion = ledgerVersion;
+        this.meterRegistry = meterRegistry;
+        this.enabled = capacity > 0;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<Debt>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached result of a command, computing and caching it if the ledger changed since.
+     *
+     * @param command the command the result belongs to.
+     * @param users   the borrowers the result is filtered on, empty or null for everyone.
+     * @param date    the date of the result.
+     * @param compute computes the result.
+     * @return the result, which the caller may modify.
+     */
+    public List<Debt> get(String command, Set<User> users, LocalDate date, Supplier<List<Debt>> compute) {
+        if (!enabled || ledgerVersion.isChangePending()) {
+            return compute.get();
+        }
+        String tenant = TenantContext.current();
+        long version = ledgerVersion.current();
+        Key key = new Key(tenant, command, borrowerIds(users), date, version);
+        List<Debt> cached;
+        synchronized (this) {
+            cached = entries.get(key);
+        }
+        requests(command, cached != null ? "hit" : "miss").increment();
+        if (cached != null) {
+            return copy(cached);
+        }
+
+        List<Debt> computed = compute.get();
+        List<Debt> stored = copy(computed);
+        synchronized (this) {
+            long entriesVersion = entriesVersions.getOrDefault(tenant, 0L);
+            if (version > entriesVersion) {
+                entries.keySet().removeIf(entry -> entry.tenant().equals(tenant));
+                entriesVersions.put(tenant, version);
+                entriesVersion = version;
+            }
+            if (version == entriesVersion) {
+                entries.put(key, stored);
+            }
+        }
+        return computed;
+    }
+
+    @Override
+    public synchronized void evict(String tenant) {
+        entries.keySet().removeIf(entry -> entry.tenant().equals(tenant));
+        entriesVersions.remove(tenant);
+    }
+
+    private Counter requests(String command, String result) {
+        return Counter.builder(REQUESTS)
+                .description("Balance result cache requests by command and result")
+                .tag("cache", command)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static List<Long> borrowerIds(Set<User> users) {
+        if (users == null) {
+            return List.of();
+        }
+        return users.stream().map(User::getId).sorted().toList();
+    }
+
+    private static List<Debt> copy(List<Debt> debts) {
+        List<Debt> copy = new ArrayList<>(debts.size());
+        for (Debt debt : debts) {
+            copy.add(new Debt(debt.getBorrower(), debt.getLender(), debt.getAmount()));
+        }
+        return copy;
+    }
+}
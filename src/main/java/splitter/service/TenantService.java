@@ -0,0 +1,150 @@
+package splitter.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import splitter.tenant.TenantContext;
+import splitter.tenant.TenantStateHolder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static splitter.util.ParseUtil.tenantNamePattern;
+
+/**
+ * Selects the tenant that commands and queries work on.
+ * Tenant ledgers live in database schemas, so they need an engine that stores the ledger in the database:
+ * the memory and journal engines only serve the default tenant.
+ * <p>
+ * The in-memory state of a tenant, such as its balance index, is loaded when it is entered and kept while it is used.
+ * A tenant no thread has entered for {@code splitter.tenants.idle-timeout-seconds} is evicted from every
+ * {@link TenantStateHolder}, so that a JVM serving many tenants only holds the state of the busy ones; the next
+ * time it is entered, its state is loaded again. Idle tenants are looked for when a tenant is entered, at most once
+ * per timeout, so a tenant is evicted between one and two timeouts after it was last left. The default tenant is
+ * never evicted.
+ */
+@Service
+public class TenantService {
+    private final BalanceIndex balanceIndex;
+    private final RecurringSchedule recurringSchedule;
+    private final WriteBehindQueue writeBehindQueue;
+    private final List<TenantStateHolder> stateHolders;
+    private final boolean tenantsSupported;
+    private final long idleTimeoutNanos;
+    private final ThreadLocal<String> entered = new ThreadLocal<>();
+    private final Map<String, Integer> threadsByTenant = new HashMap<>();
+    private final Map<String, Long> leftAt = new HashMap<>();
+    private long nextEviction;
+
+    @Autowired
+    public TenantService(BalanceIndex balanceIndex,
+                         RecurringSchedule recurringSchedule,
+                         WriteBehindQueue writeBehindQueue,
+                         List<TenantStateHolder> stateHolders,
+                         @Value("${splitter.ledger.engine:jpa}") String engine,
+                         @Value("${splitter.tenants.idle-timeout-seconds:900}") long idleTimeoutSeconds) {
+        this.balanceIndex = balanceIndex;
+        this.recurringSchedule = recurringSchedule;
+        this.writeBehindQueue = writeBehindQueue;
+        this.stateHolders = stateHolders;
+        this.tenantsSupported = engine.equals("jpa") || engine.equals("jdbc");
+        this.idleTimeoutNanos = idleTimeoutSeconds * 1_000_000_000L;
+        this.nextEviction = System.nanoTime() + idleTimeoutNanos;
+    }
+
+    /**
+     * Returns the tenant selected by a name.
+     *
+     * @param name the tenant name, or null for the default tenant.
+     * @return the tenant, to be entered with {@link #enter(String)}.
+     * @throws IllegalArgumentException if the name is invalid or the engine has no tenants
+     */
+    public String resolve(String name) throws IllegalArgumentException {
+        if (name == null || name.equals(TenantContext.DEFAULT)) {
+            return TenantContext.DEFAULT;
+        }
+        if (!tenantNamePattern.matcher(name).matches()) {
+            throw new IllegalArgumentException("Illegal tenant name");
+        }
+        if (!tenantsSupported) {
+            throw new IllegalArgumentException("Tenants need the jpa or jdbc engine");
+        }
+        return name;
+    }
+
+    /**
+     * Makes a tenant the tenant of the current thread until {@link #leave()} is called, leaving the tenant the
+     * thread had entered before, if any. The in-memory state of the ledger is loaded if it is not loaded yet,
+     * because the tenant is entered for the first time or was evicted, before it can run any command.
+     *
+     * @param tenant the tenant returned by {@link #resolve(String)}.
+     */
+    public void enter(String tenant) {
+        long now = System.nanoTime();
+        synchronized (this) {
+            release(entered.get(), now);
+            if (!tenant.equals(TenantContext.DEFAULT)) {
+                threadsByTenant.merge(tenant, 1, Integer::sum);
+                leftAt.remove(tenant);
+            }
+            if (idleTimeoutNanos > 0 && now - nextEviction >= 0) {
+                evictIdleTenants(now);
+                nextEviction = now + idleTimeoutNanos;
+            }
+        }
+        entered.set(tenant);
+        TenantContext.set(tenant);
+        balanceIndex.build();
+        recurringSchedule.load();
+    }
+
+    /**
+     * Leaves the tenant entered by the current thread, and puts the thread back on the default tenant.
+     * Must be called once the thread is done with the tenant, as a tenant is never evicted while a thread is in it.
+     */
+    public void leave() {
+        String tenant = entered.get();
+        entered.remove();
+        TenantContext.clear();
+        synchronized (this) {
+            release(tenant, System.nanoTime());
+        }
+    }
+
+    /**
+     * Evicts every tenant that no thread is in and that was left at least one timeout before a given time.
+     * Writes still queued are committed first, as they change the state of the tenant that submitted them.
+     *
+     * @param now the time, in {@link System#nanoTime()} units.
+     * @return the evicted tenants.
+     */
+    synchronized List<String> evictIdleTenants(long now) {
+        List<String> idle = new ArrayList<>();
+        leftAt.forEach((tenant, left) -> {
+            if (now - left >= idleTimeoutNanos) {
+                idle.add(tenant);
+            }
+        });
+        if (idle.isEmpty()) {
+            return idle;
+        }
+        writeBehindQueue.awaitAllWrites();
+        for (String tenant : idle) {
+            leftAt.remove(tenant);
+            stateHolders.forEach(holder -> holder.evict(tenant));
+        }
+        return idle;
+    }
+
+    private void release(String tenant, long now) {
+        if (tenant == null || tenant.equals(TenantContext.DEFAULT)) {
+            return;
+        }
+        if (threadsByTenant.merge(tenant, -1, Integer::sum) == 0) {
+            threadsByTenant.remove(tenant);
+            leftAt.put(tenant, now);
+        }
+    }
+}
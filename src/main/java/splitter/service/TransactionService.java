@@ -1,32 +1,62 @@
 package splitter.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import splitter.diagnostics.CommandTrace;
 import splitter.model.Debt;
+import splitter.model.RecurringTransaction;
+import splitter.model.StatementEntry;
 import splitter.model.Transaction;
 import splitter.model.User;
-import splitter.repository.TransactionRepository;
+import splitter.store.LedgerStore;
+import splitter.store.TransactionArchive;
+import splitter.util.SelectionUtil;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Path;
 import java.time.LocalDate;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class TransactionService {
-    private final TransactionRepository transactionRepository;
+    private static final LocalDate BEGINNING_OF_TIME = LocalDate.of(1, 1, 1);
+
+    private final LedgerStore ledgerStore;
+    private final LedgerVersion ledgerVersion;
+    private final WriteBehindQueue writeBehindQueue;
+    private final BalanceIndex balanceIndex;
+    private final RecurringSchedule recurringSchedule;
+    private final ResultCache resultCache;
+    private final Path archiveDirectory;
 
     @Autowired
-    public TransactionService(TransactionRepository transactionRepository) {
-        this.transactionRepository = transactionRepository;
+    public TransactionService(LedgerStore ledgerStore,
+                              LedgerVersion ledgerVersion,
+                              WriteBehindQueue writeBehindQueue,
+                              BalanceIndex balanceIndex,
+                              RecurringSchedule recurringSchedule,
+                              ResultCache resultCache,
+                              @Value("${splitter.archive.dir:archive}") String archiveDirectory) {
+        this.ledgerStore = ledgerStore;
+        this.ledgerVersion = ledgerVersion;
+        this.writeBehindQueue = writeBehindQueue;
+        this.balanceIndex = balanceIndex;
+        this.recurringSchedule = recurringSchedule;
+        this.resultCache = resultCache;
+        this.archiveDirectory = Path.of(archiveDirectory);
     }
 
     /**
      * Retrieves debts for a set of users on a given date.
+     * The result is cached until the next write to the ledger.
      *
      * @param users the users to get the debts for.
      * @param date  the date of the debts.
@@ -34,7 +64,155 @@ public class TransactionService {
      */
     @Transactional
     public List<Debt> getDebtsForUsers(Set<User> users, LocalDate date) {
-        return calculateDebts(date, users);
+        awaitOwnWrites();
+        return resultCache.get("balance", users, date, () -> calculateDebts(date, users));
+    }
+
+    /**
+     * Retrieves one page of the debts of a set of users on a given date, in borrower and lender order.
+     * With the balance index, the page is read from the pairs in key order without calculating the other debts;
+     * otherwise the debts are calculated and the page is selected with a bounded heap.
+     *
+     * @param users         the users to get the debts for.
+     * @param date          the date of the debts.
+     * @param afterBorrower the borrower of the key to continue after, or null to start from the first debt.
+     * @param afterLender   the lender of the key to continue after; ignored without a borrower.
+     * @param skip          the number of debts to skip before the page.
+     * @param size          the page size.
+     * @return the debts of the page, sorted by borrower and lender.
+     * @throws IllegalArgumentException if the page is too deep to select without the index.
+     */
+    @Transactional
+    public List<Debt> getDebtPage(Set<User> users, LocalDate date, User afterBorrower, User afterLender,
+                                  long skip, int size) throws IllegalArgumentException {
+        awaitOwnWrites();
+        Set<User> borrowers = users == null ? Set.of() : users;
+        if (balanceIndex.isEnabled()) {
+            List<Transaction> accrued = recurringSchedule.getAccruedTransactions(date, borrowers);
+            try (CommandTrace.Stage stage = CommandTrace.stage("index")) {
+                List<Debt> page = balanceIndex.getDebtPage(borrowers, date, accrued, afterBorrower, afterLender,
+                        skip, size);
+                stage.rows(page.size());
+                return page;
+            }
+        }
+        long limit = skip + size;
+        if (limit > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Illegal command arguments");
+        }
+        Debt after = afterBorrower == null ? null : new Debt(afterBorrower, afterLender, BigDecimal.ZERO);
+        List<Debt> debts = resultCache.get("balance", users, date, () -> calculateDebts(date, users));
+        List<Debt> selected = SelectionUtil.selectFirstAfter(debts, after, (int) limit,
+                Comparator.comparing(Debt::getBorrower).thenComparing(Debt::getLender));
+        return selected.size() > skip ?
+                new ArrayList<>(selected.subList((int) skip, selected.size())) :
+                new ArrayList<>();
+    }
+
+    /**
+     * Retrieves the repayments that settle the debts of a set of users on a given date.
+     * The result is cached until the next write to the ledger.
+     *
+     * @param users the users to get the repayments for.
+     * @param date  the date of the debts.
+     * @return a list of repayments, each one as a debt from the debtor to the creditor.
+     */
+    @Transactional
+    public List<Debt> getRepaymentsForUsers(Set<User> users, LocalDate date) {
+        awaitOwnWrites();
+        return resultCache.get("balancePerfect", users, date, () -> calculateRepayments(
+                resultCache.get("balance", users, date, () -> calculateDebts(date, users))));
+    }
+
+    /**
+     * Retrieves the debts of several balance reports on a given date with a single pass over the ledger,
+     * instead of one query per report.
+     *
+     * @param filters the borrowers of each report, an empty set for everyone, or null for an empty report.
+     * @param date    the date of the debts.
+     * @return a list of debts per report, in the order of the filters.
+     */
+    @Transactional
+    public List<List<Debt>> getDebtsForReports(List<Set<User>> filters, LocalDate date) {
+        writeBehindQueue.awaitOwnWrites();
+        List<Transaction> accrued = recurringSchedule.getAccruedTransactions(date, Set.of());
+        if (balanceIndex.isEnabled()) {
+            return balanceIndex.getDebtsForReports(filters, date, accrued);
+        }
+        BalanceReports reports = new BalanceReports(filters);
+        for (List<Transaction> transactions : List.of(ledgerStore.sumTransactionsUpTo(date, Set.of()), accrued)) {
+            for (Transaction transaction : transactions) {
+                reports.add(transaction.getBorrower(),
+                        transaction.getLender(),
+                        transaction.getAmount().setScale(2, RoundingMode.HALF_EVEN).unscaledValue().longValueExact());
+            }
+        }
+        return reports.getDebts();
+    }
+
+    /**
+     * Calculates the net balance of a user on a given date from the user's own transactions.
+     * A positive balance means the user is owed money.
+     *
+     * @param user the user.
+     * @param date the date of the balance.
+     * @return the net balance of the user.
+     */
+    @Transactional(readOnly = true)
+    public BigDecimal getNetBalance(User user, LocalDate date) {
+        writeBehindQueue.awaitOwnWrites();
+        BigDecimal balance = BigDecimal.ZERO.setScale(2);
+        try (Stream<Transaction> borrowed = ledgerStore.streamTransactionsOfBorrower(user, BEGINNING_OF_TIME, date);
+             Stream<Transaction> lent = ledgerStore.streamTransactionsOfLender(user, BEGINNING_OF_TIME, date)) {
+            balance = borrowed.map(Transaction::getAmount).reduce(balance, BigDecimal::subtract);
+            balance = lent.map(Transaction::getAmount).reduce(balance, BigDecimal::add);
+        }
+        return balance;
+    }
+
+    /**
+     * Streams the statement of a user: every transaction in which the user borrowed or lent, in date order,
+     * with the running net balance. The borrowed and lent sides are read as two date-ordered range scans
+     * and merged, so each entry is passed on as soon as it is read.
+     *
+     * @param user     the user.
+     * @param from     the first date to include, or null to start from the first transaction.
+     * @param to       the last date to include.
+     * @param opening  the net balance of the user before the first date.
+     * @param consumer the consumer of the statement entries.
+     * @return the net balance of the user on the last date.
+     */
+    @Transactional(readOnly = true)
+    public BigDecimal streamStatement(User user, LocalDate from, LocalDate to, BigDecimal opening,
+                                      Consumer<StatementEntry> consumer) {
+        writeBehindQueue.awaitOwnWrites();
+        LocalDate first = from != null ? from : BEGINNING_OF_TIME;
+        try (Stream<Transaction> borrowedStream = ledgerStore.streamTransactionsOfBorrower(user, first, to);
+             Stream<Transaction> lentStream = ledgerStore.streamTransactionsOfLender(user, first, to)) {
+            Iterator<Transaction> borrowed = borrowedStream.iterator();
+            Iterator<Transaction> lent = lentStream.iterator();
+            Transaction nextBorrowed = borrowed.hasNext() ? borrowed.next() : null;
+            Transaction nextLent = lent.hasNext() ? lent.next() : null;
+            BigDecimal balance = opening;
+            while (nextBorrowed != null || nextLent != null) {
+                Transaction transaction;
+                if (nextLent == null || nextBorrowed != null && !nextBorrowed.getDate().isAfter(nextLent.getDate())) {
+                    transaction = nextBorrowed;
+                    balance = balance.subtract(transaction.getAmount());
+                    nextBorrowed = borrowed.hasNext() ? borrowed.next() : null;
+                } else {
+                    transaction = nextLent;
+                    balance = balance.add(transaction.getAmount());
+                    nextLent = lent.hasNext() ? lent.next() : null;
+                }
+                consumer.accept(new StatementEntry(transaction.getDate(),
+                        transaction.getBorrower(),
+                        transaction.getLender(),
+                        transaction.getAmount(),
+                        balance));
+            }
+            return balance;
+        }
     }
 
     /**
@@ -44,7 +222,53 @@ public class TransactionService {
      * @return the created transaction.
      */
     public Transaction createTransaction(Transaction transaction) {
-        return transactionRepository.save(transaction);
+        Transaction saved = ledgerStore.saveTransaction(transaction);
+        balanceIndex.add(saved);
+        ledgerVersion.increment();
+        return saved;
+    }
+
+    /**
+     * Creates several transactions as one batch write.
+     *
+     * @param transactions the transactions to create.
+     * @return the created transactions, in the same order.
+     */
+    public List<Transaction> createTransactions(List<Transaction> transactions) {
+        List<Transaction> saved = ledgerStore.saveTransactions(transactions);
+        saved.forEach(balanceIndex::add);
+        ledgerVersion.increment();
+        return saved;
+    }
+
+    /**
+     * Submits several transactions, as one batch write or through the write-behind queue when it is enabled.
+     *
+     * @param transactions the transactions to create.
+     * @return a future completed with the created transactions once they have all been committed.
+     */
+    public CompletableFuture<List<Transaction>> submitTransactions(List<Transaction> transactions) {
+        if (writeBehindQueue.isEnabled()) {
+            List<CompletableFuture<Transaction>> futures = transactions.stream()
+                    .map(writeBehindQueue::submit)
+                    .toList();
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                    .thenApply(ignored -> futures.stream().map(CompletableFuture::join).toList());
+        }
+        return CompletableFuture.completedFuture(createTransactions(transactions));
+    }
+
+    /**
+     * Submits a new transaction, through the write-behind queue when it is enabled.
+     *
+     * @param transaction the transaction to create.
+     * @return a future completed with the created transaction once it has been committed.
+     */
+    public CompletableFuture<Transaction> submitTransaction(Transaction transaction) {
+        if (writeBehindQueue.isEnabled()) {
+            return writeBehindQueue.submit(transaction);
+        }
+        return CompletableFuture.completedFuture(createTransaction(transaction));
     }
 
     /**
@@ -55,7 +279,293 @@ public class TransactionService {
      */
     @Transactional
     public int deleteTransactionsBeforeDate(LocalDate date) {
-        return transactionRepository.deleteByDateBefore(date);
+        writeBehindQueue.awaitAllWrites();
+        int deleted = ledgerStore.deleteTransactionsBefore(date);
+        balanceIndex.removeBefore(date);
+        recurringSchedule.markMaterializedUntil(date.minusDays(1));
+        ledgerVersion.increment();
+        return deleted;
+    }
+
+    /**
+     * Creates recurring transactions, whose occurrences count towards balances without being stored.
+     *
+     * @param recurringTransactions the recurring transactions to create.
+     */
+    @Transactional
+    public void createRecurringTransactions(List<RecurringTransaction> recurringTransactions) {
+        recurringTransactions.forEach(recurringSchedule::add);
+        ledgerVersion.increment();
+    }
+
+    /**
+     * Stores the pending occurrences of every recurring transaction up to a given date as transactions.
+     * Balances are unchanged.
+     *
+     * @param date the last date to materialize.
+     * @return the number of transactions created.
+     */
+    @Transactional
+    public int materializeRecurringTransactions(LocalDate date) {
+        writeBehindQueue.awaitAllWrites();
+        List<Transaction> occurrences = recurringSchedule.getPendingOccurrences(date);
+        recurringSchedule.markMaterializedUntil(date);
+        if (!occurrences.isEmpty()) {
+            createTransactions(occurrences);
+        }
+        ledgerVersion.increment();
+        return occurrences.size();
+    }
+
+    /**
+     * Compacts the transactions before a given date into one opening-balance transaction per borrower and lender,
+     * dated the day before, and moves the original transactions to an archive file.
+     * Balances on and after that day are unchanged.
+     *
+     * @param date the date to compact transactions before.
+     * @return the archive file holding the original transactions.
+     * @throws IllegalArgumentException if there is nothing to compact or the archive cannot be written
+     */
+    public Path compactTransactionsBeforeDate(LocalDate date) {
+        writeBehindQueue.awaitAllWrites();
+        LocalDate openingDate = date.minusDays(1);
+        List<Transaction> archived = ledgerStore.findTransactionsUpTo(openingDate);
+        if (archived.isEmpty()) {
+            throw new IllegalArgumentException("No transactions to compact");
+        }
+
+        Map<String, Transaction> openingMap = new LinkedHashMap<>();
+        for (Transaction transaction : archived) {
+            String key = transaction.getBorrower().getId() + "-" + transaction.getLender().getId();
+            Transaction opening = openingMap.get(key);
+            openingMap.put(key, new Transaction(transaction.getBorrower(),
+                    transaction.getLender(),
+                    opening == null ? transaction.getAmount() : opening.getAmount().add(transaction.getAmount()),
+                    openingDate));
+        }
+        List<Transaction> openings = new ArrayList<>(openingMap.values());
+
+        Path archive = archiveDirectory.resolve("writeOff-" + openingDate + "-" + System.currentTimeMillis() + ".bin.gz");
+        try {
+            TransactionArchive.write(archive, date, archived, openings);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot write archive " + archive);
+        }
+        replaceTransactionsBefore(date, openings);
+        return archive;
+    }
+
+    /**
+     * Restores the transactions of a compaction archive, taking its opening-balance transactions back out.
+     * Transactions added before the compaction date since the compaction are kept.
+     *
+     * @param archive the archive file written by {@link #compactTransactionsBeforeDate(LocalDate)}.
+     * @return the number of transactions restored.
+     * @throws IllegalArgumentException if the archive cannot be read or its opening balances are no longer in the ledger
+     */
+    public int restoreArchive(Path archive) {
+        TransactionArchive.Contents contents;
+        try {
+            contents = TransactionArchive.read(archive);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read archive " + archive);
+        }
+        writeBehindQueue.awaitAllWrites();
+
+        Map<TransactionArchive.Row, Integer> openingCounts = new HashMap<>();
+        for (TransactionArchive.Row opening : contents.openings()) {
+            openingCounts.merge(opening, 1, Integer::sum);
+        }
+        List<Transaction> replacement = new ArrayList<>();
+        for (Transaction transaction : ledgerStore.findTransactionsUpTo(contents.cutoff().minusDays(1))) {
+            TransactionArchive.Row row = new TransactionArchive.Row(transaction.getBorrower().getName(),
+                    transaction.getLender().getName(),
+                    transaction.getAmount().movePointRight(2).longValueExact(),
+                    (int) transaction.getDate().toEpochDay());
+            if (openingCounts.getOrDefault(row, 0) > 0) {
+                openingCounts.merge(row, -1, Integer::sum);
+            } else {
+                replacement.add(transaction);
+            }
+        }
+        if (openingCounts.values().stream().anyMatch(count -> count > 0)) {
+            throw new IllegalArgumentException("Archive does not match the ledger");
+        }
+
+        Map<String, User> usersByName = new HashMap<>();
+        for (TransactionArchive.Row row : contents.archived()) {
+            replacement.add(new Transaction(
+                    usersByName.computeIfAbsent(row.borrower(), this::getOrCreateUser),
+                    usersByName.computeIfAbsent(row.lender(), this::getOrCreateUser),
+                    BigDecimal.valueOf(row.cents(), 2),
+                    LocalDate.ofEpochDay(row.epochDay())));
+        }
+        replaceTransactionsBefore(contents.cutoff(), replacement);
+        return contents.archived().size();
+    }
+
+    /**
+     * Calculates the minimal set of repayments that settles the provided debts.
+     * The debt graph is split into connected components, which are settled independently
+     * and in parallel on the common {@link java.util.concurrent.ForkJoinPool}.
+     * A repayment never crosses components, where a single settlement of everyone could pair a debtor and a
+     * creditor of different components, so the repayments are not in the order of such a settlement: they are
+     * ordered by debtor and creditor, as the debts of a balance are.
+     *
+     * @param debts the list of debts representing the borrow and lend transactions.
+     * @return a list of repayments, each one as a debt from the debtor to the creditor, ordered by debtor and creditor.
+     */
+    public List<Debt> calculateRepayments(List<Debt> debts) {
+        List<Map<User, BigDecimal>> components = splitIntoComponents(debts);
+        Stream<Map<User, BigDecimal>> stream = components.size() > 1 ?
+                components.parallelStream() :
+                components.stream();
+        return stream.map(this::settleComponent)
+                .flatMap(List::stream)
+                .sorted(Comparator.comparing(Debt::getBorrower).thenComparing(Debt::getLender))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Splits the net amounts of the provided debts into the connected components of the debt graph,
+     * using union-find over the borrower and lender of each debt.
+     * Components in which everyone is already settled are left out.
+     *
+     * @param debts the list of debts representing the borrow and lend transactions.
+     * @return the net amounts of the users of each component.
+     */
+    private List<Map<User, BigDecimal>> splitIntoComponents(List<Debt> debts) {
+        Map<User, BigDecimal> netAmounts = calculateNetAmounts(debts);
+        Map<User, Integer> indexes = new HashMap<>();
+        List<User> users = new ArrayList<>();
+        for (User user : netAmounts.keySet()) {
+            indexes.put(user, users.size());
+            users.add(user);
+        }
+
+        int[] parents = new int[users.size()];
+        int[] sizes = new int[users.size()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = i;
+            sizes[i] = 1;
+        }
+        for (Debt debt : debts) {
+            int borrowerRoot = findRoot(parents, indexes.get(debt.borrower()));
+            int lenderRoot = findRoot(parents, indexes.get(debt.lender()));
+            if (borrowerRoot == lenderRoot) {
+                continue;
+            }
+            if (sizes[borrowerRoot] < sizes[lenderRoot]) {
+                int root = borrowerRoot;
+                borrowerRoot = lenderRoot;
+                lenderRoot = root;
+            }
+            parents[lenderRoot] = borrowerRoot;
+            sizes[borrowerRoot] += sizes[lenderRoot];
+        }
+
+        Map<Integer, Map<User, BigDecimal>> components = new LinkedHashMap<>();
+        for (int i = 0; i < parents.length; i++) {
+            User user = users.get(i);
+            BigDecimal netAmount = netAmounts.get(user);
+            if (netAmount.signum() != 0) {
+                components.computeIfAbsent(findRoot(parents, i), root -> new HashMap<>()).put(user, netAmount);
+            }
+        }
+        return new ArrayList<>(components.values());
+    }
+
+    /**
+     * Finds the root of an element in a union-find forest, halving the path on the way.
+     *
+     * @param parents the parent of each element.
+     * @param element the element to find the root of.
+     * @return the root of the element.
+     */
+    private static int findRoot(int[] parents, int element) {
+        while (parents[element] != element) {
+            parents[element] = parents[parents[element]];
+            element = parents[element];
+        }
+        return element;
+    }
+
+    /**
+     * Settles one connected component by repeatedly matching the largest debtor with the largest creditor.
+     *
+     * @param netAmounts the net amounts of the users of the component; consumed by the settlement.
+     * @return a list of repayments, each one as a debt from the debtor to the creditor.
+     */
+    private List<Debt> settleComponent(Map<User, BigDecimal> netAmounts) {
+        PriorityQueue<User> debtQueue = new PriorityQueue<>(Comparator.comparing(netAmounts::get));
+        PriorityQueue<User> creditQueue = new PriorityQueue<>(Comparator.comparing(user -> netAmounts.get(user).negate()));
+
+        for (User user : netAmounts.keySet()) {
+            if (netAmounts.get(user).compareTo(BigDecimal.ZERO) < 0) {
+                debtQueue.add(user);
+            } else if (netAmounts.get(user).compareTo(BigDecimal.ZERO) > 0) {
+                creditQueue.add(user);
+            }
+        }
+
+        List<Debt> repayments = new ArrayList<>();
+        while (!debtQueue.isEmpty() && !creditQueue.isEmpty()) {
+            User debtor = debtQueue.poll();
+            User creditor = creditQueue.poll();
+
+            BigDecimal debt = netAmounts.get(debtor).negate();
+            BigDecimal credit = netAmounts.get(creditor);
+
+            if (debt.compareTo(credit) <= 0) {
+                repayments.add(new Debt(debtor, creditor, debt));
+                netAmounts.put(creditor, credit.subtract(debt));
+                if (netAmounts.get(creditor).compareTo(BigDecimal.ZERO) > 0) {
+                    creditQueue.add(creditor);
+                }
+            } else {
+                repayments.add(new Debt(debtor, creditor, credit));
+                netAmounts.put(debtor, debt.subtract(credit).negate());
+                if (netAmounts.get(debtor).compareTo(BigDecimal.ZERO) < 0) {
+                    debtQueue.add(debtor);
+                }
+            }
+        }
+        return repayments;
+    }
+
+    /**
+     * Calculates the net amounts owed by each user based on the provided list of debts.
+     *
+     * @param debts the list of debts representing the borrow and lend transactions.
+     * @return a map where the keys are the users and the values are their corresponding net amounts.
+     */
+    private Map<User, BigDecimal> calculateNetAmounts(List<Debt> debts) {
+        Map<User, BigDecimal> netAmounts = new HashMap<>();
+        for (Debt debt : debts) {
+            netAmounts.put(debt.borrower(), netAmounts.getOrDefault(debt.borrower(), BigDecimal.ZERO).subtract(debt.amount()));
+            netAmounts.put(debt.lender(), netAmounts.getOrDefault(debt.lender(), BigDecimal.ZERO).add(debt.amount()));
+        }
+        return netAmounts;
+    }
+
+    private void replaceTransactionsBefore(LocalDate date, List<Transaction> replacement) {
+        ledgerStore.replaceTransactionsBefore(date, replacement);
+        balanceIndex.removeBefore(date);
+        replacement.forEach(balanceIndex::add);
+        ledgerVersion.increment();
+    }
+
+    /**
+     * Waits for the transactions submitted by this thread, as the first stage of a read, so that it sees them.
+     */
+    private void awaitOwnWrites() {
+        try (CommandTrace.Stage stage = CommandTrace.stage("awaitWrites")) {
+            stage.rows(writeBehindQueue.awaitOwnWrites());
+        }
+    }
+
+    private User getOrCreateUser(String name) {
+        return ledgerStore.findUserByName(name).orElseGet(() -> ledgerStore.saveUser(new User(name)));
     }
 
     /**
@@ -66,12 +576,28 @@ public class TransactionService {
      * @return a list of debts for the users on the given date.
      */
     private List<Debt> calculateDebts(LocalDate date, Set<User> users) {
-        List<Transaction> transactions =
-                users != null && !users.isEmpty() ?
-                        transactionRepository.findAllByDateAndBeforeForUsers(date, users) :
-                        transactionRepository.findAllByDateAndBefore(date);
-        Map<String, Debt> debtMap = calculateDebtMap(transactions);
-        return extractPositiveDebts(debtMap);
+        Set<User> borrowers = users == null ? Set.of() : users;
+        List<Transaction> accrued;
+        try (CommandTrace.Stage stage = CommandTrace.stage("accrue")) {
+            accrued = recurringSchedule.getAccruedTransactions(date, borrowers);
+            stage.rows(accrued.size());
+        }
+        if (balanceIndex.isEnabled()) {
+            try (CommandTrace.Stage stage = CommandTrace.stage("index")) {
+                List<Debt> debts = balanceIndex.getDebtsForUsers(borrowers, date, accrued);
+                stage.rows(debts.size());
+                return debts;
+            }
+        }
+        List<Transaction> transactions = ledgerStore.sumTransactionsUpTo(date, borrowers);
+        try (CommandTrace.Stage stage = CommandTrace.stage("aggregate")) {
+            Map<String, Debt> debtMap = calculateDebtMap(transactions);
+            for (Transaction transaction : accrued) {
+                updateDebtsForTransaction(transaction, debtMap);
+            }
+            stage.rows(transactions.size() + accrued.size());
+            return extractPositiveDebts(debtMap);
+        }
     }
 
     /**
@@ -80,7 +606,7 @@ public class TransactionService {
      * @param transactions the transactions to calculate the debt map from.
      * @return a map of debts.
      */
-    private Map<String, Debt> calculateDebtMap(List<Transaction> transactions) {
+    Map<String, Debt> calculateDebtMap(List<Transaction> transactions) {
         Map<String, Debt> debtMap = new HashMap<>();
         for (Transaction transaction : transactions) {
             updateDebtsForTransaction(transaction, debtMap);
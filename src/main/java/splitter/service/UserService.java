@@ -3,11 +3,13 @@ package splitter.service;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import splitter.model.User;
-import splitter.repository.UserRepository;
+import splitter.store.LedgerStore;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 
 import static splitter.util.ParseUtil.groupNameWithSignPattern;
@@ -15,12 +17,12 @@ import static splitter.util.ParseUtil.nameWithSignPattern;
 
 @Service
 public class UserService {
-    private final UserRepository userRepository;
+    private final LedgerStore ledgerStore;
     private final GroupService groupService;
 
     @Autowired
-    public UserService(UserRepository userRepository, GroupService groupService) {
-        this.userRepository = userRepository;
+    public UserService(LedgerStore ledgerStore, GroupService groupService) {
+        this.ledgerStore = ledgerStore;
         this.groupService = groupService;
     }
 
@@ -31,7 +33,17 @@ public class UserService {
      * @return User fetched or created
      */
     public User getOrCreateUserByName(String name) {
-        return userRepository.findByName(name).orElseGet(() -> userRepository.save(new User(name)));
+        return ledgerStore.findUserByName(name).orElseGet(() -> ledgerStore.saveUser(new User(name)));
+    }
+
+    /**
+     * Fetches an existing user by name.
+     *
+     * @param name User name
+     * @return User fetched, if any
+     */
+    public Optional<User> findUserByName(String name) {
+        return ledgerStore.findUserByName(name);
     }
 
     /**
@@ -41,11 +53,25 @@ public class UserService {
      * @return Set of filtered users
      */
     public Set<User> filterUsersAndGroups(List<String> names) {
+        return filterUsersAndGroups(names, this::getOrCreateUserByName);
+    }
+
+    /**
+     * Filters users and groups based on the input names without creating unknown users.
+     *
+     * @param names List of user and group names
+     * @return Set of filtered existing users
+     */
+    public Set<User> filterExistingUsersAndGroups(List<String> names) {
+        return filterUsersAndGroups(names, name -> ledgerStore.findUserByName(name).orElse(null));
+    }
+
+    private Set<User> filterUsersAndGroups(List<String> names, Function<String, User> userResolver) {
         Set<User> includedUsers = new TreeSet<>();
         Set<User> excludedUsers = new TreeSet<>();
 
         for (String name : names) {
-            processNameForIncludedAndExcludedUsers(name, includedUsers, excludedUsers, false);
+            processNameForIncludedAndExcludedUsers(name, includedUsers, excludedUsers, false, userResolver);
         }
         includedUsers.removeAll(excludedUsers);
         return includedUsers;
@@ -62,7 +88,7 @@ public class UserService {
         Set<User> excludedUsers = new TreeSet<>();
 
         for (String name : names) {
-            processNameForIncludedAndExcludedUsers(name, includedUsers, excludedUsers, true);
+            processNameForIncludedAndExcludedUsers(name, includedUsers, excludedUsers, true, this::getOrCreateUserByName);
         }
         excludedUsers.removeAll(includedUsers);
         return excludedUsers.isEmpty() ? includedUsers : excludedUsers;
@@ -75,19 +101,21 @@ public class UserService {
      * @param includedUsers Set of users to be included
      * @param excludedUsers Set of users to be excluded
      * @param isRemoveOperation Flag indicating if it is a remove operation
+     * @param userResolver Function resolving a user name to a user, or to null if the user should be skipped
      */
     private void processNameForIncludedAndExcludedUsers(String name,
                                                         Set<User> includedUsers,
                                                         Set<User> excludedUsers,
-                                                        boolean isRemoveOperation) {
+                                                        boolean isRemoveOperation,
+                                                        Function<String, User> userResolver) {
         Matcher matcher = groupNameWithSignPattern.matcher(name);
         boolean shouldExclude = name.startsWith("-") || (isRemoveOperation && name.startsWith("+"));
         String strippedName = name.replaceAll("[-+]", "");
 
         if (matcher.matches()) {
-            handleNameMatching(shouldExclude, strippedName, includedUsers, excludedUsers, true);
+            handleNameMatching(shouldExclude, strippedName, includedUsers, excludedUsers, true, userResolver);
         } else if (nameWithSignPattern.matcher(name).matches()) {
-            handleNameMatching(shouldExclude, strippedName, includedUsers, excludedUsers, false);
+            handleNameMatching(shouldExclude, strippedName, includedUsers, excludedUsers, false, userResolver);
         }
     }
 
@@ -99,23 +127,21 @@ public class UserService {
      * @param includedUsers Set of users to be included
      * @param excludedUsers Set of users to be excluded
      * @param isGroup Flag indicating if the name is a group name
+     * @param userResolver Function resolving a user name to a user, or to null if the user should be skipped
      */
     private void handleNameMatching(boolean shouldExclude,
                                     String strippedName,
                                     Set<User> includedUsers,
                                     Set<User> excludedUsers,
-                                    boolean isGroup) {
-        if (shouldExclude) {
-            if (isGroup) {
-                excludedUsers.addAll(groupService.getUsersByGroupName(strippedName));
-            } else {
-                excludedUsers.add(getOrCreateUserByName(strippedName));
-            }
+                                    boolean isGroup,
+                                    Function<String, User> userResolver) {
+        Set<User> target = shouldExclude ? excludedUsers : includedUsers;
+        if (isGroup) {
+            target.addAll(groupService.getUsersByGroupName(strippedName));
         } else {
-            if (isGroup) {
-                includedUsers.addAll(groupService.getUsersByGroupName(strippedName));
-            } else {
-                includedUsers.add(getOrCreateUserByName(strippedName));
+            User user = userResolver.apply(strippedName);
+            if (user != null) {
+                target.add(user);
             }
         }
     }
@@ -0,0 +1,192 @@
+package splitter.service;
+
+import org.apache.commons.rng.sampling.distribution.DiscreteSampler;
+import org.apache.commons.rng.sampling.distribution.RejectionInversionZipfSampler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import splitter.model.Group;
+import splitter.model.Transaction;
+import splitter.model.User;
+import splitter.model.WorkloadSpec;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Fills the ledger with a synthetic workload shaped like real usage, for benchmarks, profiling and capacity planning.
+ * <p>
+ * Users take part with a Zipf-skewed popularity: a few users are in many groups and most borrows, and most users
+ * are rarely seen. Ranks are drawn with the rejection-inversion Zipf sampler of Apache Commons RNG, in constant
+ * expected time and without a table, and which users are popular is itself drawn at random. Group sizes are log-uniform, and amounts are
+ * log-uniform as well. Everything comes from one seeded generator consumed in a fixed order, so the same
+ * parameters always produce the same ledger. Transactions are written through the batch path,
+ * {@value #BATCH_SIZE} at a time, so the ledger never holds more than one batch in memory on this side.
+ */
+@Service
+public class WorkloadGenerator {
+    private static final int BATCH_SIZE = 10_000;
+    private static final String USER_PREFIX = "User";
+    private static final String GROUP_PREFIX = "GEN";
+
+    private final UserService userService;
+    private final GroupService groupService;
+    private final TransactionService transactionService;
+
+    /**
+     * The size of a generated workload.
+     *
+     * @param users        the number of users.
+     * @param groups       the number of groups.
+     * @param transactions the number of transactions written.
+     * @param to           the last day.
+     */
+    public record Summary(int users, int groups, long transactions, LocalDate to) {
+    }
+
+    @Autowired
+    public WorkloadGenerator(UserService userService,
+                             GroupService groupService,
+                             TransactionService transactionService) {
+        this.userService = userService;
+        this.groupService = groupService;
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * Generates a workload. Users and groups that already exist under the generated names are reused.
+     *
+     * @param spec the parameters of the workload.
+     * @return the size of the generated workload.
+     * @throws IllegalArgumentException if the parameters are inconsistent.
+     */
+    public Summary generate(WorkloadSpec spec) throws IllegalArgumentException {
+        if (spec.users() < 2 || spec.groups() < 0 || spec.days() < 1 || spec.perDay() < 0 ||
+                !(spec.zipfExponent() > 0) ||
+                spec.minGroupSize() < 2 || spec.minGroupSize() > spec.maxGroupSize() ||
+                spec.maxGroupSize() > spec.users() ||
+                spec.purchaseWeight() < 0 || spec.borrowWeight() < 0 || spec.repayWeight() < 0 ||
+                spec.purchaseWeight() + spec.borrowWeight() + spec.repayWeight() == 0 ||
+                spec.purchaseWeight() > 0 && spec.groups() == 0) {
+            throw new IllegalArgumentException("Illegal command arguments");
+        }
+        SplittableRandom random = new SplittableRandom(spec.seed());
+        DiscreteSampler popularity = RejectionInversionZipfSampler.of(random::nextLong, spec.users(),
+                spec.zipfExponent());
+
+        int digits = String.valueOf(spec.users() - 1).length();
+        List<User> users = new ArrayList<>(spec.users());
+        for (int i = 0; i < spec.users(); i++) {
+            users.add(userService.getOrCreateUserByName(String.format("%s%0" + digits + "d", USER_PREFIX, i)));
+        }
+        // rank k of the popularity law is the user at position k - 1 of a random order
+        int[] userByRank = new int[spec.users()];
+        for (int i = 0; i < userByRank.length; i++) {
+            userByRank[i] = i;
+        }
+        for (int i = userByRank.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int user = userByRank[i];
+            userByRank[i] = userByRank[j];
+            userByRank[j] = user;
+        }
+
+        int[][] members = new int[spec.groups()][];
+        for (int group = 0; group < spec.groups(); group++) {
+            members[group] = drawMembers(logUniform(random, spec.minGroupSize(), spec.maxGroupSize()),
+                    spec.users(), popularity, userByRank, random);
+            Set<User> memberSet = new HashSet<>();
+            for (int member : members[group]) {
+                memberSet.add(users.get(member));
+            }
+            Group saved = groupService.getOrCreateGroupByName(GROUP_PREFIX + toLetters(group));
+            groupService.addUsersToGroup(saved, memberSet);
+        }
+
+        int totalWeight = spec.purchaseWeight() + spec.borrowWeight() + spec.repayWeight();
+        List<Transaction> batch = new ArrayList<>(BATCH_SIZE);
+        long written = 0;
+        for (int day = 0; day < spec.days(); day++) {
+            LocalDate date = spec.from().plusDays(day);
+            for (int event = 0; event < spec.perDay(); event++) {
+                int kind = random.nextInt(totalWeight);
+                if (kind < spec.purchaseWeight()) {
+                    int[] group = members[random.nextInt(members.length)];
+                    int payer = group[random.nextInt(group.length)];
+                    // an equal split, the first members getting the cents left over as SplitUtil does
+                    int totalCents = logUniform(random, 500, 50_000);
+                    for (int i = 0; i < group.length; i++) {
+                        if (group[i] != payer) {
+                            long share = totalCents / group.length + (i < totalCents % group.length ? 1 : 0);
+                            batch.add(new Transaction(users.get(group[i]), users.get(payer),
+                                    BigDecimal.valueOf(share, 2), date));
+                        }
+                    }
+                } else {
+                    int first = userByRank[popularity.sample() - 1];
+                    int second = drawOther(first, spec.users(), popularity, userByRank, random);
+                    BigDecimal amount = BigDecimal.valueOf(logUniform(random, 100, 20_000), 2);
+                    // a borrow makes the first user owe the second; a repay makes the second owe the first
+                    batch.add(kind < spec.purchaseWeight() + spec.borrowWeight() ?
+                            new Transaction(users.get(first), users.get(second), amount, date) :
+                            new Transaction(users.get(second), users.get(first), amount, date));
+                }
+                if (batch.size() >= BATCH_SIZE) {
+                    written += batch.size();
+                    transactionService.createTransactions(batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            written += batch.size();
+            transactionService.createTransactions(batch);
+        }
+        return new Summary(spec.users(), spec.groups(), written, spec.from().plusDays(spec.days() - 1));
+    }
+
+    /**
+     * Draws distinct members by popularity. Popular users are drawn again and again once they are taken,
+     * so after a few rounds the remaining members are drawn uniformly instead.
+     */
+    private static int[] drawMembers(int size, int userCount, DiscreteSampler popularity, int[] userByRank,
+                                     SplittableRandom random) {
+        Set<Integer> drawn = new LinkedHashSet<>();
+        for (int attempt = 0; attempt < 4 * size && drawn.size() < size; attempt++) {
+            drawn.add(userByRank[popularity.sample() - 1]);
+        }
+        while (drawn.size() < size) {
+            drawn.add(random.nextInt(userCount));
+        }
+        return drawn.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int drawOther(int user, int userCount, DiscreteSampler popularity, int[] userByRank,
+                                 SplittableRandom random) {
+        for (int attempt = 0; attempt < 8; attempt++) {
+            int other = userByRank[popularity.sample() - 1];
+            if (other != user) {
+                return other;
+            }
+        }
+        return (user + 1 + random.nextInt(userCount - 1)) % userCount;
+    }
+
+    private static int logUniform(SplittableRandom random, int min, int max) {
+        if (min == max) {
+            return min;
+        }
+        double value = Math.exp(Math.log(min) + random.nextDouble() * (Math.log(max + 1.0) - Math.log(min)));
+        return Math.min(max, (int) value);
+    }
+
+    // group names are upper-case letters only
+    private static String toLetters(int number) {
+        StringBuilder letters = new StringBuilder();
+        do {
+            letters.append((char) ('A' + number % 26));
+            number /= 26;
+        } while (number > 0);
+        return letters.toString();
+    }
+}
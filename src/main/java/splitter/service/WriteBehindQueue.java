@@ -0,0 +1,247 @@
+package splitter.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import splitter.model.Transaction;
+import splitter.store.LedgerStore;
+import splitter.tenant.TenantContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional write-behind queue for transaction inserts.
+ * <p>
+ * Submitted transactions are numbered with a sequence and placed in a bounded queue, which blocks submitters when
+ * full. A single writer thread drains the queue and commits the transactions in groups of up to
+ * {@code splitter.write-behind.batch-size} rows, waiting at most {@code splitter.write-behind.max-delay-ms}
+ * for a group to fill up. Each group is one database commit, so these two settings trade the number of commits
+ * (and log flushes) against the latency of a single write.
+ * <p>
+ * A submitted transaction is acknowledged by completing its future only after the group containing it has been
+ * committed; if the group fails, its rows are retried one by one and only the failing ones complete exceptionally.
+ * Groups commit in submission order, so a thread can read its own writes by waiting for the last sequence it submitted.
+ * Every write is committed for the tenant that submitted it; a group holding several tenants is committed as one
+ * transaction per tenant, still in submission order.
+ */
+@Component
+public class WriteBehindQueue {
+    private final LedgerStore ledgerStore;
+    private final LedgerVersion ledgerVersion;
+    private final BalanceIndex balanceIndex;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<PendingWrite> queue;
+    private final AtomicLong submittedSequence = new AtomicLong();
+    private final ThreadLocal<Long> lastSubmittedByThread = ThreadLocal.withInitial(() -> 0L);
+    private final Object commitMonitor = new Object();
+
+    private volatile long committedSequence;
+    private volatile boolean running;
+    private Thread writer;
+
+    @Autowired
+    public WriteBehindQueue(LedgerStore ledgerStore,
+                            LedgerVersion ledgerVersion,
+                            BalanceIndex balanceIndex,
+                            @Value("${splitter.write-behind.enabled:false}") boolean enabled,
+                            @Value("${splitter.write-behind.batch-size:256}") int batchSize,
+                            @Value("${splitter.write-behind.max-delay-ms:10}") long maxDelayMillis,
+                            @Value("${splitter.write-behind.queue-capacity:10000}") int queueCapacity) {
+        this.ledgerStore = ledgerStore;
+        this.ledgerVersion = ledgerVersion;
+        this.balanceIndex = balanceIndex;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::drain, "write-behind-writer");
+        writer.start();
+    }
+
+    /**
+     * Stops accepting writes and waits until everything already queued has been committed.
+     *
+     * @throws InterruptedException if interrupted while waiting for the writer to finish
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            writer.join();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues a transaction for a group commit, blocking while the queue is full.
+     *
+     * @param transaction the transaction to write.
+     * @return a future completed with the saved transaction once its group has been committed.
+     */
+    public CompletableFuture<Transaction> submit(Transaction transaction) {
+        if (!running) {
+            throw new IllegalStateException("Write-behind queue is not running");
+        }
+        PendingWrite write;
+        synchronized (submittedSequence) {
+            // Sequence numbers must enter the queue in order, otherwise a later number could commit first
+            write = new PendingWrite(submittedSequence.incrementAndGet(), TenantContext.current(), transaction);
+            try {
+                queue.put(write);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while queueing a transaction", e);
+            }
+        }
+        lastSubmittedByThread.set(write.sequence());
+        return write.future();
+    }
+
+    /**
+     * Waits until every transaction submitted by the calling thread has been committed or has failed.
+     *
+     * @return the number of transactions that were still pending when the wait began.
+     */
+    public long awaitOwnWrites() {
+        return awaitSequence(lastSubmittedByThread.get());
+    }
+
+    /**
+     * Waits until every transaction submitted so far, by any thread, has been committed or has failed.
+     *
+     * @return the number of transactions that were still pending when the wait began.
+     */
+    public long awaitAllWrites() {
+        return awaitSequence(submittedSequence.get());
+    }
+
+    /**
+     * Waits until the transaction with the given sequence number, and all before it, have been processed.
+     *
+     * @param sequence the sequence number to wait for.
+     * @return the number of transactions that were still pending when the wait began.
+     */
+    public long awaitSequence(long sequence) {
+        long pending = sequence - committedSequence;
+        if (pending <= 0) {
+            return 0;
+        }
+        synchronized (commitMonitor) {
+            while (committedSequence < sequence) {
+                try {
+                    commitMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for pending writes", e);
+                }
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Writer loop: collects groups of pending writes and commits them until stopped and fully drained.
+     */
+    private void drain() {
+        List<PendingWrite> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < batchSize) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    PendingWrite next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Keep draining: the queue is only abandoned once it is empty
+            }
+            int start = 0;
+            for (int i = 1; i <= batch.size(); i++) {
+                if (i == batch.size() || !batch.get(i).tenant().equals(batch.get(start).tenant())) {
+                    commit(batch.subList(start, i));
+                    start = i;
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Commits a group of writes of one tenant in a single database transaction and acknowledges them.
+     *
+     * @param batch the writes to commit.
+     */
+    private void commit(List<PendingWrite> batch) {
+        TenantContext.set(batch.get(0).tenant());
+        try {
+            List<Transaction> transactions = new ArrayList<>(batch.size());
+            for (PendingWrite write : batch) {
+                transactions.add(write.transaction());
+            }
+            List<Transaction> saved = ledgerStore.saveTransactions(transactions);
+            saved.forEach(balanceIndex::add);
+            ledgerVersion.increment();
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future().complete(saved.get(i));
+            }
+        } catch (RuntimeException batchFailure) {
+            for (PendingWrite write : batch) {
+                try {
+                    Transaction saved = ledgerStore.saveTransaction(write.transaction());
+                    balanceIndex.add(saved);
+                    ledgerVersion.increment();
+                    write.future().complete(saved);
+                } catch (RuntimeException e) {
+                    write.future().completeExceptionally(e);
+                }
+            }
+        } finally {
+            TenantContext.clear();
+        }
+        synchronized (commitMonitor) {
+            committedSequence = batch.get(batch.size() - 1).sequence();
+            commitMonitor.notifyAll();
+        }
+    }
+
+    private record PendingWrite(long sequence,
+                                String tenant,
+                                Transaction transaction,
+                                CompletableFuture<Transaction> future) {
+        PendingWrite(long sequence, String tenant, Transaction transaction) {
+            this(sequence, tenant, transaction, new CompletableFuture<>());
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package splitter.store;
+
+import splitter.model.User;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read-only columnar copy of the transactions of a ledger for analytics.
+ * Each transaction costs 20 bytes (two int user indexes, a long amount in cents and an int epoch day), and the users
+ * named by the transactions are kept in a dictionary from name to a dense index.
+ */
+public class ColumnarLedger {
+    private final long[] userIds;
+    private final String[] userNames;
+    private final Map<String, Integer> indexByName;
+    private final TransactionColumns transactions;
+
+    private ColumnarLedger(long[] userIds, String[] userNames, TransactionColumns transactions) {
+        this.userIds = userIds;
+        this.userNames = userNames;
+        this.transactions = transactions;
+        this.indexByName = new HashMap<>(userNames.length * 2);
+        for (int index = 0; index < userNames.length; index++) {
+            indexByName.put(userNames[index], index);
+        }
+    }
+
+    /**
+     * Loads the transactions of a ledger in one streaming pass, together with the users they name.
+     * The scan hands over amounts in cents and epoch days as primitives: the JPA and JDBC engines read them as numbers
+     * from one JDBC query, and the in-memory and journal engines from their own columns, so none of these creates an
+     * entity or an amount per row. The partitioned engine still maps a row record per transaction to merge its
+     * partitions in id order.
+     *
+     * @param ledgerStore the ledger to load, of any engine.
+     * @return the loaded ledger.
+     */
+    public static ColumnarLedger load(LedgerStore ledgerStore) {
+        Loader loader = new Loader();
+        ledgerStore.forEachTransaction(loader);
+        long[] userIds = loader.users.stream().mapToLong(User::getId).toArray();
+        String[] userNames = loader.users.stream().map(User::getName).toArray(String[]::new);
+        return new ColumnarLedger(userIds, userNames, loader.columns);
+    }
+
+    public int userCount() {
+        return userNames.length;
+    }
+
+    public int transactionCount() {
+        return transactions.size();
+    }
+
+    public long userId(int index) {
+        return userIds[index];
+    }
+
+    public String userName(int index) {
+        return userNames[index];
+    }
+
+    /**
+     * Sums the amounts per user pair up to a date, as the balance command does.
+     *
+     * @param date          the last date to include.
+     * @param borrowerNames the borrowers to include, or an empty set to include everyone.
+     * @return the sums per user pair.
+     */
+    public PairSums sumByPair(LocalDate date, Set<String> borrowerNames) {
+        boolean[] borrowers = null;
+        if (!borrowerNames.isEmpty()) {
+            borrowers = new boolean[userNames.length];
+            for (String name : borrowerNames) {
+                Integer index = indexByName.get(name);
+                if (index != null) {
+                    borrowers[index] = true;
+                }
+            }
+        }
+        PairSums sums = new PairSums(Math.min(transactions.size(), 1 << 16));
+        transactions.sumByPair((int) date.toEpochDay(), borrowers, sums);
+        return sums;
+    }
+
+    /**
+     * Computes the net balance of every user up to a date.
+     *
+     * @param date the last date to include.
+     * @return the net balance in cents by user index; positive means the user is owed money.
+     */
+    public long[] netByUser(LocalDate date) {
+        return transactions.netByUser((int) date.toEpochDay(), userNames.length);
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnarLedger{" +
+                "users=" + userNames.length +
+                ", transactions=" + transactions.size() +
+                '}';
+    }
+
+    /**
+     * Appends the visited transactions to the columns, numbering users in the order they first appear.
+     */
+    private static final class Loader implements TransactionVisitor {
+        private final List<User> users = new ArrayList<>();
+        private final TransactionColumns columns = new TransactionColumns(1024);
+        // User ids are dense, so the index of a user is kept by id, plus one so that 0 means not seen yet
+        private int[] indexById = new int[1024];
+
+        @Override
+        public void visit(User borrower, User lender, long cents, int epochDay) {
+            columns.add(index(borrower), index(lender), cents, epochDay);
+        }
+
+        private int index(User user) {
+            int id = Math.toIntExact(user.getId());
+            if (id >= indexById.length) {
+                indexById = Arrays.copyOf(indexById, Math.max(id + 1, indexById.length * 2));
+            }
+            int index = indexById[id] - 1;
+            if (index < 0) {
+                index = users.size();
+                users.add(user);
+                indexById[id] = index + 1;
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,505 @@
+package splitter.store;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import splitter.model.Gift;
+import splitter.model.Group;
+import splitter.model.RecurrencePeriod;
+import splitter.model.RecurringTransaction;
+import splitter.model.Transaction;
+import splitter.model.User;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Ledger store keeping everything in memory, for simulations and what-if runs where nothing needs to be persisted.
+ * Users are numbered densely so that transactions can be kept in primitive columns.
+ */
+@Component
+@ConditionalOnProperty(prefix = "splitter.ledger", name = "engine", havingValue = "memory")
+public class InMemoryLedgerStore implements LedgerStore {
+    private static final long SNAPSHOT_MAGIC = 0x534e4150534c4733L;
+    private final Map<String, User> usersByName = new ConcurrentHashMap<>();
+    private final Map<String, Group> groupsByName = new ConcurrentHashMap<>();
+    private final Map<String, Set<User>> membersByGroupName = new ConcurrentHashMap<>();
+    private final AtomicLong giftCount = new AtomicLong();
+    private final List<Gift> gifts = new ArrayList<>();
+    private final List<RecurringTransaction> recurringTransactions = new ArrayList<>();
+    private TransactionColumns transactions = new TransactionColumns(1024);
+    private final ReadWriteLock transactionsLock = new ReentrantReadWriteLock();
+    private volatile User[] usersByIndex = new User[16];
+    private int userCount;
+
+    @Override
+    public Optional<User> findUserByName(String name) {
+        return Optional.ofNullable(usersByName.get(name));
+    }
+
+    @Override
+    public synchronized User saveUser(User user) {
+        User existing = usersByName.get(user.getName());
+        if (existing != null) {
+            return existing;
+        }
+        User[] users = usersByIndex;
+        if (userCount == users.length) {
+            users = Arrays.copyOf(users, userCount * 2);
+        }
+        User saved = new User((long) userCount + 1, user.getName());
+        users[userCount++] = saved;
+        usersByIndex = users;
+        usersByName.put(saved.getName(), saved);
+        return saved;
+    }
+
+    /**
+     * Finds a user by the id assigned by this store.
+     *
+     * @param id the user id.
+     * @return the user, or null if no user has this id.
+     */
+    public synchronized User findUserById(long id) {
+        return id >= 1 && id <= userCount ? usersByIndex[(int) (id - 1)] : null;
+    }
+
+    @Override
+    public Optional<Group> findGroupByName(String name) {
+        return Optional.ofNullable(groupsByName.get(name));
+    }
+
+    @Override
+    public Group saveGroup(Group group) {
+        groupsByName.put(group.getName(), group);
+        membersByGroupName.putIfAbsent(group.getName(), ConcurrentHashMap.newKeySet());
+        return group;
+    }
+
+    @Override
+    public boolean groupExists(String name) {
+        return groupsByName.containsKey(name);
+    }
+
+    @Override
+    public List<Group> findGroups() {
+        return groupsByName.values().stream().sorted(Comparator.comparing(Group::getName)).toList();
+    }
+
+    @Override
+    public void deleteGroupsByName(String name) {
+        groupsByName.remove(name);
+        membersByGroupName.remove(name);
+    }
+
+    @Override
+    public Set<User> findUsersByGroupName(String name) {
+        Set<User> members = membersByGroupName.get(name);
+        return members == null ? new HashSet<>() : new HashSet<>(members);
+    }
+
+    @Override
+    public Set<User> findUsers(Group group) {
+        return findUsersByGroupName(group.getName());
+    }
+
+    @Override
+    public int addUsersToGroup(Group group, Set<User> users) {
+        membersByGroupName.computeIfAbsent(group.getName(), name -> ConcurrentHashMap.newKeySet()).addAll(users);
+        return users.size();
+    }
+
+    @Override
+    public int removeUsersFromGroup(Group group, Set<User> users) {
+        Set<User> members = membersByGroupName.get(group.getName());
+        if (members == null) {
+            return 0;
+        }
+        int removed = 0;
+        for (User user : users) {
+            if (members.remove(user)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public Transaction saveTransaction(Transaction transaction) {
+        transactionsLock.writeLock().lock();
+        try {
+            append(transaction);
+        } finally {
+            transactionsLock.writeLock().unlock();
+        }
+        return transaction;
+    }
+
+    @Override
+    public List<Transaction> saveTransactions(List<Transaction> transactions) {
+        transactionsLock.writeLock().lock();
+        try {
+            for (Transaction transaction : transactions) {
+                append(transaction);
+            }
+        } finally {
+            transactionsLock.writeLock().unlock();
+        }
+        return transactions;
+    }
+
+    @Override
+    public int deleteTransactionsBefore(LocalDate date) {
+        transactionsLock.writeLock().lock();
+        try {
+            return transactions.removeBefore((int) date.toEpochDay());
+        } finally {
+            transactionsLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int replaceTransactionsBefore(LocalDate date, List<Transaction> replacement) {
+        transactionsLock.writeLock().lock();
+        try {
+            int deleted = transactions.removeBefore((int) date.toEpochDay());
+            for (Transaction transaction : replacement) {
+                append(transaction);
+            }
+            return deleted;
+        } finally {
+            transactionsLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Transaction> findTransactionsUpTo(LocalDate date) {
+        return findTransactions(date, null);
+    }
+
+    @Override
+    public List<Transaction> findTransactionsUpToForBorrowers(LocalDate date, Set<User> users) {
+        boolean[] included = new boolean[userCount()];
+        for (User user : users) {
+            int index = indexOf(user);
+            if (index < included.length) {
+                included[index] = true;
+            }
+        }
+        return findTransactions(date, included);
+    }
+
+    /**
+     * Visits the rows straight from the columns under the read lock, so writers wait until the scan is done.
+     */
+    @Override
+    public void forEachTransaction(TransactionVisitor visitor) {
+        transactionsLock.readLock().lock();
+        try {
+            User[] users = usersByIndex;
+            for (int row = 0; row < transactions.size(); row++) {
+                visitor.visit(users[transactions.borrower(row)],
+                        users[transactions.lender(row)],
+                        transactions.cents(row),
+                        transactions.day(row));
+            }
+        } finally {
+            transactionsLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Stream<Transaction> streamTransactionsOfBorrower(User borrower, LocalDate from, LocalDate to) {
+        return findTransactionsOfUser(borrower, true, from, to).stream();
+    }
+
+    @Override
+    public Stream<Transaction> streamTransactionsOfLender(User lender, LocalDate from, LocalDate to) {
+        return findTransactionsOfUser(lender, false, from, to).stream();
+    }
+
+    /**
+     * Saves a recurring transaction. Ids are numbered densely from 1 in creation order.
+     */
+    @Override
+    public synchronized RecurringTransaction saveRecurringTransaction(RecurringTransaction recurringTransaction) {
+        if (recurringTransaction.getId() == null) {
+            recurringTransactions.add(recurringTransaction);
+            recurringTransaction.setId((long) recurringTransactions.size());
+            return recurringTransaction;
+        }
+        RecurringTransaction existing = findRecurringTransactionById(recurringTransaction.getId());
+        existing.setMaterializedUntil(recurringTransaction.getMaterializedUntil());
+        return existing;
+    }
+
+    @Override
+    public synchronized List<RecurringTransaction> findRecurringTransactions() {
+        return new ArrayList<>(recurringTransactions);
+    }
+
+    /**
+     * Finds a recurring transaction by the id assigned by this store.
+     *
+     * @param id the recurring transaction id.
+     * @return the recurring transaction.
+     * @throws IllegalArgumentException if no recurring transaction has this id.
+     */
+    public synchronized RecurringTransaction findRecurringTransactionById(long id) {
+        if (id < 1 || id > recurringTransactions.size()) {
+            throw new IllegalArgumentException("Unknown recurring transaction " + id);
+        }
+        return recurringTransactions.get((int) (id - 1));
+    }
+
+    @Override
+    public Gift saveGift(Gift gift) {
+        synchronized (gifts) {
+            gifts.add(gift);
+        }
+        giftCount.incrementAndGet();
+        return gift;
+    }
+
+    @Override
+    public List<Gift> saveGifts(List<Gift> batch) {
+        synchronized (gifts) {
+            gifts.addAll(batch);
+        }
+        giftCount.addAndGet(batch.size());
+        return batch;
+    }
+
+    @Override
+    public List<Gift> findGiftsFrom(int year) {
+        synchronized (gifts) {
+            return gifts.stream()
+                    .filter(gift -> gift.getYear() >= year)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Writes the complete store state to a snapshot file, replacing the previous snapshot atomically.
+     * Callers must make sure no writes happen concurrently.
+     *
+     * @param path   the snapshot file.
+     * @param marker a caller-defined position stored with the snapshot, such as a journal offset.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public void writeSnapshot(Path path, long marker) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (SnapshotBuffer out = SnapshotBuffer.forWriting(temporary)) {
+            out.putLong(SNAPSHOT_MAGIC);
+            out.putLong(marker);
+            out.putLong(giftCount.get());
+
+            int users = userCount();
+            out.putInt(users);
+            for (int index = 0; index < users; index++) {
+                out.putString(usersByIndex[index].getName());
+            }
+
+            List<String> groupNames = new ArrayList<>(groupsByName.keySet());
+            out.putInt(groupNames.size());
+            for (String groupName : groupNames) {
+                Set<User> members = findUsersByGroupName(groupName);
+                out.putString(groupName);
+                out.putInt(members.size());
+                for (User member : members) {
+                    out.putInt(indexOf(member));
+                }
+            }
+
+            transactionsLock.readLock().lock();
+            try {
+                transactions.writeTo(out);
+            } finally {
+                transactionsLock.readLock().unlock();
+            }
+
+            List<RecurringTransaction> recurring = findRecurringTransactions();
+            out.putInt(recurring.size());
+            for (RecurringTransaction definition : recurring) {
+                out.putInt(indexOf(definition.getBorrower()));
+                out.putInt(indexOf(definition.getLender()));
+                out.putLong(definition.getAmount().setScale(2, RoundingMode.HALF_EVEN).unscaledValue().longValueExact());
+                out.putInt(definition.getPeriod().ordinal());
+                out.putLong(definition.getStartDate().toEpochDay());
+                out.putLong(definition.getEndDate() == null ? Long.MIN_VALUE : definition.getEndDate().toEpochDay());
+                out.putLong(definition.getMaterializedUntil() == null ?
+                        Long.MIN_VALUE :
+                        definition.getMaterializedUntil().toEpochDay());
+            }
+
+            List<Gift> storedGifts;
+            synchronized (gifts) {
+                storedGifts = new ArrayList<>(gifts);
+            }
+            out.putInt(storedGifts.size());
+            for (Gift gift : storedGifts) {
+                out.putInt(indexOf(gift.getGiver()));
+                out.putInt(indexOf(gift.getReceiver()));
+                out.putInt(gift.getYear());
+            }
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads the store state from a snapshot file. Must be called on an empty store.
+     *
+     * @param path the snapshot file.
+     * @return the marker stored with the snapshot.
+     * @throws IOException if the snapshot cannot be read or is not a store snapshot.
+     */
+    public long readSnapshot(Path path) throws IOException {
+        try (SnapshotBuffer in = SnapshotBuffer.forReading(path)) {
+            if (in.getLong() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a ledger snapshot: " + path);
+            }
+            long marker = in.getLong();
+            giftCount.set(in.getLong());
+
+            int users = in.getInt();
+            for (int index = 0; index < users; index++) {
+                saveUser(new User(in.getString()));
+            }
+
+            int groups = in.getInt();
+            for (int group = 0; group < groups; group++) {
+                Group saved = saveGroup(new Group(in.getString()));
+                int members = in.getInt();
+                Set<User> memberSet = new HashSet<>();
+                for (int member = 0; member < members; member++) {
+                    memberSet.add(usersByIndex[in.getInt()]);
+                }
+                addUsersToGroup(saved, memberSet);
+            }
+
+            TransactionColumns restored = TransactionColumns.readFrom(in);
+            transactionsLock.writeLock().lock();
+            try {
+                transactions = restored;
+            } finally {
+                transactionsLock.writeLock().unlock();
+            }
+
+            int recurring = in.getInt();
+            for (int index = 0; index < recurring; index++) {
+                User borrower = usersByIndex[in.getInt()];
+                User lender = usersByIndex[in.getInt()];
+                BigDecimal amount = BigDecimal.valueOf(in.getLong(), 2);
+                RecurrencePeriod period = RecurrencePeriod.values()[in.getInt()];
+                LocalDate startDate = LocalDate.ofEpochDay(in.getLong());
+                long endDay = in.getLong();
+                long materializedDay = in.getLong();
+                RecurringTransaction definition = new RecurringTransaction(borrower, lender, amount, period, startDate,
+                        endDay == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(endDay));
+                definition.setMaterializedUntil(materializedDay == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(materializedDay));
+                saveRecurringTransaction(definition);
+            }
+
+            int storedGifts = in.getInt();
+            synchronized (gifts) {
+                for (int index = 0; index < storedGifts; index++) {
+                    Gift gift = new Gift();
+                    gift.setGiver(usersByIndex[in.getInt()]);
+                    gift.setReceiver(usersByIndex[in.getInt()]);
+                    gift.setYear(in.getInt());
+                    gifts.add(gift);
+                }
+            }
+            return marker;
+        }
+    }
+
+    /**
+     * Scans the transaction columns and materializes the matching rows.
+     *
+     * @param date              the last date to include.
+     * @param includedBorrowers flags by user index of the borrowers to include, or null to include everyone.
+     * @return the matching transactions.
+     */
+    private List<Transaction> findTransactions(LocalDate date, boolean[] includedBorrowers) {
+        int lastDay = (int) date.toEpochDay();
+        List<Transaction> result = new ArrayList<>();
+        transactionsLock.readLock().lock();
+        try {
+            User[] users = usersByIndex;
+            for (int row = 0; row < transactions.size(); row++) {
+                int borrower = transactions.borrower(row);
+                if (transactions.day(row) > lastDay
+                        || includedBorrowers != null && (borrower >= includedBorrowers.length || !includedBorrowers[borrower])) {
+                    continue;
+                }
+                result.add(new Transaction(users[borrower],
+                        users[transactions.lender(row)],
+                        BigDecimal.valueOf(transactions.cents(row), 2),
+                        LocalDate.ofEpochDay(transactions.day(row))));
+            }
+        } finally {
+            transactionsLock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Finds the rows of one user on one side dated between two days, ordered by day and then by insertion.
+     * The columns keep insertion order, so this is a scan of one column followed by a sort of the matches.
+     */
+    private List<Transaction> findTransactionsOfUser(User user, boolean asBorrower, LocalDate from, LocalDate to) {
+        int firstDay = (int) from.toEpochDay();
+        int lastDay = (int) to.toEpochDay();
+        List<Transaction> result = new ArrayList<>();
+        transactionsLock.readLock().lock();
+        try {
+            User[] users = usersByIndex;
+            int index = indexOf(user);
+            if (index >= users.length) {
+                return result;
+            }
+            for (int row = 0; row < transactions.size(); row++) {
+                int day = transactions.day(row);
+                int side = asBorrower ? transactions.borrower(row) : transactions.lender(row);
+                if (side != index || day < firstDay || day > lastDay) {
+                    continue;
+                }
+                result.add(new Transaction(users[transactions.borrower(row)],
+                        users[transactions.lender(row)],
+                        BigDecimal.valueOf(transactions.cents(row), 2),
+                        LocalDate.ofEpochDay(day)));
+            }
+        } finally {
+            transactionsLock.readLock().unlock();
+        }
+        result.sort(Comparator.comparing(Transaction::getDate));
+        return result;
+    }
+
+    private void append(Transaction transaction) {
+        transactions.add(indexOf(transaction.getBorrower()),
+                indexOf(transaction.getLender()),
+                transaction.getAmount().setScale(2, RoundingMode.HALF_EVEN).unscaledValue().longValueExact(),
+                (int) transaction.getDate().toEpochDay());
+    }
+
+    private synchronized int userCount() {
+        return userCount;
+    }
+
+    private int indexOf(User user) {
+        return (int) (user.getId() - 1);
+    }
+}
@@ -0,0 +1,236 @@
+package splitter.store;
+
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import splitter.model.Gift;
+import splitter.model.Transaction;
+import splitter.model.User;
+import splitter.repository.*;
+import splitter.tenant.TenantScoped;
+import splitter.tenant.TenantStateHolder;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Ledger store that reads and writes users and transactions with plain JDBC, and everything else through the JPA
+ * repositories like {@link JpaLedgerStore}. Selected with {@code splitter.ledger.engine=jdbc}.
+ * <p>
+ * Transactions are append-only, so the persistence context, dirty checking and entity hydration of the JPA path buy
+ * nothing for them. Rows are mapped straight from the result set: the borrower and lender ids are resolved against a
+ * map of every user seen so far, which users are never renamed or deleted, so each user is loaded at most once instead
+ * of once per session; ids are numbered per tenant, so every tenant has a map of its own, dropped when it is evicted.
+ * The SQL text is fixed, borrower filters being passed as one array parameter, so H2 reuses its parsed statements, and
+ * batches are written with JDBC batch inserts. The tables are the ones mapped by the entities, and JDBC work joins the
+ * surrounding JPA transaction, so both paths see the same ledger.
+ */
+@Component
+@ConditionalOnProperty(prefix = "splitter.ledger", name = "engine", havingValue = "jdbc")
+public class JdbcLedgerStore extends JpaLedgerStore implements TenantStateHolder {
+    private static final int BATCH_SIZE = 500;
+    private static final String FIND_USER_BY_NAME = "SELECT user_id, user_name FROM users WHERE user_name = ?";
+    private static final String FIND_USER_BY_ID = "SELECT user_id, user_name FROM users WHERE user_id = ?";
+    private static final String INSERT_USER = "INSERT INTO users (user_name) VALUES (?)";
+    private static final String INSERT_TRANSACTION =
+            "INSERT INTO transactions (borrower_id, lender_id, amount, transaction_date) VALUES (?, ?, ?, ?)";
+    private static final String INSERT_GIFT = "INSERT INTO gifts (giver_id, receiver_id, gift_year) VALUES (?, ?, ?)";
+    static final String DELETE_TRANSACTIONS_BEFORE = "DELETE FROM transactions WHERE transaction_date < ?";
+    private static final String SELECT_TRANSACTIONS =
+            "SELECT borrower_id, lender_id, amount, transaction_date FROM transactions ";
+    private static final String FIND_TRANSACTIONS_UP_TO = SELECT_TRANSACTIONS + "WHERE transaction_date <= ?";
+    private static final String FIND_TRANSACTIONS_UP_TO_FOR_BORROWERS =
+            FIND_TRANSACTIONS_UP_TO + " AND borrower_id = ANY(?)";
+    static final String SUM_TRANSACTIONS_UP_TO = "SELECT borrower_id, lender_id, SUM(amount) FROM transactions " +
+            "WHERE transaction_date <= ? GROUP BY borrower_id, lender_id";
+    static final String SUM_TRANSACTIONS_UP_TO_FOR_BORROWERS = "SELECT borrower_id, lender_id, SUM(amount) " +
+            "FROM transactions WHERE transaction_date <= ? AND borrower_id = ANY(?) GROUP BY borrower_id, lender_id";
+    private static final String STREAM_TRANSACTIONS_OF_BORROWER = SELECT_TRANSACTIONS +
+            "WHERE borrower_id = ? AND transaction_date BETWEEN ? AND ? ORDER BY transaction_date, transaction_id";
+    private static final String STREAM_TRANSACTIONS_OF_LENDER = SELECT_TRANSACTIONS +
+            "WHERE lender_id = ? AND transaction_date BETWEEN ? AND ? ORDER BY transaction_date, transaction_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NameCache<User> usersByName;
+    private final TenantScoped<Map<Long, User>> usersById = new TenantScoped<>(tenant -> new ConcurrentHashMap<>());
+    private final RowMapper<Transaction> transactionMapper = this::mapTransaction;
+
+    @Autowired
+    public JdbcLedgerStore(UserRepository userRepository,
+                           GroupRepository groupRepository,
+                           UserGroupRepository userGroupRepository,
+                           TransactionRepository transactionRepository,
+                           GiftRepository giftRepository,
+                           RecurringTransactionRepository recurringTransactionRepository,
+                           PrometheusMeterRegistry meterRegistry,
+                           @Value("${splitter.lookup-cache.size:10000}") int lookupCacheSize,
+                           DataSource dataSource) {
+        super(userRepository, groupRepository, userGroupRepository, transactionRepository, giftRepository,
+                recurringTransactionRepository, meterRegistry, lookupCacheSize, dataSource);
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(BATCH_SIZE);
+        this.usersByName = new NameCache<>("users", lookupCacheSize, meterRegistry);
+    }
+
+    @Override
+    public void evict(String tenant) {
+        usersById.evict(tenant);
+    }
+
+    @Override
+    public Optional<User> findUserByName(String name) {
+        User cached = usersByName.get(name);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        List<User> users = jdbcTemplate.query(sql(FIND_USER_BY_NAME), this::mapUser, name);
+        if (users.isEmpty()) {
+            return Optional.empty();
+        }
+        User user = usersById.get().computeIfAbsent(users.get(0).getId(), id -> users.get(0));
+        usersByName.put(name, user);
+        return Optional.of(user);
+    }
+
+    @Override
+    public User saveUser(User user) {
+        if (user.getId() != null) {
+            return user;
+        }
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql(INSERT_USER), Statement.RETURN_GENERATED_KEYS);
+            statement.setString(1, user.getName());
+            return statement;
+        }, keyHolder);
+        User saved = new User(keyHolder.getKey().longValue(), user.getName());
+        usersById.get().put(saved.getId(), saved);
+        usersByName.put(saved.getName(), saved);
+        return saved;
+    }
+
+    @Override
+    public Transaction saveTransaction(Transaction transaction) {
+        jdbcTemplate.update(sql(INSERT_TRANSACTION),
+                transaction.getBorrower().getId(),
+                transaction.getLender().getId(),
+                transaction.getAmount(),
+                Date.valueOf(transaction.getDate()));
+        return transaction;
+    }
+
+    @Override
+    @Transactional
+    public List<Transaction> saveTransactions(List<Transaction> transactions) {
+        jdbcTemplate.batchUpdate(sql(INSERT_TRANSACTION), transactions, BATCH_SIZE, (statement, transaction) -> {
+            statement.setLong(1, transaction.getBorrower().getId());
+            statement.setLong(2, transaction.getLender().getId());
+            statement.setBigDecimal(3, transaction.getAmount());
+            statement.setDate(4, Date.valueOf(transaction.getDate()));
+        });
+        return transactions;
+    }
+
+    @Override
+    @Transactional
+    public List<Gift> saveGifts(List<Gift> gifts) {
+        jdbcTemplate.batchUpdate(sql(INSERT_GIFT), gifts, BATCH_SIZE, (statement, gift) -> {
+            statement.setLong(1, gift.getGiver().getId());
+            statement.setLong(2, gift.getReceiver().getId());
+            statement.setInt(3, gift.getYear());
+        });
+        return gifts;
+    }
+
+    @Override
+    @Transactional
+    public int deleteTransactionsBefore(LocalDate date) {
+        return jdbcTemplate.update(sql(DELETE_TRANSACTIONS_BEFORE), Date.valueOf(date));
+    }
+
+    @Override
+    @Transactional
+    public int replaceTransactionsBefore(LocalDate date, List<Transaction> replacement) {
+        int deleted = deleteTransactionsBefore(date);
+        saveTransactions(replacement);
+        return deleted;
+    }
+
+    @Override
+    public List<Transaction> findTransactionsUpTo(LocalDate date) {
+        return jdbcTemplate.query(sql(FIND_TRANSACTIONS_UP_TO), transactionMapper, Date.valueOf(date));
+    }
+
+    @Override
+    public List<Transaction> findTransactionsUpToForBorrowers(LocalDate date, Set<User> users) {
+        Long[] borrowerIds = users.stream().map(User::getId).toArray(Long[]::new);
+        return jdbcTemplate.query(sql(FIND_TRANSACTIONS_UP_TO_FOR_BORROWERS), transactionMapper,
+                Date.valueOf(date), borrowerIds);
+    }
+
+    @Override
+    public List<Transaction> sumTransactionsUpTo(LocalDate date, Set<User> users) {
+        RowMapper<Transaction> sumMapper = (row, rowNumber) ->
+                new Transaction(userById(row.getLong(1)), userById(row.getLong(2)), row.getBigDecimal(3), date);
+        if (users.isEmpty()) {
+            return jdbcTemplate.query(sql(SUM_TRANSACTIONS_UP_TO), sumMapper, Date.valueOf(date));
+        }
+        Long[] borrowerIds = users.stream().map(User::getId).toArray(Long[]::new);
+        return jdbcTemplate.query(sql(SUM_TRANSACTIONS_UP_TO_FOR_BORROWERS), sumMapper,
+                Date.valueOf(date), borrowerIds);
+    }
+
+    @Override
+    public Stream<Transaction> streamTransactionsOfBorrower(User borrower, LocalDate from, LocalDate to) {
+        return jdbcTemplate.queryForStream(sql(STREAM_TRANSACTIONS_OF_BORROWER), transactionMapper,
+                borrower.getId(), Date.valueOf(from), Date.valueOf(to));
+    }
+
+    @Override
+    public Stream<Transaction> streamTransactionsOfLender(User lender, LocalDate from, LocalDate to) {
+        return jdbcTemplate.queryForStream(sql(STREAM_TRANSACTIONS_OF_LENDER), transactionMapper,
+                lender.getId(), Date.valueOf(from), Date.valueOf(to));
+    }
+
+    private Transaction mapTransaction(ResultSet row, int rowNumber) throws SQLException {
+        return new Transaction(userById(row.getLong(1)),
+                userById(row.getLong(2)),
+                row.getBigDecimal(3),
+                row.getDate(4).toLocalDate());
+    }
+
+    private User mapUser(ResultSet row, int rowNumber) throws SQLException {
+        return new User(row.getLong(1), row.getString(2));
+    }
+
+    User userById(long id) {
+        Map<Long, User> users = usersById.get();
+        User user = users.get(id);
+        if (user == null) {
+            user = jdbcTemplate.queryForObject(sql(FIND_USER_BY_ID), this::mapUser, id);
+            User known = users.putIfAbsent(id, user);
+            if (known != null) {
+                user = known;
+            }
+        }
+        return user;
+    }
+}
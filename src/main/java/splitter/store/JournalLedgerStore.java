@@ -0,0 +1,380 @@
+package splitter.store;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import splitter.model.Gift;
+import splitter.model.Group;
+import splitter.model.RecurrencePeriod;
+import splitter.model.RecurringTransaction;
+import splitter.model.Transaction;
+import splitter.model.User;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Durable ledger store: the state lives in an {@link InMemoryLedgerStore} and every change is appended to a
+ * memory-mapped {@link LedgerJournal} before the write returns.
+ * <p>
+ * Every {@code splitter.journal.snapshot-every} records, and on shutdown, the whole state is written to a snapshot
+ * together with the journal offset it covers. Startup loads the latest snapshot and replays only the journal records
+ * appended after it.
+ */
+@Component
+@ConditionalOnProperty(prefix = "splitter.ledger", name = "engine", havingValue = "journal")
+public class JournalLedgerStore implements LedgerStore {
+    private final InMemoryLedgerStore state = new InMemoryLedgerStore();
+    private final Path journalPath;
+    private final Path snapshotPath;
+    private final long chunkSize;
+    private final boolean forceOnAppend;
+    private final long snapshotEvery;
+
+    private LedgerJournal journal;
+    private long recordsSinceSnapshot;
+    private PendingCompaction pendingCompaction;
+
+    public JournalLedgerStore(@Value("${splitter.journal.path:ledger.journal}") String journalPath,
+                              @Value("${splitter.journal.chunk-size-mb:64}") long chunkSizeMegabytes,
+                              @Value("${splitter.journal.force:false}") boolean forceOnAppend,
+                              @Value("${splitter.journal.snapshot-every:1000000}") long snapshotEvery) {
+        this.journalPath = Path.of(journalPath);
+        this.snapshotPath = Path.of(journalPath + ".snapshot");
+        this.chunkSize = chunkSizeMegabytes << 20;
+        this.forceOnAppend = forceOnAppend;
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    /**
+     * Restores the state from the latest snapshot and the journal tail written after it.
+     *
+     * @throws IOException if the snapshot or the journal cannot be read
+     */
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        long from = Files.exists(snapshotPath) ? state.readSnapshot(snapshotPath) : 0;
+        journal = new LedgerJournal(journalPath, chunkSize, forceOnAppend);
+        journal.replay(from, this::apply);
+        if (pendingCompaction != null) {
+            // The compaction was cut short by a crash; none of it has been applied
+            journal.truncate(pendingCompaction.position());
+            pendingCompaction = null;
+        }
+    }
+
+    /**
+     * Takes a final snapshot, so that the next startup has no journal tail to replay, and closes the journal.
+     *
+     * @throws IOException if the snapshot cannot be written or the journal cannot be closed
+     */
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        state.writeSnapshot(snapshotPath, journal.position());
+        journal.close();
+    }
+
+    @Override
+    public Optional<User> findUserByName(String name) {
+        return state.findUserByName(name);
+    }
+
+    @Override
+    public synchronized User saveUser(User user) {
+        Optional<User> existing = state.findUserByName(user.getName());
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+        if (user.getName().getBytes(StandardCharsets.UTF_8).length > LedgerJournal.MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("Name is too long");
+        }
+        User saved = state.saveUser(user);
+        journal.appendUser(saved.getId().intValue(), saved.getName());
+        recorded(1);
+        return saved;
+    }
+
+    @Override
+    public Optional<Group> findGroupByName(String name) {
+        return state.findGroupByName(name);
+    }
+
+    @Override
+    public synchronized Group saveGroup(Group group) {
+        journal.appendGroupEvent(LedgerJournal.GROUP_CREATE, group.getName(), 0);
+        Group saved = state.saveGroup(group);
+        recorded(1);
+        return saved;
+    }
+
+    @Override
+    public boolean groupExists(String name) {
+        return state.groupExists(name);
+    }
+
+    @Override
+    public List<Group> findGroups() {
+        return state.findGroups();
+    }
+
+    @Override
+    public synchronized void deleteGroupsByName(String name) {
+        journal.appendGroupEvent(LedgerJournal.GROUP_DELETE, name, 0);
+        state.deleteGroupsByName(name);
+        recorded(1);
+    }
+
+    @Override
+    public Set<User> findUsersByGroupName(String name) {
+        return state.findUsersByGroupName(name);
+    }
+
+    @Override
+    public Set<User> findUsers(Group group) {
+        return state.findUsers(group);
+    }
+
+    @Override
+    public synchronized int addUsersToGroup(Group group, Set<User> users) {
+        for (User user : users) {
+            journal.appendGroupEvent(LedgerJournal.GROUP_ADD, group.getName(), user.getId().intValue());
+        }
+        int added = state.addUsersToGroup(group, users);
+        recorded(users.size());
+        return added;
+    }
+
+    @Override
+    public synchronized int removeUsersFromGroup(Group group, Set<User> users) {
+        for (User user : users) {
+            journal.appendGroupEvent(LedgerJournal.GROUP_REMOVE, group.getName(), user.getId().intValue());
+        }
+        int removed = state.removeUsersFromGroup(group, users);
+        recorded(users.size());
+        return removed;
+    }
+
+    @Override
+    public synchronized Transaction saveTransaction(Transaction transaction) {
+        appendTransaction(transaction);
+        Transaction saved = state.saveTransaction(transaction);
+        recorded(1);
+        return saved;
+    }
+
+    @Override
+    public synchronized List<Transaction> saveTransactions(List<Transaction> transactions) {
+        for (Transaction transaction : transactions) {
+            appendTransaction(transaction);
+        }
+        List<Transaction> saved = state.saveTransactions(transactions);
+        recorded(transactions.size());
+        return saved;
+    }
+
+    @Override
+    public synchronized int deleteTransactionsBefore(LocalDate date) {
+        journal.appendWriteOff((int) date.toEpochDay());
+        int deleted = state.deleteTransactionsBefore(date);
+        recorded(1);
+        return deleted;
+    }
+
+    @Override
+    public synchronized int replaceTransactionsBefore(LocalDate date, List<Transaction> replacement) {
+        journal.appendCompaction((int) date.toEpochDay(), replacement.size());
+        for (Transaction transaction : replacement) {
+            appendTransaction(transaction);
+        }
+        int deleted = state.replaceTransactionsBefore(date, replacement);
+        recorded(replacement.size() + 1);
+        return deleted;
+    }
+
+    @Override
+    public List<Transaction> findTransactionsUpTo(LocalDate date) {
+        return state.findTransactionsUpTo(date);
+    }
+
+    @Override
+    public List<Transaction> findTransactionsUpToForBorrowers(LocalDate date, Set<User> users) {
+        return state.findTransactionsUpToForBorrowers(date, users);
+    }
+
+    @Override
+    public void forEachTransaction(TransactionVisitor visitor) {
+        state.forEachTransaction(visitor);
+    }
+
+    @Override
+    public Stream<Transaction> streamTransactionsOfBorrower(User borrower, LocalDate from, LocalDate to) {
+        return state.streamTransactionsOfBorrower(borrower, from, to);
+    }
+
+    @Override
+    public Stream<Transaction> streamTransactionsOfLender(User lender, LocalDate from, LocalDate to) {
+        return state.streamTransactionsOfLender(lender, from, to);
+    }
+
+    @Override
+    public synchronized RecurringTransaction saveRecurringTransaction(RecurringTransaction recurringTransaction) {
+        if (recurringTransaction.getId() == null) {
+            String schedule = recurringTransaction.getPeriod().name();
+            if (recurringTransaction.getEndDate() != null) {
+                schedule += " " + recurringTransaction.getEndDate().toEpochDay();
+            }
+            journal.appendRecurring(recurringTransaction.getBorrower().getId().intValue(),
+                    recurringTransaction.getLender().getId().intValue(),
+                    recurringTransaction.getAmount().setScale(2, RoundingMode.HALF_EVEN).unscaledValue().longValueExact(),
+                    (int) recurringTransaction.getStartDate().toEpochDay(),
+                    schedule);
+        } else {
+            journal.appendRecurringMaterialized(recurringTransaction.getId().intValue(),
+                    (int) recurringTransaction.getMaterializedUntil().toEpochDay());
+        }
+        RecurringTransaction saved = state.saveRecurringTransaction(recurringTransaction);
+        recorded(1);
+        return saved;
+    }
+
+    @Override
+    public List<RecurringTransaction> findRecurringTransactions() {
+        return state.findRecurringTransactions();
+    }
+
+    @Override
+    public synchronized Gift saveGift(Gift gift) {
+        journal.appendGift(gift.getGiver().getId().intValue(), gift.getReceiver().getId().intValue(), gift.getYear());
+        Gift saved = state.saveGift(gift);
+        recorded(1);
+        return saved;
+    }
+
+    @Override
+    public synchronized List<Gift> saveGifts(List<Gift> gifts) {
+        for (Gift gift : gifts) {
+            journal.appendGift(gift.getGiver().getId().intValue(), gift.getReceiver().getId().intValue(), gift.getYear());
+        }
+        List<Gift> saved = state.saveGifts(gifts);
+        recorded(gifts.size());
+        return saved;
+    }
+
+    @Override
+    public List<Gift> findGiftsFrom(int year) {
+        return state.findGiftsFrom(year);
+    }
+
+    private void appendTransaction(Transaction transaction) {
+        journal.appendTransaction(transaction.getBorrower().getId().intValue(),
+                transaction.getLender().getId().intValue(),
+                transaction.getAmount().setScale(2, RoundingMode.HALF_EVEN).unscaledValue().longValueExact(),
+                (int) transaction.getDate().toEpochDay());
+    }
+
+    /**
+     * Counts appended records and takes a snapshot once enough of them have accumulated.
+     *
+     * @param records the number of records just appended.
+     */
+    private void recorded(int records) {
+        recordsSinceSnapshot += records;
+        if (recordsSinceSnapshot < snapshotEvery) {
+            return;
+        }
+        try {
+            state.writeSnapshot(snapshotPath, journal.position());
+            recordsSinceSnapshot = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the ledger snapshot", e);
+        }
+    }
+
+    /**
+     * Applies a replayed journal record to the in-memory state.
+     */
+    private void apply(byte type, int first, int second, int third, long value, String name) throws IOException {
+        recordsSinceSnapshot++;
+        if (pendingCompaction != null) {
+            if (type != LedgerJournal.TRANSACTION) {
+                throw new IOException("Journal compaction interrupted by record type " + type);
+            }
+            pendingCompaction.replacement().add(toTransaction(first, second, third, value));
+            if (pendingCompaction.isComplete()) {
+                state.replaceTransactionsBefore(pendingCompaction.date(), pendingCompaction.replacement());
+                pendingCompaction = null;
+            }
+            return;
+        }
+        switch (type) {
+            case LedgerJournal.USER -> {
+                User user = state.saveUser(new User(name));
+                if (user.getId() != first) {
+                    throw new IOException("Journal user id " + first + " replayed as " + user.getId());
+                }
+            }
+            case LedgerJournal.TRANSACTION -> state.saveTransaction(toTransaction(first, second, third, value));
+            case LedgerJournal.WRITE_OFF -> state.deleteTransactionsBefore(LocalDate.ofEpochDay(first));
+            case LedgerJournal.GROUP_CREATE -> state.saveGroup(new Group(name));
+            case LedgerJournal.GROUP_DELETE -> state.deleteGroupsByName(name);
+            case LedgerJournal.GROUP_ADD -> state.addUsersToGroup(new Group(name), Set.of(state.findUserById(first)));
+            case LedgerJournal.GROUP_REMOVE -> state.removeUsersFromGroup(new Group(name), Set.of(state.findUserById(first)));
+            case LedgerJournal.GIFT -> {
+                Gift gift = new Gift();
+                gift.setGiver(state.findUserById(first));
+                gift.setReceiver(state.findUserById(second));
+                gift.setYear(third);
+                state.saveGift(gift);
+            }
+            case LedgerJournal.RECURRING -> {
+                String[] schedule = name.split(" ");
+                state.saveRecurringTransaction(new RecurringTransaction(state.findUserById(first),
+                        state.findUserById(second),
+                        BigDecimal.valueOf(value, 2),
+                        RecurrencePeriod.valueOf(schedule[0]),
+                        LocalDate.ofEpochDay(third),
+                        schedule.length > 1 ? LocalDate.ofEpochDay(Long.parseLong(schedule[1])) : null));
+            }
+            case LedgerJournal.RECURRING_MATERIALIZED ->
+                    state.findRecurringTransactionById(first).setMaterializedUntil(LocalDate.ofEpochDay(third));
+            case LedgerJournal.COMPACTION -> {
+                pendingCompaction = new PendingCompaction(journal.position(), LocalDate.ofEpochDay(first),
+                        second, new ArrayList<>(second));
+                if (pendingCompaction.isComplete()) {
+                    state.replaceTransactionsBefore(pendingCompaction.date(), List.of());
+                    pendingCompaction = null;
+                }
+            }
+            default -> throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    private Transaction toTransaction(int borrowerId, int lenderId, int epochDay, long cents) {
+        return new Transaction(state.findUserById(borrowerId),
+                state.findUserById(lenderId),
+                BigDecimal.valueOf(cents, 2),
+                LocalDate.ofEpochDay(epochDay));
+    }
+
+    /**
+     * A compaction header read from the journal whose replacement transactions are still being collected.
+     */
+    private record PendingCompaction(long position, LocalDate date, int size, List<Transaction> replacement) {
+        boolean isComplete() {
+            return replacement.size() == size;
+        }
+    }
+}
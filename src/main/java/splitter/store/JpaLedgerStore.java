@@ -0,0 +1,310 @@
+package splitter.store;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import splitter.diagnostics.CommandTrace;
+import splitter.model.*;
+import splitter.repository.*;
+import splitter.tenant.TenantContext;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Ledger store backed by the Spring Data JPA repositories. This is the default engine.
+ * <p>
+ * Users and groups are looked up by name for almost every command, so the most recently used ones are kept in
+ * bounded name caches. Users are never renamed or deleted, and groups are evicted when they are deleted,
+ * so a cached entity is always the stored one. Entries are kept per tenant, within one capacity for all tenants.
+ * <p>
+ * Full scans of the transactions read the table with plain JDBC instead of hydrating an entity per row, with the
+ * users loaded once; JDBC work joins the surrounding JPA transaction, so the scan sees the same ledger.
+ */
+@Component
+@ConditionalOnProperty(prefix = "splitter.ledger", name = "engine", havingValue = "jpa", matchIfMissing = true)
+public class JpaLedgerStore implements LedgerStore {
+    private static final int SCAN_FETCH_SIZE = 1000;
+    private static final String SCAN_TRANSACTIONS = "SELECT borrower_id, lender_id, CAST(amount * 100 AS BIGINT), " +
+            "DATEDIFF(DAY, DATE '1970-01-01', transaction_date) FROM transactions ORDER BY transaction_id";
+
+    private final UserRepository userRepository;
+    private final GroupRepository groupRepository;
+    private final UserGroupRepository userGroupRepository;
+    private final TransactionRepository transactionRepository;
+    private final GiftRepository giftRepository;
+    private final RecurringTransactionRepository recurringTransactionRepository;
+    private final NameCache<User> usersByName;
+    private final NameCache<Group> groupsByName;
+    private final JdbcTemplate scanTemplate;
+
+    @Autowired
+    public JpaLedgerStore(UserRepository userRepository,
+                          GroupRepository groupRepository,
+                          UserGroupRepository userGroupRepository,
+                          TransactionRepository transactionRepository,
+                          GiftRepository giftRepository,
+                          RecurringTransactionRepository recurringTransactionRepository,
+                          PrometheusMeterRegistry meterRegistry,
+                          @Value("${splitter.lookup-cache.size:10000}") int lookupCacheSize,
+                          DataSource dataSource) {
+        this.userRepository = userRepository;
+        this.groupRepository = groupRepository;
+        this.userGroupRepository = userGroupRepository;
+        this.transactionRepository = transactionRepository;
+        this.giftRepository = giftRepository;
+        this.recurringTransactionRepository = recurringTransactionRepository;
+        this.usersByName = new NameCache<>("users", lookupCacheSize, meterRegistry);
+        this.groupsByName = new NameCache<>("groups", lookupCacheSize, meterRegistry);
+        this.scanTemplate = new JdbcTemplate(dataSource);
+        this.scanTemplate.setFetchSize(SCAN_FETCH_SIZE);
+    }
+
+    @Override
+    public Optional<User> findUserByName(String name) {
+        User cached = usersByName.get(name);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<User> user = userRepository.findByName(name);
+        user.ifPresent(found -> usersByName.put(name, found));
+        return user;
+    }
+
+    @Override
+    public User saveUser(User user) {
+        User saved = userRepository.save(user);
+        usersByName.put(saved.getName(), saved);
+        return saved;
+    }
+
+    @Override
+    public Optional<Group> findGroupByName(String name) {
+        Group cached = groupsByName.get(name);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<Group> group = groupRepository.findByName(name);
+        group.ifPresent(found -> groupsByName.put(name, found));
+        return group;
+    }
+
+    @Override
+    public Group saveGroup(Group group) {
+        Group saved = groupRepository.save(group);
+        groupsByName.put(saved.getName(), saved);
+        return saved;
+    }
+
+    @Override
+    public boolean groupExists(String name) {
+        return groupsByName.get(name) != null || groupRepository.existsByName(name);
+    }
+
+    @Override
+    public List<Group> findGroups() {
+        return groupRepository.findAll(Sort.by("name"));
+    }
+
+    @Override
+    @Transactional
+    public void deleteGroupsByName(String name) {
+        List<Group> groups = groupRepository.findAllByName(name);
+        for (Group group : groups) {
+            List<UserGroup> userGroups = userGroupRepository.findAllByGroup(group);
+            userGroupRepository.deleteAll(userGroups);  // This deletes user-group associations
+        }
+        groupRepository.deleteAll(groups);  // Then delete the groups
+        groupsByName.remove(name);
+    }
+
+    @Override
+    public Set<User> findUsersByGroupName(String name) {
+        return groupRepository.findUsersByGroupName(name);
+    }
+
+    @Override
+    public Set<User> findUsers(Group group) {
+        return groupRepository.findUsers(group);
+    }
+
+    @Override
+    @Transactional
+    public int addUsersToGroup(Group group, Set<User> users) {
+        return users.stream()
+                .map(user -> createUserGroup(group, user))
+                .map(userGroupRepository::save)
+                .toArray().length;
+    }
+
+    @Override
+    @Transactional
+    public int removeUsersFromGroup(Group group, Set<User> users) {
+        return groupRepository.removeUsersFromGroup(group, users);
+    }
+
+    @Override
+    public Transaction saveTransaction(Transaction transaction) {
+        return transactionRepository.save(transaction);
+    }
+
+    @Override
+    @Transactional
+    public List<Transaction> saveTransactions(List<Transaction> transactions) {
+        return transactionRepository.saveAll(transactions);
+    }
+
+    @Override
+    @Transactional
+    public int deleteTransactionsBefore(LocalDate date) {
+        return transactionRepository.deleteByDateBefore(date);
+    }
+
+    @Override
+    @Transactional
+    public int replaceTransactionsBefore(LocalDate date, List<Transaction> replacement) {
+        int deleted = transactionRepository.deleteByDateBefore(date);
+        transactionRepository.saveAll(replacement);
+        return deleted;
+    }
+
+    @Override
+    public List<Transaction> findTransactionsUpTo(LocalDate date) {
+        return transactionRepository.findAllByDateAndBefore(date);
+    }
+
+    @Override
+    public List<Transaction> findTransactionsUpToForBorrowers(LocalDate date, Set<User> users) {
+        return transactionRepository.findAllByDateAndBeforeForUsers(date, users);
+    }
+
+    /**
+     * Visits the transactions in id order with one streaming JDBC query that returns the amount in cents and the
+     * epoch day as numbers, so no entity, amount or date is created per row. The users are loaded first, once.
+     */
+    @Override
+    public void forEachTransaction(TransactionVisitor visitor) {
+        Map<Long, User> users = new HashMap<>();
+        for (User user : userRepository.findAll()) {
+            users.put(user.getId(), user);
+        }
+        scanTemplate.query(sql(SCAN_TRANSACTIONS), row -> {
+            visitor.visit(users.get(row.getLong(1)), users.get(row.getLong(2)), row.getLong(3), row.getInt(4));
+        });
+    }
+
+    @Override
+    public Stream<Transaction> streamTransactionsOfBorrower(User borrower, LocalDate from, LocalDate to) {
+        return transactionRepository.streamAllByBorrowerAndDateBetween(borrower, from, to);
+    }
+
+    @Override
+    public Stream<Transaction> streamTransactionsOfLender(User lender, LocalDate from, LocalDate to) {
+        return transactionRepository.streamAllByLenderAndDateBetween(lender, from, to);
+    }
+
+    @Override
+    public RecurringTransaction saveRecurringTransaction(RecurringTransaction recurringTransaction) {
+        return recurringTransactionRepository.save(recurringTransaction);
+    }
+
+    @Override
+    public List<RecurringTransaction> findRecurringTransactions() {
+        return recurringTransactionRepository.findAll(Sort.by("id"));
+    }
+
+    @Override
+    public Gift saveGift(Gift gift) {
+        return giftRepository.save(gift);
+    }
+
+    @Override
+    @Transactional
+    public List<Gift> saveGifts(List<Gift> gifts) {
+        return giftRepository.saveAll(gifts);
+    }
+
+    @Override
+    public List<Gift> findGiftsFrom(int year) {
+        return giftRepository.findAllByYearFrom(year);
+    }
+
+    /**
+     * Creates a new UserGroup instance with a specified group and user.
+     *
+     * @param group the group to set.
+     * @param user  the user to set.
+     * @return the newly created UserGroup instance.
+     */
+    private UserGroup createUserGroup(Group group, User user) {
+        UserGroup userGroup = new UserGroup();
+        userGroup.setGroup(group);
+        userGroup.setUser(user);
+        return userGroup;
+    }
+
+    /**
+     * Bounded least-recently-used cache of entities by tenant and name, counting its hits and misses.
+     */
+    static final class NameCache<V> {
+        private final Map<Key, V> entries;
+        private final Counter hits;
+        private final Counter misses;
+
+        NameCache(String cache, int capacity, MeterRegistry meterRegistry) {
+            entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, V> eldest) {
+                    return size() > capacity;
+                }
+            };
+            hits = lookupCounter(cache, "hit", meterRegistry);
+            misses = lookupCounter(cache, "miss", meterRegistry);
+        }
+
+        synchronized V get(String name) {
+            V value = entries.get(new Key(TenantContext.current(), name));
+            (value != null ? hits : misses).increment();
+            return value;
+        }
+
+        synchronized void put(String name, V value) {
+            entries.put(new Key(TenantContext.current(), name), value);
+        }
+
+        synchronized void remove(String name) {
+            entries.remove(new Key(TenantContext.current(), name));
+        }
+
+        private static Counter lookupCounter(String cache, String result, MeterRegistry meterRegistry) {
+            return Counter.builder("splitter.lookup.cache.requests")
+                    .description("Name lookups by cache and result")
+                    .tag("cache", cache)
+                    .tag("result", result)
+                    .register(meterRegistry);
+        }
+
+        private record Key(String tenant, String name) {
+        }
+    }
+
+    // the statements of the JPA path are captured by Hibernate; these are handed over here
+    static String sql(String sql) {
+        CommandTrace.recordStatement(sql);
+        return sql;
+    }
+}
@@ -0,0 +1,249 @@
+package splitter.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of ledger events stored as fixed-size binary records in a memory-mapped file.
+ * <p>
+ * Every record is {@value #RECORD_SIZE} bytes: a type, three int operands, a long operand, an optional name of up to
+ * {@value #MAX_NAME_BYTES} UTF-8 bytes and a CRC32 of the other bytes. Records are written straight into the mapped
+ * region, which is mapped chunk by chunk as the journal grows. A zero type or a bad checksum marks the end of the
+ * journal, so a record torn by a crash is simply overwritten by the next append.
+ * Not thread-safe; callers serialize appends.
+ */
+public class LedgerJournal implements Closeable {
+    public static final int RECORD_SIZE = 64;
+    public static final int MAX_NAME_BYTES = 36;
+
+    public static final byte USER = 1;
+    public static final byte TRANSACTION = 2;
+    public static final byte WRITE_OFF = 3;
+    public static final byte GROUP_CREATE = 4;
+    public static final byte GROUP_DELETE = 5;
+    public static final byte GROUP_ADD = 6;
+    public static final byte GROUP_REMOVE = 7;
+    public static final byte GIFT = 8;
+    public static final byte COMPACTION = 9;
+    public static final byte RECURRING = 10;
+    public static final byte RECURRING_MATERIALIZED = 11;
+
+    private static final int TYPE_OFFSET = 0;
+    private static final int NAME_LENGTH_OFFSET = 1;
+    private static final int FIRST_OFFSET = 4;
+    private static final int SECOND_OFFSET = 8;
+    private static final int CRC_OFFSET = 12;
+    private static final int LONG_OFFSET = 16;
+    private static final int THIRD_OFFSET = 24;
+    private static final int NAME_OFFSET = 28;
+
+    private final FileChannel channel;
+    private final long chunkSize;
+    private final boolean forceOnAppend;
+    private final CRC32 crc = new CRC32();
+
+    private MappedByteBuffer chunk;
+    private long chunkStart;
+    private long position;
+
+    /**
+     * Opens or creates a journal file. Call {@link #replay(long, RecordVisitor)} before appending.
+     *
+     * @param path          the journal file.
+     * @param chunkSize     the size of each mapped region in bytes, rounded down to whole records.
+     * @param forceOnAppend flag indicating whether every append is forced to the storage device.
+     * @throws IOException if the file cannot be opened.
+     */
+    public LedgerJournal(Path path, long chunkSize, boolean forceOnAppend) throws IOException {
+        this.channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.chunkSize = Math.max(RECORD_SIZE, chunkSize - chunkSize % RECORD_SIZE);
+        this.forceOnAppend = forceOnAppend;
+    }
+
+    /**
+     * Returns the byte offset at which the next record will be appended.
+     *
+     * @return the journal position.
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Reads every valid record from the given offset and leaves the journal positioned after the last one.
+     *
+     * @param from    the byte offset to start reading at, as returned by {@link #position()}.
+     * @param visitor the callback receiving the records.
+     * @throws IOException if the file cannot be mapped.
+     */
+    public void replay(long from, RecordVisitor visitor) throws IOException {
+        position = from;
+        map(from);
+        while (true) {
+            int offset = offset();
+            byte type = chunk.get(offset + TYPE_OFFSET);
+            if (type == 0 || checksum(offset) != chunk.getInt(offset + CRC_OFFSET)) {
+                break;
+            }
+            visitor.visit(type,
+                    chunk.getInt(offset + FIRST_OFFSET),
+                    chunk.getInt(offset + SECOND_OFFSET),
+                    chunk.getInt(offset + THIRD_OFFSET),
+                    chunk.getLong(offset + LONG_OFFSET),
+                    readName(offset));
+            advance();
+        }
+    }
+
+    public void appendUser(int userId, String name) {
+        append(USER, userId, 0, 0, 0, name);
+    }
+
+    public void appendTransaction(int borrower, int lender, long cents, int epochDay) {
+        append(TRANSACTION, borrower, lender, epochDay, cents, null);
+    }
+
+    public void appendWriteOff(int epochDay) {
+        append(WRITE_OFF, epochDay, 0, 0, 0, null);
+    }
+
+    /**
+     * Appends the header of a compaction, which must be followed by exactly {@code replacementCount} transactions.
+     *
+     * @param epochDay         the day before which transactions are replaced.
+     * @param replacementCount the number of replacement transactions that follow.
+     */
+    public void appendCompaction(int epochDay, int replacementCount) {
+        append(COMPACTION, epochDay, replacementCount, 0, 0, null);
+    }
+
+    /**
+     * Appends a recurring transaction definition. The period and the optional end day travel in the name field,
+     * as in {@code "MONTHLY"} or {@code "MONTHLY 19358"}.
+     *
+     * @param borrower the borrower id.
+     * @param lender   the lender id.
+     * @param cents    the amount per occurrence in cents.
+     * @param startDay the day of the first occurrence.
+     * @param schedule the period, optionally followed by the last epoch day.
+     */
+    public void appendRecurring(int borrower, int lender, long cents, int startDay, String schedule) {
+        append(RECURRING, borrower, lender, startDay, cents, schedule);
+    }
+
+    public void appendRecurringMaterialized(int recurringId, int epochDay) {
+        append(RECURRING_MATERIALIZED, recurringId, 0, epochDay, 0, null);
+    }
+
+    public void appendGroupEvent(byte type, String groupName, int userId) {
+        append(type, userId, 0, 0, 0, groupName);
+    }
+
+    public void appendGift(int giver, int receiver, int year) {
+        append(GIFT, giver, receiver, year, 0, null);
+    }
+
+    /**
+     * Discards the records from a position up to the current end, so that appends continue from that position.
+     *
+     * @param from the byte offset of the first record to discard.
+     * @throws IOException if the file cannot be mapped.
+     */
+    public void truncate(long from) throws IOException {
+        long end = position;
+        position = from;
+        map(from);
+        for (long record = from; record < end; record += RECORD_SIZE) {
+            if (record - chunkStart >= chunkSize) {
+                map(record);
+            }
+            chunk.put((int) (record - chunkStart) + TYPE_OFFSET, (byte) 0);
+        }
+        map(from);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (chunk != null) {
+            chunk.force();
+        }
+        channel.close();
+    }
+
+    private void append(byte type, int first, int second, int third, long value, String name) {
+        byte[] nameBytes = name == null ? new byte[0] : name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("Name is too long");
+        }
+        int offset = offset();
+        chunk.putInt(offset + FIRST_OFFSET, first);
+        chunk.putInt(offset + SECOND_OFFSET, second);
+        chunk.putInt(offset + THIRD_OFFSET, third);
+        chunk.putLong(offset + LONG_OFFSET, value);
+        chunk.put(offset + NAME_LENGTH_OFFSET, (byte) nameBytes.length);
+        chunk.put(offset + NAME_OFFSET, nameBytes);
+        for (int i = nameBytes.length; i < MAX_NAME_BYTES; i++) {
+            chunk.put(offset + NAME_OFFSET + i, (byte) 0);
+        }
+        chunk.put(offset + TYPE_OFFSET, type);
+        chunk.putInt(offset + CRC_OFFSET, checksum(offset));
+        if (forceOnAppend) {
+            chunk.force(offset, RECORD_SIZE);
+        }
+        advance();
+    }
+
+    private String readName(int offset) {
+        int length = chunk.get(offset + NAME_LENGTH_OFFSET);
+        if (length <= 0) {
+            return null;
+        }
+        byte[] bytes = new byte[Math.min(length, MAX_NAME_BYTES)];
+        chunk.get(offset + NAME_OFFSET, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int checksum(int offset) {
+        crc.reset();
+        crc.update(chunk.slice(offset, CRC_OFFSET));
+        crc.update(chunk.slice(offset + LONG_OFFSET, RECORD_SIZE - LONG_OFFSET));
+        return (int) crc.getValue();
+    }
+
+    private int offset() {
+        return (int) (position - chunkStart);
+    }
+
+    private void advance() {
+        position += RECORD_SIZE;
+        if (position - chunkStart >= chunkSize) {
+            try {
+                map(position);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot extend the journal", e);
+            }
+        }
+    }
+
+    private void map(long start) throws IOException {
+        if (chunk != null) {
+            chunk.force();
+        }
+        chunk = channel.map(FileChannel.MapMode.READ_WRITE, start, chunkSize);
+        chunk.order(ByteOrder.LITTLE_ENDIAN);
+        chunkStart = start;
+    }
+
+    @FunctionalInterface
+    public interface RecordVisitor {
+        void visit(byte type, int first, int second, int third, long value, String name) throws IOException;
+    }
+}
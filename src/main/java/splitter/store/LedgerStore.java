@@ -0,0 +1,197 @@
+package splitter.store;
+
+import splitter.model.Gift;
+import splitter.model.Group;
+import splitter.model.RecurringTransaction;
+import splitter.model.Transaction;
+import splitter.model.User;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Storage engine behind the services.
+ * The implementation is selected with the {@code splitter.ledger.engine} property.
+ */
+public interface LedgerStore {
+    Optional<User> findUserByName(String name);
+
+    User saveUser(User user);
+
+    Optional<Group> findGroupByName(String name);
+
+    Group saveGroup(Group group);
+
+    boolean groupExists(String name);
+
+    /**
+     * Finds every group.
+     *
+     * @return the groups, ordered by name.
+     */
+    List<Group> findGroups();
+
+    /**
+     * Deletes every group with the given name together with its memberships.
+     *
+     * @param name the group name.
+     */
+    void deleteGroupsByName(String name);
+
+    Set<User> findUsersByGroupName(String name);
+
+    Set<User> findUsers(Group group);
+
+    /**
+     * Adds a set of users to a group.
+     *
+     * @param group the group to add the users to.
+     * @param users the users to add.
+     * @return the number of memberships written.
+     */
+    int addUsersToGroup(Group group, Set<User> users);
+
+    /**
+     * Removes a set of users from a group.
+     *
+     * @param group the group to remove the users from.
+     * @param users the users to remove.
+     * @return the number of memberships removed.
+     */
+    int removeUsersFromGroup(Group group, Set<User> users);
+
+    Transaction saveTransaction(Transaction transaction);
+
+    /**
+     * Saves a list of transactions atomically.
+     *
+     * @param transactions the transactions to save.
+     * @return the saved transactions, in the same order.
+     */
+    List<Transaction> saveTransactions(List<Transaction> transactions);
+
+    /**
+     * Deletes transactions dated strictly before a given date.
+     *
+     * @param date the date to delete transactions before.
+     * @return the number of transactions deleted.
+     */
+    int deleteTransactionsBefore(LocalDate date);
+
+    /**
+     * Atomically replaces the transactions dated strictly before a given date with other transactions.
+     *
+     * @param date        the date to replace transactions before.
+     * @param replacement the transactions to save in their place.
+     * @return the number of transactions deleted.
+     */
+    int replaceTransactionsBefore(LocalDate date, List<Transaction> replacement);
+
+    /**
+     * Finds the transactions dated on or before a given date.
+     *
+     * @param date the last date to include.
+     * @return the matching transactions.
+     */
+    List<Transaction> findTransactionsUpTo(LocalDate date);
+
+    /**
+     * Finds the transactions dated on or before a given date whose borrower is one of the given users.
+     *
+     * @param date  the last date to include.
+     * @param users the borrowers to include.
+     * @return the matching transactions.
+     */
+    List<Transaction> findTransactionsUpToForBorrowers(LocalDate date, Set<User> users);
+
+    /**
+     * Sums the transactions dated on or before a given date by borrower and lender, for the balances.
+     * This default sums them in memory; engines that can aggregate where the transactions are stored override it.
+     *
+     * @param date  the last date to include.
+     * @param users the borrowers to include, or an empty set for everyone.
+     * @return one transaction per borrower and lender, holding their total and dated on the given date.
+     */
+    default List<Transaction> sumTransactionsUpTo(LocalDate date, Set<User> users) {
+        List<Transaction> transactions = users.isEmpty() ?
+                findTransactionsUpTo(date) :
+                findTransactionsUpToForBorrowers(date, users);
+        Map<List<Long>, Transaction> sums = new LinkedHashMap<>();
+        for (Transaction transaction : transactions) {
+            sums.merge(List.of(transaction.getBorrower().getId(), transaction.getLender().getId()),
+                    new Transaction(transaction.getBorrower(), transaction.getLender(), transaction.getAmount(), date),
+                    (sum, next) -> new Transaction(sum.getBorrower(), sum.getLender(),
+                            sum.getAmount().add(next.getAmount()), date));
+        }
+        return new ArrayList<>(sums.values());
+    }
+
+    /**
+     * Visits every transaction, in insertion order, holding no more than a fetch-sized window of them in memory.
+     * The visitor must not write to the ledger.
+     *
+     * @param visitor the visitor of each transaction.
+     */
+    void forEachTransaction(TransactionVisitor visitor);
+
+    /**
+     * Streams the transactions of one borrower dated between two dates, ordered by date.
+     * The stream must be closed, and with the jpa engine consumed inside a transaction.
+     *
+     * @param borrower the borrower.
+     * @param from     the first date to include.
+     * @param to       the last date to include.
+     * @return the matching transactions.
+     */
+    Stream<Transaction> streamTransactionsOfBorrower(User borrower, LocalDate from, LocalDate to);
+
+    /**
+     * Streams the transactions of one lender dated between two dates, ordered by date.
+     * The stream must be closed, and with the jpa engine consumed inside a transaction.
+     *
+     * @param lender the lender.
+     * @param from   the first date to include.
+     * @param to     the last date to include.
+     * @return the matching transactions.
+     */
+    Stream<Transaction> streamTransactionsOfLender(User lender, LocalDate from, LocalDate to);
+
+    /**
+     * Saves a new recurring transaction, or the materialized date of an existing one.
+     *
+     * @param recurringTransaction the recurring transaction.
+     * @return the saved recurring transaction, with its id.
+     */
+    RecurringTransaction saveRecurringTransaction(RecurringTransaction recurringTransaction);
+
+    /**
+     * Finds every recurring transaction.
+     *
+     * @return the recurring transactions, in creation order.
+     */
+    List<RecurringTransaction> findRecurringTransactions();
+
+    Gift saveGift(Gift gift);
+
+    /**
+     * Saves several gifts as one batch.
+     *
+     * @param gifts the gifts to save.
+     * @return the saved gifts, in the same order.
+     */
+    List<Gift> saveGifts(List<Gift> gifts);
+
+    /**
+     * Finds the gifts given in a year or later.
+     *
+     * @param year the first year to include.
+     * @return the gifts, with their givers and receivers.
+     */
+    List<Gift> findGiftsFrom(int year);
+}
@@ -0,0 +1,121 @@
+package splitter.store;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from a user index pair to a sum of cents, without boxing.
+ * Pairs are stored canonically, lower index first: a positive sum means the lower index owes the higher one.
+ */
+public class PairSums {
+    private static final long EMPTY = -1L;
+
+    private long[] keys;
+    private long[] sums;
+    private int size;
+
+    public PairSums(int expectedPairs) {
+        int capacity = Integer.highestOneBit(Math.max(expectedPairs, 8) * 2 - 1) << 1;
+        keys = new long[capacity];
+        sums = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds an amount owed by one user to another.
+     *
+     * @param borrower the borrower index.
+     * @param lender   the lender index.
+     * @param cents    the amount in cents.
+     */
+    public void add(int borrower, int lender, long cents) {
+        if (borrower < lender) {
+            addCanonical(pairKey(borrower, lender), cents);
+        } else {
+            addCanonical(pairKey(lender, borrower), -cents);
+        }
+    }
+
+    /**
+     * Adds every pair sum of another instance to this one.
+     *
+     * @param other the sums to merge in.
+     */
+    public void addAll(PairSums other) {
+        for (int slot = 0; slot < other.keys.length; slot++) {
+            if (other.keys[slot] != EMPTY) {
+                addCanonical(other.keys[slot], other.sums[slot]);
+            }
+        }
+    }
+
+    /**
+     * Calls the visitor for every pair with a non-zero sum, oriented so that the amount is positive.
+     *
+     * @param visitor the callback receiving the borrower index, the lender index and the amount in cents.
+     */
+    public void forEachDebt(DebtVisitor visitor) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            long key = keys[slot];
+            long sum = sums[slot];
+            if (key == EMPTY || sum == 0) {
+                continue;
+            }
+            int low = (int) (key >>> 32);
+            int high = (int) key;
+            if (sum > 0) {
+                visitor.visit(low, high, sum);
+            } else {
+                visitor.visit(high, low, -sum);
+            }
+        }
+    }
+
+    private void addCanonical(long key, long cents) {
+        int mask = keys.length - 1;
+        int slot = (int) mix(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (keys[slot] != EMPTY) {
+            sums[slot] += cents;
+            return;
+        }
+        keys[slot] = key;
+        sums[slot] = cents;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldSums = sums;
+        keys = new long[oldKeys.length * 2];
+        sums = new long[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != EMPTY) {
+                addCanonical(oldKeys[slot], oldSums[slot]);
+            }
+        }
+    }
+
+    private static long pairKey(int low, int high) {
+        return ((long) low << 32) | (high & 0xffffffffL);
+    }
+
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    @FunctionalInterface
+    public interface DebtVisitor {
+        void visit(int borrower, int lender, long cents);
+    }
+}
@@ -0,0 +1,503 @@
+package splitter.store;
+
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import splitter.model.Transaction;
+import splitter.model.User;
+import splitter.repository.*;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Ledger store that splits the transactions across several H2 databases, the partitions, and keeps users and
+ * everything else in the main database like {@link JdbcLedgerStore}. Selected with
+ * {@code splitter.ledger.engine=partitioned}.
+ * <p>
+ * A transaction goes to the partition given by a hash of its user pair, taken with the lower user id first, so both
+ * directions of a pair live in the same partition and a partition can sum a pair on its own. Every partition has its
+ * own write lock and log, so a batch is split by partition and each part is written in parallel. The partitions are
+ * given by the {@code splitter.partitions.url} template, {@code {partition}} standing for the partition number:
+ * file databases opened by this process, or H2 servers running as separate processes, such as
+ * {@code jdbc:h2:tcp://localhost:9092/./partition-{partition}}.
+ * <p>
+ * Reads scatter the query to every partition in parallel and gather the results: balances merge the pair sums
+ * computed by each partition, lists and streams merge the sorted rows of each partition. Transaction ids are handed
+ * out by this store across all partitions, so merged rows come in the same order as from a single table. A write
+ * touching several partitions is committed only once every partition has written its part, but the commits
+ * themselves are not atomic: a partition failing to commit after the others did leaves their part written.
+ */
+@Component
+@ConditionalOnProperty(prefix = "splitter.ledger", name = "engine", havingValue = "partitioned")
+public class PartitionedLedgerStore extends JdbcLedgerStore {
+    private static final int BATCH_SIZE = 500;
+    private static final String CREATE_TRANSACTIONS = "CREATE TABLE IF NOT EXISTS transactions (" +
+            "transaction_id BIGINT PRIMARY KEY, borrower_id BIGINT NOT NULL, lender_id BIGINT NOT NULL, " +
+            "amount NUMERIC(38, 2) NOT NULL, transaction_date DATE NOT NULL)";
+    private static final String CREATE_BORROWER_INDEX = "CREATE INDEX IF NOT EXISTS transactions_borrower_date " +
+            "ON transactions (borrower_id, transaction_date)";
+    private static final String CREATE_LENDER_INDEX = "CREATE INDEX IF NOT EXISTS transactions_lender_date " +
+            "ON transactions (lender_id, transaction_date)";
+    private static final String DROP_TRANSACTIONS = "DROP TABLE IF EXISTS transactions";
+    private static final String MAX_TRANSACTION_ID = "SELECT COALESCE(MAX(transaction_id), 0) FROM transactions";
+    private static final String INSERT_TRANSACTION = "INSERT INTO transactions " +
+            "(transaction_id, borrower_id, lender_id, amount, transaction_date) VALUES (?, ?, ?, ?, ?)";
+    private static final String SELECT_ROWS =
+            "SELECT transaction_id, borrower_id, lender_id, amount, transaction_date FROM transactions ";
+    private static final String SCAN_ROWS = SELECT_ROWS + "ORDER BY transaction_id";
+    private static final String FIND_ROWS_UP_TO = SELECT_ROWS + "WHERE transaction_date <= ? ORDER BY transaction_id";
+    private static final String FIND_ROWS_UP_TO_FOR_BORROWERS = SELECT_ROWS +
+            "WHERE transaction_date <= ? AND borrower_id = ANY(?) ORDER BY transaction_id";
+    private static final String STREAM_ROWS_OF_BORROWER = SELECT_ROWS +
+            "WHERE borrower_id = ? AND transaction_date BETWEEN ? AND ? ORDER BY transaction_date, transaction_id";
+    private static final String STREAM_ROWS_OF_LENDER = SELECT_ROWS +
+            "WHERE lender_id = ? AND transaction_date BETWEEN ? AND ? ORDER BY transaction_date, transaction_id";
+    private static final Comparator<Row> BY_ID = Comparator.comparingLong(Row::id);
+    private static final Comparator<Row> BY_DATE_AND_ID = Comparator.comparing(Row::date).thenComparing(BY_ID);
+    private static final RowMapper<Row> ROW_MAPPER = (row, rowNumber) -> new Row(row.getLong(1),
+            row.getLong(2),
+            row.getLong(3),
+            row.getBigDecimal(4),
+            row.getDate(5).toLocalDate());
+
+    private final List<DataSource> dataSources = new ArrayList<>();
+    private final List<JdbcTemplate> partitions = new ArrayList<>();
+    private final boolean recreateTables;
+    private final ExecutorService executor;
+    private final AtomicLong lastTransactionId = new AtomicLong();
+
+    @Autowired
+    public PartitionedLedgerStore(UserRepository userRepository,
+                                  GroupRepository groupRepository,
+                                  UserGroupRepository userGroupRepository,
+                                  TransactionRepository transactionRepository,
+                                  GiftRepository giftRepository,
+                                  RecurringTransactionRepository recurringTransactionRepository,
+                                  PrometheusMeterRegistry meterRegistry,
+                                  @Value("${splitter.lookup-cache.size:10000}") int lookupCacheSize,
+                                  DataSource dataSource,
+                                  @Value("${splitter.partitions.count:4}") int partitionCount,
+                                  @Value("${splitter.partitions.url:jdbc:h2:file:./demo-partition-{partition}}")
+                                  String partitionUrl,
+                                  @Value("${spring.datasource.username:sa}") String username,
+                                  @Value("${spring.datasource.password:}") String password,
+                                  @Value("${spring.jpa.hibernate.ddl-auto:none}") String ddlAuto) {
+        super(userRepository, groupRepository, userGroupRepository, transactionRepository, giftRepository,
+                recurringTransactionRepository, meterRegistry, lookupCacheSize, dataSource);
+        if (partitionCount < 1) {
+            throw new IllegalArgumentException("splitter.partitions.count must be at least 1");
+        }
+        for (int partition = 0; partition < partitionCount; partition++) {
+            DataSource partitionSource = DataSourceBuilder.create()
+                    .url(partitionUrl.replace("{partition}", String.valueOf(partition)))
+                    .username(username)
+                    .password(password)
+                    .build();
+            JdbcTemplate template = new JdbcTemplate(partitionSource);
+            template.setFetchSize(BATCH_SIZE);
+            dataSources.add(partitionSource);
+            partitions.add(template);
+        }
+        this.recreateTables = ddlAuto.startsWith("create");
+        this.executor = Executors.newFixedThreadPool(partitionCount, runnable -> {
+            Thread thread = new Thread(runnable, "ledger-partition");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates the transactions table of every partition, dropping it first when Hibernate recreates the main
+     * database, and continues the transaction ids from the highest one stored.
+     */
+    @PostConstruct
+    public void open() {
+        List<Long> maxIds = scatter(partition -> {
+            JdbcTemplate template = partitions.get(partition);
+            if (recreateTables) {
+                template.execute(DROP_TRANSACTIONS);
+            }
+            template.execute(CREATE_TRANSACTIONS);
+            template.execute(CREATE_BORROWER_INDEX);
+            template.execute(CREATE_LENDER_INDEX);
+            return template.queryForObject(MAX_TRANSACTION_ID, Long.class);
+        });
+        lastTransactionId.set(maxIds.stream().mapToLong(Long::longValue).max().orElse(0));
+    }
+
+    /**
+     * Stops the partition threads and closes the connection pools of the partitions.
+     *
+     * @throws Exception if a pool cannot be closed
+     */
+    @PreDestroy
+    public void close() throws Exception {
+        executor.shutdown();
+        for (DataSource dataSource : dataSources) {
+            if (dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    @Override
+    public Transaction saveTransaction(Transaction transaction) {
+        Row row = toRow(transaction);
+        partitions.get(partitionOf(row.borrowerId(), row.lenderId())).update(sql(INSERT_TRANSACTION),
+                row.id(), row.borrowerId(), row.lenderId(), row.amount(), Date.valueOf(row.date()));
+        return transaction;
+    }
+
+    @Override
+    public List<Transaction> saveTransactions(List<Transaction> transactions) {
+        Map<Integer, List<Row>> rowsByPartition = byPartition(transactions);
+        String insert = sql(INSERT_TRANSACTION);
+        writeInParallel(rowsByPartition.keySet(),
+                (partition, connection) -> insert(connection, insert, rowsByPartition.get(partition)));
+        return transactions;
+    }
+
+    @Override
+    public int deleteTransactionsBefore(LocalDate date) {
+        String delete = sql(DELETE_TRANSACTIONS_BEFORE);
+        return writeInParallel(allPartitions(), (partition, connection) -> delete(connection, delete, date));
+    }
+
+    @Override
+    public int replaceTransactionsBefore(LocalDate date, List<Transaction> replacement) {
+        Map<Integer, List<Row>> rowsByPartition = byPartition(replacement);
+        String delete = sql(DELETE_TRANSACTIONS_BEFORE);
+        String insert = sql(INSERT_TRANSACTION);
+        return writeInParallel(allPartitions(), (partition, connection) -> {
+            int deleted = delete(connection, delete, date);
+            insert(connection, insert, rowsByPartition.getOrDefault(partition, List.of()));
+            return deleted;
+        });
+    }
+
+    @Override
+    public List<Transaction> findTransactionsUpTo(LocalDate date) {
+        String find = sql(FIND_ROWS_UP_TO);
+        return gather(partition -> partitions.get(partition).query(find, ROW_MAPPER, Date.valueOf(date)));
+    }
+
+    @Override
+    public List<Transaction> findTransactionsUpToForBorrowers(LocalDate date, Set<User> users) {
+        Long[] borrowerIds = users.stream().map(User::getId).toArray(Long[]::new);
+        String find = sql(FIND_ROWS_UP_TO_FOR_BORROWERS);
+        return gather(partition -> partitions.get(partition).query(find, ROW_MAPPER,
+                Date.valueOf(date), borrowerIds));
+    }
+
+    /**
+     * Sums the pairs of every partition in parallel. A pair lives in a single partition, so the partial sums are
+     * whole sums and the merge only puts them together.
+     */
+    @Override
+    public List<Transaction> sumTransactionsUpTo(LocalDate date, Set<User> users) {
+        Long[] borrowerIds = users.stream().map(User::getId).toArray(Long[]::new);
+        String sum = sql(users.isEmpty() ? SUM_TRANSACTIONS_UP_TO : SUM_TRANSACTIONS_UP_TO_FOR_BORROWERS);
+        Object[] arguments = users.isEmpty()
+                ? new Object[]{Date.valueOf(date)}
+                : new Object[]{Date.valueOf(date), borrowerIds};
+        List<List<Row>> partialSums = scatter(partition -> partitions.get(partition).query(sum,
+                (row, rowNumber) -> new Row(0, row.getLong(1), row.getLong(2), row.getBigDecimal(3), date),
+                arguments));
+        Map<List<Long>, BigDecimal> sums = new LinkedHashMap<>();
+        for (List<Row> rows : partialSums) {
+            for (Row row : rows) {
+                sums.merge(List.of(row.borrowerId(), row.lenderId()), row.amount(), BigDecimal::add);
+            }
+        }
+        List<Transaction> transactions = new ArrayList<>(sums.size());
+        sums.forEach((pair, amount) ->
+                transactions.add(new Transaction(userById(pair.get(0)), userById(pair.get(1)), amount, date)));
+        return transactions;
+    }
+
+    @Override
+    public void forEachTransaction(TransactionVisitor visitor) {
+        String scan = sql(SCAN_ROWS);
+        try (Stream<Row> rows = merge(BY_ID, partition -> partitions.get(partition).queryForStream(scan, ROW_MAPPER))) {
+            rows.forEach(row -> visitor.visit(userById(row.borrowerId()),
+                    userById(row.lenderId()),
+                    row.amount().movePointRight(2).longValueExact(),
+                    (int) row.date().toEpochDay()));
+        }
+    }
+
+    @Override
+    public Stream<Transaction> streamTransactionsOfBorrower(User borrower, LocalDate from, LocalDate to) {
+        String stream = sql(STREAM_ROWS_OF_BORROWER);
+        return merge(BY_DATE_AND_ID, partition -> partitions.get(partition).queryForStream(stream, ROW_MAPPER,
+                borrower.getId(), Date.valueOf(from), Date.valueOf(to)))
+                .map(this::toTransaction);
+    }
+
+    @Override
+    public Stream<Transaction> streamTransactionsOfLender(User lender, LocalDate from, LocalDate to) {
+        String stream = sql(STREAM_ROWS_OF_LENDER);
+        return merge(BY_DATE_AND_ID, partition -> partitions.get(partition).queryForStream(stream, ROW_MAPPER,
+                lender.getId(), Date.valueOf(from), Date.valueOf(to)))
+                .map(this::toTransaction);
+    }
+
+    /**
+     * Returns the partition of a user pair; both directions of a pair give the same partition.
+     */
+    int partitionOf(long firstUserId, long secondUserId) {
+        long hash = Math.min(firstUserId, secondUserId) * 0x9E3779B97F4A7C15L ^ Math.max(firstUserId, secondUserId);
+        hash = (hash ^ hash >>> 31) * 0xBF58476D1CE4E5B9L;
+        return (int) Math.floorMod(hash ^ hash >>> 29, (long) partitions.size());
+    }
+
+    private Map<Integer, List<Row>> byPartition(List<Transaction> transactions) {
+        Map<Integer, List<Row>> rowsByPartition = new TreeMap<>();
+        for (Transaction transaction : transactions) {
+            Row row = toRow(transaction);
+            rowsByPartition.computeIfAbsent(partitionOf(row.borrowerId(), row.lenderId()), partition -> new ArrayList<>())
+                    .add(row);
+        }
+        return rowsByPartition;
+    }
+
+    private List<Integer> allPartitions() {
+        return IntStream.range(0, partitions.size()).boxed().toList();
+    }
+
+    private Row toRow(Transaction transaction) {
+        return new Row(lastTransactionId.incrementAndGet(),
+                transaction.getBorrower().getId(),
+                transaction.getLender().getId(),
+                transaction.getAmount(),
+                transaction.getDate());
+    }
+
+    // users are resolved on the calling thread, which may see users not yet committed to the main database
+    private Transaction toTransaction(Row row) {
+        return new Transaction(userById(row.borrowerId()), userById(row.lenderId()), row.amount(), row.date());
+    }
+
+    private List<Transaction> gather(IntFunction<List<Row>> query) {
+        List<Row> rows = new ArrayList<>();
+        scatter(query).forEach(rows::addAll);
+        rows.sort(BY_ID);
+        return rows.stream().map(this::toTransaction).toList();
+    }
+
+    private <T> List<T> scatter(IntFunction<T> query) {
+        List<Future<T>> futures = new ArrayList<>(partitions.size());
+        for (int partition = 0; partition < partitions.size(); partition++) {
+            int target = partition;
+            futures.add(executor.submit(() -> query.apply(target)));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        for (Future<T> future : futures) {
+            results.add(join(future));
+        }
+        return results;
+    }
+
+    /**
+     * Merges the sorted rows of every partition into one sorted stream; closing it closes the partition streams.
+     */
+    private Stream<Row> merge(Comparator<Row> order, IntFunction<Stream<Row>> query) {
+        List<Stream<Row>> streams = new ArrayList<>(partitions.size());
+        try {
+            for (int partition = 0; partition < partitions.size(); partition++) {
+                streams.add(query.apply(partition));
+            }
+        } catch (RuntimeException e) {
+            streams.forEach(Stream::close);
+            throw e;
+        }
+        Iterator<Row> rows = new MergingIterator(order, streams.stream().map(Stream::iterator).toList());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(rows, Spliterator.ORDERED), false)
+                .onClose(() -> streams.forEach(Stream::close));
+    }
+
+    /**
+     * Writes to each partition in parallel, each in a transaction of its own, and commits them once they have all
+     * succeeded; if any has failed, they are all rolled back.
+     *
+     * @return the total of the row counts returned by the writes.
+     */
+    private int writeInParallel(Collection<Integer> targets, PartitionWrite write) {
+        List<Future<PendingCommit>> writes = new ArrayList<>(targets.size());
+        for (int partition : targets) {
+            writes.add(executor.submit(() -> {
+                Connection connection = dataSources.get(partition).getConnection();
+                try {
+                    connection.setAutoCommit(false);
+                    return new PendingCommit(connection, write.write(partition, connection));
+                } catch (SQLException | RuntimeException e) {
+                    rollback(connection, e);
+                    throw e;
+                }
+            }));
+        }
+        List<PendingCommit> pending = new ArrayList<>(writes.size());
+        RuntimeException failure = null;
+        for (Future<PendingCommit> future : writes) {
+            try {
+                pending.add(join(future));
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            for (PendingCommit commit : pending) {
+                rollback(commit.connection(), failure);
+            }
+            throw failure;
+        }
+        List<Future<Integer>> commits = new ArrayList<>(pending.size());
+        for (PendingCommit commit : pending) {
+            commits.add(executor.submit(() -> {
+                try (Connection connection = commit.connection()) {
+                    connection.commit();
+                }
+                return commit.rows();
+            }));
+        }
+        int rows = 0;
+        for (Future<Integer> commit : commits) {
+            rows += join(commit);
+        }
+        return rows;
+    }
+
+    private static int insert(Connection connection, String sql, List<Row> rows) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            int pending = 0;
+            for (Row row : rows) {
+                statement.setLong(1, row.id());
+                statement.setLong(2, row.borrowerId());
+                statement.setLong(3, row.lenderId());
+                statement.setBigDecimal(4, row.amount());
+                statement.setDate(5, Date.valueOf(row.date()));
+                statement.addBatch();
+                if (++pending == BATCH_SIZE) {
+                    statement.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                statement.executeBatch();
+            }
+        }
+        return rows.size();
+    }
+
+    private static int delete(Connection connection, String sql, LocalDate date) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setDate(1, Date.valueOf(date));
+            return statement.executeUpdate();
+        }
+    }
+
+    private static void rollback(Connection connection, Exception failure) {
+        try (connection) {
+            connection.rollback();
+        } catch (SQLException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    private static <T> T join(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a partition", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Partition failed", e.getCause());
+        }
+    }
+
+    @FunctionalInterface
+    private interface PartitionWrite {
+        int write(int partition, Connection connection) throws SQLException;
+    }
+
+    private record Row(long id, long borrowerId, long lenderId, BigDecimal amount, LocalDate date) {
+    }
+
+    private record PendingCommit(Connection connection, int rows) {
+    }
+
+    private static final class MergingIterator implements Iterator<Row> {
+        private final PriorityQueue<Head> heads;
+
+        MergingIterator(Comparator<Row> order, List<Iterator<Row>> sources) {
+            this.heads = new PriorityQueue<>(Math.max(1, sources.size()), Comparator.comparing(Head::row, order));
+            for (Iterator<Row> source : sources) {
+                if (source.hasNext()) {
+                    heads.add(new Head(source.next(), source));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Row next() {
+            Head head = heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            if (head.rest().hasNext()) {
+                heads.add(new Head(head.rest().next(), head.rest()));
+            }
+            return head.row();
+        }
+
+        private record Head(Row row, Iterator<Row> rest) {
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package splitter.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Buffered binary reader and writer for store snapshots, moving primitive arrays in bulk through a direct buffer.
+ */
+final class SnapshotBuffer implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final boolean writing;
+
+    private SnapshotBuffer(FileChannel channel, boolean writing) {
+        this.channel = channel;
+        this.writing = writing;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if (!writing) {
+            buffer.flip();
+        }
+    }
+
+    static SnapshotBuffer forWriting(Path path) throws IOException {
+        return new SnapshotBuffer(FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), true);
+    }
+
+    static SnapshotBuffer forReading(Path path) throws IOException {
+        return new SnapshotBuffer(FileChannel.open(path, StandardOpenOption.READ), false);
+    }
+
+    void putInt(int value) throws IOException {
+        ensureWritable(Integer.BYTES);
+        buffer.putInt(value);
+    }
+
+    void putLong(long value) throws IOException {
+        ensureWritable(Long.BYTES);
+        buffer.putLong(value);
+    }
+
+    void putString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putInt(bytes.length);
+        ensureWritable(bytes.length);
+        buffer.put(bytes);
+    }
+
+    void putInts(int[] values, int length) throws IOException {
+        for (int written = 0; written < length; ) {
+            ensureWritable(Integer.BYTES);
+            int count = Math.min(length - written, buffer.remaining() / Integer.BYTES);
+            buffer.asIntBuffer().put(values, written, count);
+            buffer.position(buffer.position() + count * Integer.BYTES);
+            written += count;
+        }
+    }
+
+    void putLongs(long[] values, int length) throws IOException {
+        for (int written = 0; written < length; ) {
+            ensureWritable(Long.BYTES);
+            int count = Math.min(length - written, buffer.remaining() / Long.BYTES);
+            buffer.asLongBuffer().put(values, written, count);
+            buffer.position(buffer.position() + count * Long.BYTES);
+            written += count;
+        }
+    }
+
+    int getInt() throws IOException {
+        ensureReadable(Integer.BYTES);
+        return buffer.getInt();
+    }
+
+    long getLong() throws IOException {
+        ensureReadable(Long.BYTES);
+        return buffer.getLong();
+    }
+
+    String getString() throws IOException {
+        byte[] bytes = new byte[getInt()];
+        ensureReadable(bytes.length);
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    int[] getInts(int length, int capacity) throws IOException {
+        int[] values = new int[capacity];
+        for (int read = 0; read < length; ) {
+            ensureReadable(Integer.BYTES);
+            int count = Math.min(length - read, buffer.remaining() / Integer.BYTES);
+            buffer.asIntBuffer().get(values, read, count);
+            buffer.position(buffer.position() + count * Integer.BYTES);
+            read += count;
+        }
+        return values;
+    }
+
+    long[] getLongs(int length, int capacity) throws IOException {
+        long[] values = new long[capacity];
+        for (int read = 0; read < length; ) {
+            ensureReadable(Long.BYTES);
+            int count = Math.min(length - read, buffer.remaining() / Long.BYTES);
+            buffer.asLongBuffer().get(values, read, count);
+            buffer.position(buffer.position() + count * Long.BYTES);
+            read += count;
+        }
+        return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writing) {
+            flush();
+            channel.force(true);
+        }
+        channel.close();
+    }
+
+    private void ensureWritable(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void ensureReadable(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Unexpected end of snapshot");
+            }
+        }
+        buffer.flip();
+    }
+}
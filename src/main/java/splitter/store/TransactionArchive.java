@@ -0,0 +1,108 @@
+package splitter.store;
+
+import splitter.model.Transaction;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compressed binary archive of transactions removed by a compacting write-off.
+ * <p>
+ * The archive stores the cutoff date, a dictionary of user names, the archived rows and the opening-balance rows that
+ * replaced them, each row as two name indexes, an amount in cents and an epoch day. Keeping the opening rows lets a
+ * restore take exactly those rows back out of the ledger.
+ */
+public final class TransactionArchive {
+    private static final int MAGIC = 0x57524f46;
+
+    private TransactionArchive() {
+    }
+
+    /**
+     * Writes an archive file.
+     *
+     * @param path     the archive file to create.
+     * @param cutoff   the first date that was kept in the ledger.
+     * @param archived the transactions removed from the ledger.
+     * @param openings the opening-balance transactions that replaced them.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(Path path, LocalDate cutoff, List<Transaction> archived, List<Transaction> openings)
+            throws IOException {
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        for (List<Transaction> rows : List.of(archived, openings)) {
+            for (Transaction transaction : rows) {
+                dictionary.putIfAbsent(transaction.getBorrower().getName(), dictionary.size());
+                dictionary.putIfAbsent(transaction.getLender().getName(), dictionary.size());
+            }
+        }
+
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(path), 1 << 16)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(cutoff.toEpochDay());
+            out.writeInt(dictionary.size());
+            for (String name : dictionary.keySet()) {
+                out.writeUTF(name);
+            }
+            writeRows(out, archived, dictionary);
+            writeRows(out, openings, dictionary);
+        }
+    }
+
+    /**
+     * Reads an archive file.
+     *
+     * @param path the archive file.
+     * @return the archive contents.
+     * @throws IOException if the file cannot be read or is not a transaction archive.
+     */
+    public static Contents read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(path), 1 << 16)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a transaction archive: " + path);
+            }
+            LocalDate cutoff = LocalDate.ofEpochDay(in.readLong());
+            String[] names = new String[in.readInt()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = in.readUTF();
+            }
+            List<Row> archived = readRows(in, names);
+            List<Row> openings = readRows(in, names);
+            return new Contents(cutoff, archived, openings);
+        }
+    }
+
+    private static void writeRows(DataOutputStream out, List<Transaction> rows, Map<String, Integer> dictionary)
+            throws IOException {
+        out.writeInt(rows.size());
+        for (Transaction transaction : rows) {
+            out.writeInt(dictionary.get(transaction.getBorrower().getName()));
+            out.writeInt(dictionary.get(transaction.getLender().getName()));
+            out.writeLong(transaction.getAmount().movePointRight(2).longValueExact());
+            out.writeInt((int) transaction.getDate().toEpochDay());
+        }
+    }
+
+    private static List<Row> readRows(DataInputStream in, String[] names) throws IOException {
+        int count = in.readInt();
+        List<Row> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rows.add(new Row(names[in.readInt()], names[in.readInt()], in.readLong(), in.readInt()));
+        }
+        return rows;
+    }
+
+    public record Contents(LocalDate cutoff, List<Row> archived, List<Row> openings) {
+    }
+
+    public record Row(String borrower, String lender, long cents, int epochDay) {
+    }
+}
@@ -0,0 +1,158 @@
+package splitter.store;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Struct-of-arrays storage for transactions: one primitive array per field instead of one object per row.
+ * Users are referenced by index, amounts are kept in cents and dates as epoch days.
+ * Not thread-safe; callers guard access.
+ */
+public class TransactionColumns {
+    private int[] borrowers;
+    private int[] lenders;
+    private long[] cents;
+    private int[] days;
+    private int size;
+
+    public TransactionColumns(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        borrowers = new int[capacity];
+        lenders = new int[capacity];
+        cents = new long[capacity];
+        days = new int[capacity];
+    }
+
+    /**
+     * Reads columns previously written with {@link #writeTo(SnapshotBuffer)}.
+     *
+     * @param in the snapshot to read from.
+     * @return the restored columns.
+     * @throws IOException if the snapshot cannot be read.
+     */
+    static TransactionColumns readFrom(SnapshotBuffer in) throws IOException {
+        int rows = in.getInt();
+        int capacity = Math.max(rows + (rows >> 1), 16);
+        TransactionColumns columns = new TransactionColumns(0);
+        columns.borrowers = in.getInts(rows, capacity);
+        columns.lenders = in.getInts(rows, capacity);
+        columns.cents = in.getLongs(rows, capacity);
+        columns.days = in.getInts(rows, capacity);
+        columns.size = rows;
+        return columns;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int borrower(int row) {
+        return borrowers[row];
+    }
+
+    public int lender(int row) {
+        return lenders[row];
+    }
+
+    public long cents(int row) {
+        return cents[row];
+    }
+
+    public int day(int row) {
+        return days[row];
+    }
+
+    /**
+     * Appends a row, growing the arrays when they are full.
+     *
+     * @param borrower the borrower index.
+     * @param lender   the lender index.
+     * @param amount   the amount in cents.
+     * @param day      the transaction date as an epoch day.
+     * @return the index of the new row.
+     */
+    public int add(int borrower, int lender, long amount, int day) {
+        if (size == borrowers.length) {
+            int capacity = size + (size >> 1);
+            borrowers = Arrays.copyOf(borrowers, capacity);
+            lenders = Arrays.copyOf(lenders, capacity);
+            cents = Arrays.copyOf(cents, capacity);
+            days = Arrays.copyOf(days, capacity);
+        }
+        borrowers[size] = borrower;
+        lenders[size] = lender;
+        cents[size] = amount;
+        days[size] = day;
+        return size++;
+    }
+
+    /**
+     * Writes all rows, column by column.
+     *
+     * @param out the snapshot to write to.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    void writeTo(SnapshotBuffer out) throws IOException {
+        out.putInt(size);
+        out.putInts(borrowers, size);
+        out.putInts(lenders, size);
+        out.putLongs(cents, size);
+        out.putInts(days, size);
+    }
+
+    /**
+     * Sums the amounts per user pair over the rows dated on or before a given day.
+     *
+     * @param lastDay   the last epoch day to include.
+     * @param borrowers flags by user index of the borrowers to include, or null to include everyone.
+     * @param sums      the accumulator to add to.
+     */
+    public void sumByPair(int lastDay, boolean[] borrowers, PairSums sums) {
+        for (int row = 0; row < size; row++) {
+            int borrower = this.borrowers[row];
+            if (days[row] <= lastDay && (borrowers == null || borrower < borrowers.length && borrowers[borrower])) {
+                sums.add(borrower, lenders[row], cents[row]);
+            }
+        }
+    }
+
+    /**
+     * Computes the net balance of every user over the rows dated on or before a given day.
+     * A positive balance means the user is owed money.
+     *
+     * @param lastDay the last epoch day to include.
+     * @param users   the number of users, which bounds every index.
+     * @return the net balance in cents, by user index.
+     */
+    public long[] netByUser(int lastDay, int users) {
+        long[] net = new long[users];
+        for (int row = 0; row < size; row++) {
+            long amount = days[row] <= lastDay ? cents[row] : 0L;
+            net[borrowers[row]] -= amount;
+            net[lenders[row]] += amount;
+        }
+        return net;
+    }
+
+    /**
+     * Removes the rows dated strictly before a given day, compacting the remaining rows in place.
+     *
+     * @param day the first epoch day to keep.
+     * @return the number of rows removed.
+     */
+    public int removeBefore(int day) {
+        int kept = 0;
+        for (int row = 0; row < size; row++) {
+            if (days[row] >= day) {
+                borrowers[kept] = borrowers[row];
+                lenders[kept] = lenders[row];
+                cents[kept] = cents[row];
+                days[kept] = days[row];
+                kept++;
+            }
+        }
+        int removed = size - kept;
+        size = kept;
+        return removed;
+    }
+}
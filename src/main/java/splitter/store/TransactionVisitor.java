@@ -0,0 +1,18 @@
+package splitter.store;
+
+import splitter.model.User;
+
+/**
+ * Receives the transactions of a ledger scan one at a time, as primitive columns, so that a scan of any size
+ * materializes no transaction objects.
+ */
+@FunctionalInterface
+public interface TransactionVisitor {
+    /**
+     * @param borrower the borrower.
+     * @param lender   the lender.
+     * @param cents    the amount in cents.
+     * @param epochDay the date, as a day count from 1970-01-01.
+     */
+    void visit(User borrower, User lender, long cents, int epochDay);
+}
@@ -0,0 +1,61 @@
+package splitter.tenant;
+
+import java.util.Locale;
+
+/**
+ * The tenant whose ledger the current thread works on.
+ * <p>
+ * Every tenant has its own ledger: its own users, groups and transactions, kept in its own database schema.
+ * Commands run for the tenant set on their thread, and threads without a tenant work on the default ledger,
+ * which lives in the default schema, so a single-tenant setup never has to set one.
+ */
+public final class TenantContext {
+    /**
+     * The tenant of threads that have not set one.
+     */
+    public static final String DEFAULT = "default";
+    static final String DEFAULT_SCHEMA = "PUBLIC";
+    static final String TENANT_SCHEMA_PREFIX = "TENANT_";
+
+    private static final ThreadLocal<String> current = new ThreadLocal<>();
+
+    private TenantContext() {
+    }
+
+    /**
+     * Returns the tenant of the current thread.
+     *
+     * @return the tenant, {@link #DEFAULT} if none has been set.
+     */
+    public static String current() {
+        String tenant = current.get();
+        return tenant != null ? tenant : DEFAULT;
+    }
+
+    /**
+     * Sets the tenant of the current thread until {@link #clear()} is called.
+     *
+     * @param tenant the tenant, as returned by {@code TenantService.resolve}.
+     */
+    public static void set(String tenant) {
+        current.set(tenant);
+    }
+
+    /**
+     * Puts the current thread back on the default tenant.
+     */
+    public static void clear() {
+        current.remove();
+    }
+
+    /**
+     * Returns the database schema holding the tables of a tenant.
+     * Tenant names are lower case, so every tenant has a schema of its own.
+     *
+     * @param tenant the tenant.
+     * @return the schema name.
+     */
+    static String schema(String tenant) {
+        return tenant.equals(DEFAULT) ? DEFAULT_SCHEMA : TENANT_SCHEMA_PREFIX + tenant.toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,151 @@
+package splitter.tenant;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Data source routing every connection to the schema of the tenant of the current thread.
+ * <p>
+ * All tenants share the connection pool: a connection is switched to the tenant schema when it is borrowed and
+ * back to the default schema by the pool when it is returned, so thousands of tenants cost one schema each instead
+ * of one pool or one database file each. JPA and plain JDBC both get their connections here, and the entities do
+ * not name a schema, so every query runs on the tables of the current tenant.
+ * <p>
+ * The schema of a tenant is created the first time it is used, with the tables, indexes and constraints that
+ * Hibernate created in the default schema. When Hibernate recreates the default schema at startup, the schemas left
+ * by earlier runs are dropped before the first tenant is used, otherwise they are kept. Schemas known to exist are
+ * remembered until their tenant is evicted, and looked up again the next time it is used.
+ */
+public class TenantDataSource extends DelegatingDataSource {
+    private static final String QUOTED_DEFAULT_SCHEMA = "\"" + TenantContext.DEFAULT_SCHEMA + "\".";
+
+    private final boolean recreateSchemas;
+    private final Set<String> readySchemas = ConcurrentHashMap.newKeySet();
+    private List<String> schemaTemplate;
+    private boolean earlierSchemasDropped;
+
+    /**
+     * @param dataSource      the pooled data source of the default schema.
+     * @param recreateSchemas whether the tenant schemas of earlier runs are dropped before the first tenant is used.
+     */
+    public TenantDataSource(DataSource dataSource, boolean recreateSchemas) {
+        super(dataSource);
+        this.recreateSchemas = recreateSchemas;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return route(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return route(super.getConnection(username, password));
+    }
+
+    /**
+     * Forgets that the schema of a tenant exists, so that it is looked up, and created if it was dropped, the next
+     * time the tenant is used.
+     *
+     * @param tenant the evicted tenant.
+     */
+    public void forget(String tenant) {
+        readySchemas.remove(TenantContext.schema(tenant));
+    }
+
+    private Connection route(Connection connection) throws SQLException {
+        String tenant = TenantContext.current();
+        if (tenant.equals(TenantContext.DEFAULT)) {
+            return connection;
+        }
+        String schema = TenantContext.schema(tenant);
+        try {
+            if (!readySchemas.contains(schema)) {
+                createSchema(connection, schema);
+            }
+            connection.setSchema(schema);
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    private synchronized void createSchema(Connection connection, String schema) throws SQLException {
+        if (readySchemas.contains(schema)) {
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            if (recreateSchemas && !earlierSchemasDropped) {
+                for (String earlierSchema : tenantSchemas(connection)) {
+                    statement.execute("DROP SCHEMA \"" + earlierSchema + "\" CASCADE");
+                }
+                earlierSchemasDropped = true;
+            }
+            if (!schemaExists(connection, schema)) {
+                List<String> template = schemaTemplate(connection);
+                statement.execute("CREATE SCHEMA \"" + schema + "\"");
+                for (String sql : template) {
+                    statement.execute(sql.replace(QUOTED_DEFAULT_SCHEMA, "\"" + schema + "\"."));
+                }
+            }
+        }
+        readySchemas.add(schema);
+    }
+
+    private static boolean schemaExists(Connection connection, String schema) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT COUNT(*) FROM INFORMATION_SCHEMA.SCHEMATA WHERE SCHEMA_NAME = ?")) {
+            statement.setString(1, schema);
+            try (ResultSet row = statement.executeQuery()) {
+                return row.next() && row.getInt(1) > 0;
+            }
+        }
+    }
+
+    private static List<String> tenantSchemas(Connection connection) throws SQLException {
+        List<String> schemas = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT SCHEMA_NAME FROM INFORMATION_SCHEMA.SCHEMATA WHERE SCHEMA_NAME LIKE ? ESCAPE '!'")) {
+            statement.setString(1, TenantContext.TENANT_SCHEMA_PREFIX.replace("_", "!_") + "%");
+            try (ResultSet row = statement.executeQuery()) {
+                while (row.next()) {
+                    schemas.add(row.getString(1));
+                }
+            }
+        }
+        return schemas;
+    }
+
+    /**
+     * Returns the DDL of the default schema, without its rows, settings and users, and with the identity columns
+     * and sequences starting from scratch. It is read once, after Hibernate has created the default schema.
+     */
+    private List<String> schemaTemplate(Connection connection) throws SQLException {
+        if (schemaTemplate == null) {
+            List<String> template = new ArrayList<>();
+            try (Statement statement = connection.createStatement();
+                 ResultSet row = statement.executeQuery("SCRIPT NODATA NOPASSWORDS NOSETTINGS NOVERSION SCHEMA "
+                         + TenantContext.DEFAULT_SCHEMA)) {
+                while (row.next()) {
+                    String sql = row.getString(1);
+                    if (!sql.startsWith("--") && !sql.startsWith("CREATE USER")) {
+                        template.add(sql.replaceAll(" RESTART WITH \\d+", ""));
+                    }
+                }
+            }
+            schemaTemplate = template;
+        }
+        return schemaTemplate;
+    }
+}
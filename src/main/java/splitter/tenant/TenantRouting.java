@@ -0,0 +1,38 @@
+package splitter.tenant;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Wraps the data source in a {@link TenantDataSource}, so that everything using it, from the JPA repositories to
+ * the JDBC engine and the query plans, works on the ledger of the current tenant.
+ */
+@Component
+public class TenantRouting implements BeanPostProcessor, TenantStateHolder {
+    private final boolean recreateSchemas;
+    private final List<TenantDataSource> tenantDataSources = new CopyOnWriteArrayList<>();
+
+    public TenantRouting(@Value("${spring.jpa.hibernate.ddl-auto:none}") String ddlAuto) {
+        this.recreateSchemas = ddlAuto.startsWith("create");
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof DataSource dataSource) || bean instanceof TenantDataSource) {
+            return bean;
+        }
+        TenantDataSource tenantDataSource = new TenantDataSource(dataSource, recreateSchemas);
+        tenantDataSources.add(tenantDataSource);
+        return tenantDataSource;
+    }
+
+    @Override
+    public void evict(String tenant) {
+        tenantDataSources.forEach(tenantDataSource -> tenantDataSource.forget(tenant));
+    }
+}
@@ -0,0 +1,44 @@
+package splitter.tenant;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * State kept separately for every tenant, such as a cache or an index of its ledger.
+ * The state of a tenant is created the first time its thread asks for it, so tenants that are never used cost
+ * nothing, and one component serves every tenant from the same JVM. The component evicts the state of a tenant that
+ * has gone idle, and the next time that tenant asks for it, it is created again.
+ *
+ * @param <T> the type of the state.
+ */
+public final class TenantScoped<T> {
+    private final Function<String, T> factory;
+    private final Map<String, T> byTenant = new ConcurrentHashMap<>();
+
+    /**
+     * @param factory creates the state of a tenant; it runs with that tenant set on the current thread.
+     */
+    public TenantScoped(Function<String, T> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Returns the state of the tenant of the current thread, creating it if needed.
+     *
+     * @return the state.
+     */
+    public T get() {
+        return byTenant.computeIfAbsent(TenantContext.current(), factory);
+    }
+
+    /**
+     * Drops the state of a tenant, if it has any.
+     *
+     * @param tenant the tenant.
+     * @return the dropped state, or null if the tenant had none.
+     */
+    public T evict(String tenant) {
+        return byTenant.remove(tenant);
+    }
+}
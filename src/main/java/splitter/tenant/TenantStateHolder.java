@@ -0,0 +1,15 @@
+package splitter.tenant;
+
+/**
+ * A component keeping in-memory state for every tenant it has served.
+ * When a tenant goes idle, {@code TenantService} evicts its state from every holder; the tenant is entered again
+ * before it is next used, which loads whatever state it needs.
+ */
+public interface TenantStateHolder {
+    /**
+     * Drops everything kept for a tenant. No thread works on the tenant while it is evicted.
+     *
+     * @param tenant the tenant.
+     */
+    void evict(String tenant);
+}
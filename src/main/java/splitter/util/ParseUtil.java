@@ -11,10 +11,21 @@ import java.util.stream.Collectors;
 
 @Component
 public class ParseUtil {
+    // Names in parentheses, each optionally weighted (Ann:2) or given a percentage share (Ann:25%)
+    private static final String SPLIT_LIST =
+            "\\([-+]?\\w+(:\\d+(\\.\\d{1,2}%|%)?)?(,\\s*[-+]?\\w+(:\\d+(\\.\\d{1,2}%|%)?)?)*\\)";
     public static final Pattern balancePattern = Pattern.compile(
             "(\\s*\\d{4}\\.\\d{2}\\.\\d{2})?\\s*balance\\s?(open|close)?\\s*(\\([-+]?\\w+(,\\s*\\w+)*(,\\s[-+]?\\w+)*\\))?\\s*");
+    public static final Pattern balanceTopPattern = Pattern.compile(
+            "\\s+top\\s+(\\d+)\\s*$");
+    public static final Pattern balancePagePattern = Pattern.compile(
+            "\\s+page\\s+(\\d+)\\s+size\\s+(\\d+)\\s*$");
+    public static final Pattern balanceAfterPattern = Pattern.compile(
+            "\\s+after\\s+(\\w+)\\s+(\\w+)\\s+size\\s+(\\d+)\\s*$");
     public static final Pattern balancePerfectPattern = Pattern.compile(
             "(\\s*\\d{4}\\.\\d{2}\\.\\d{2})?\\s*balancePerfect\\s*(open|close)?\\s*");
+    public static final Pattern balanceReportPattern = Pattern.compile(
+            "(\\s*\\d{4}\\.\\d{2}\\.\\d{2})?\\s*balanceReport\\s?(open|close)?(\\s*\\([-+]?\\w+(,\\s*\\w+)*(,\\s[-+]?\\w+)*\\))+\\s*");
     public static final Pattern borrowPattern = Pattern.compile(
             "(\\s*\\d{4}\\.\\d{2}\\.\\d{2})?\\s*borrow+\\s+[\\w+]+\\s+[\\w+]+\\s+\\d+\\.?\\d{0,2}\\s*");
     public static final Pattern addGroupPattern = Pattern.compile(
@@ -26,15 +37,35 @@ public class ParseUtil {
     public static final Pattern showGroupPattern = Pattern.compile(
             "\\s*group\\s+show\\s+[A-Z]+\\s*");
     public static final Pattern purchasePattern = Pattern.compile(
-            "(\\s*\\d{4}\\.\\d{2}\\.\\d{2})?\\s*purchase\\s+[\\w+]+\\s+[\\w+]+\\s+\\d+(\\.\\d{2})?\\s+\\([-+]?\\w+(,\\s*\\w+)*(,\\s[-+]?\\w+)*\\)\\s*");
+            "(\\s*\\d{4}\\.\\d{2}\\.\\d{2})?\\s*purchase\\s+[\\w+]+\\s+[\\w+]+\\s+\\d+(\\.\\d{2})?\\s+" + SPLIT_LIST + "\\s*");
+    public static final Pattern recurringPattern = Pattern.compile(
+            "(\\s*\\d{4}\\.\\d{2}\\.\\d{2})?\\s*recurring\\s+[\\w+]+\\s+[\\w+]+\\s+\\d+(\\.\\d{2})?\\s+(daily|weekly|monthly|yearly)" +
+                    "(\\s+until\\s+\\d{4}\\.\\d{2}\\.\\d{2})?\\s+" + SPLIT_LIST + "\\s*");
+    public static final Pattern recurringMaterializePattern = Pattern.compile(
+            "(\\s*\\d{4}\\.\\d{2}\\.\\d{2})?\\s*recurring\\s+materialize\\s*");
     public static final Pattern repayPattern = Pattern.compile(
             "(\\s*\\d{4}\\.\\d{2}\\.\\d{2})?\\s*repay+\\s+[\\w+]+\\s+[\\w+]+\\s+\\d+\\.?\\d{0,2}\\s*");
     public static final Pattern secretSantaPattern = Pattern.compile(
-            "secretSanta\\s+[A-Z]+\\s*");
+            "(\\s*\\d{4}\\.\\d{2}\\.\\d{2})?\\s*secretSanta\\s+[A-Z]+" +
+                    "(\\s+exclude\\s+\\(\\w+-\\w+(,\\s*\\w+-\\w+)*\\))?" +
+                    "(\\s+years\\s+\\d+)?" +
+                    "(\\s+teams\\s+\\([A-Z]+(,\\s*[A-Z]+)*\\))?\\s*");
+    public static final Pattern statementPattern = Pattern.compile(
+            "\\s*statement\\s+\\w+(\\s+\\d{4}\\.\\d{2}\\.\\d{2}){0,2}\\s*");
     public static final Pattern cashBackPattern = Pattern.compile(
-            "(\\s*\\d{4}\\.\\d{2}\\.\\d{2})?\\s*cashBack\\s+[\\w+]+\\s+[\\w+]+\\s+\\d+(\\.\\d{2})?\\s+\\([-+]?\\w+(,\\s*\\w+)*(,\\s[-+]?\\w+)*\\)\\s*");
+            "(\\s*\\d{4}\\.\\d{2}\\.\\d{2})?\\s*cashBack\\s+[\\w+]+\\s+[\\w+]+\\s+\\d+(\\.\\d{2})?\\s+" + SPLIT_LIST + "\\s*");
     public static final Pattern writeOffPattern = Pattern.compile(
-            "(\\s*\\d{4}\\.\\d{2}\\.\\d{2})?\\s*writeOff\\s*");
+            "(\\s*\\d{4}\\.\\d{2}\\.\\d{2})?\\s*writeOff(\\s+compact)?\\s*");
+    public static final Pattern writeOffRestorePattern = Pattern.compile(
+            "\\s*writeOff\\s+restore\\s+\\S+\\s*");
+    public static final Pattern generatePattern = Pattern.compile(
+            "\\s*generate(\\s+(seed|users|groups|days|perDay)\\s+\\d+|\\s+groupSize\\s+\\d+-\\d+|\\s+zipf\\s+\\d+(\\.\\d+)?" +
+                    "|\\s+from\\s+\\d{4}\\.\\d{2}\\.\\d{2}|\\s+mix\\s+\\d+/\\d+/\\d+)*\\s*");
+    public static final Pattern exportPattern = Pattern.compile(
+            "(\\s*\\d{4}\\.\\d{2}\\.\\d{2})?\\s*export\\s+(transactions|balances|groups)\\s+(csv|binary)\\s+\\S+\\s*");
+    public static final Pattern tenantPattern = Pattern.compile("\\s*tenant(\\s+\\w+)?\\s*");
+    public static final Pattern tenantNamePattern = Pattern.compile("[a-z][a-z0-9_]{0,62}");
+    public static final Pattern explainPattern = Pattern.compile("\\s*explain\\s+(.+)");
     public static final Pattern groupNameWithSignPattern = Pattern.compile("[-+]?[A-Z]+");
     public static final Pattern nameWithSignPattern = Pattern.compile("[-+]?\\w+");
 
@@ -72,6 +103,21 @@ public class ParseUtil {
                 .collect(Collectors.toCollection(TreeSet::new));
     }
 
+    public static List<List<String>> retrieveAllNamesFromParentheses(String input) {
+        Pattern pattern = Pattern.compile("\\((.*?)\\)");
+        Matcher matcher = pattern.matcher(input);
+        List<List<String>> nameLists = new ArrayList<>();
+        while (matcher.find()) {
+            String[] names = matcher.group(1).split(",");
+            List<String> trimmedNames = new ArrayList<>(names.length);
+            for (String name : names) {
+                trimmedNames.add(name.trim());
+            }
+            nameLists.add(trimmedNames);
+        }
+        return nameLists;
+    }
+
     public static String formatDebts(List<Debt> debts) {
         StringJoiner result = new StringJoiner("\n");
         for (Debt debt : debts) {
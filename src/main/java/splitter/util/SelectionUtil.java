@@ -0,0 +1,54 @@
+package splitter.util;
+
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+@Component
+public class SelectionUtil {
+
+    /**
+     * Selects the first items in a given order with a bounded heap, without sorting the whole collection.
+     * Costs O(n log limit) time and O(limit) memory.
+     *
+     * @param items the items to select from.
+     * @param limit the maximum number of items to select.
+     * @param order the order of the items.
+     * @return the selected items, sorted in the given order.
+     */
+    public static <T> List<T> selectFirst(Collection<T> items, int limit, Comparator<? super T> order) {
+        return selectFirstAfter(items, null, limit, order);
+    }
+
+    /**
+     * Selects the first items that come strictly after a given key in a given order, as keyset pagination does:
+     * the next page starts after the last item of the previous one, however deep it is.
+     *
+     * @param items the items to select from.
+     * @param after the key to continue after, or null to start from the beginning.
+     * @param limit the maximum number of items to select.
+     * @param order the order of the items.
+     * @return the selected items, sorted in the given order.
+     */
+    public static <T> List<T> selectFirstAfter(Collection<T> items, T after, int limit, Comparator<? super T> order) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        // max-heap on the given order: the root is the last item kept so far
+        PriorityQueue<T> heap = new PriorityQueue<>(Math.min(limit, Math.max(items.size(), 1)), order.reversed());
+        for (T item : items) {
+            if (after != null && order.compare(item, after) <= 0) {
+                continue;
+            }
+            if (heap.size() < limit) {
+                heap.add(item);
+            } else if (order.compare(item, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(item);
+            }
+        }
+        List<T> selected = new ArrayList<>(heap);
+        selected.sort(order);
+        return selected;
+    }
+}
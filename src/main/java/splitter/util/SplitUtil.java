@@ -0,0 +1,84 @@
+package splitter.util;
+
+import org.springframework.stereotype.Component;
+
+@Component
+public class SplitUtil {
+
+    /**
+     * Splits an amount in cents proportionally to weights, exact to the cent, with the largest-remainder method:
+     * everyone gets the floor of their exact share, and the cents left over go to the largest remainders,
+     * earlier members first on ties. With equal weights, the first members get one cent more.
+     * <p>
+     * Nothing is allocated: each remainder is recomputed from the floor share with a multiplication instead of being
+     * stored, and the remainder threshold above which a member gets an extra cent is found by binary search over
+     * counting passes between the smallest and the largest remainder. That is one division per member and at most
+     * O(n log(sum of weights)) multiplications, with no sort; equal weights take two passes.
+     *
+     * The amount times the sum of the weights must fit in a long, which bounds every product computed here: a split
+     * of ten billion dollars still allows a total weight of about nine million.
+     *
+     * @param totalCents the amount to split, in cents; not negative.
+     * @param weights    the weight of each member; none negative, not all zero.
+     * @param shares     receives the share of each member, in cents; at least as long as the weights.
+     * @throws IllegalArgumentException if the weights are invalid or the amount is too large for them.
+     */
+    public static void allocate(long totalCents, long[] weights, long[] shares) throws IllegalArgumentException {
+        long totalWeight = 0;
+        for (long weight : weights) {
+            if (weight < 0 || weight > Long.MAX_VALUE - totalWeight) {
+                throw new IllegalArgumentException("Illegal command arguments");
+            }
+            totalWeight += weight;
+        }
+        if (totalWeight == 0 || totalCents < 0 || totalCents > Long.MAX_VALUE / totalWeight) {
+            throw new IllegalArgumentException("Illegal command arguments");
+        }
+
+        long leftover = totalCents;
+        long minRemainder = totalWeight;
+        long maxRemainder = 0;
+        for (int i = 0; i < weights.length; i++) {
+            long exact = totalCents * weights[i];
+            shares[i] = exact / totalWeight;
+            leftover -= shares[i];
+            long remainder = exact - shares[i] * totalWeight;
+            minRemainder = Math.min(minRemainder, remainder);
+            maxRemainder = Math.max(maxRemainder, remainder);
+        }
+        if (leftover == 0) {
+            return;
+        }
+
+        // smallest threshold such that at most `leftover` members have a larger remainder
+        long low = minRemainder - 1;
+        long high = maxRemainder;
+        while (low < high) {
+            long middle = low + (high - low) / 2;
+            if (countRemaindersAbove(totalCents, weights, totalWeight, shares, middle) <= leftover) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        // members exactly on the threshold are only known once those above it have had their cent
+        long onThreshold = leftover - countRemaindersAbove(totalCents, weights, totalWeight, shares, low);
+        for (int i = 0; i < weights.length; i++) {
+            long remainder = totalCents * weights[i] - shares[i] * totalWeight;
+            if (remainder > low || remainder == low && onThreshold-- > 0) {
+                shares[i]++;
+            }
+        }
+    }
+
+    private static int countRemaindersAbove(long totalCents, long[] weights, long totalWeight, long[] shares,
+                                            long threshold) {
+        int count = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (totalCents * weights[i] - shares[i] * totalWeight > threshold) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -1,19 +1,26 @@
 package splitter.util.model;
 
 public enum Commands {
+    EXPORT("export"),
     BALANCE_PERFECT("balancePerfect"),
+    BALANCE_REPORT("balanceReport"),
     BALANCE("balance"),
     BORROW("borrow"),
     CASH_BACK("cashBack"),
     EXIT("exit"),
+    GENERATE("generate"),
     HELP("help"),
     GROUP_ADD("group add"),
     GROUP_CREATE("group create"),
     GROUP_SHOW("group show"),
     GROUP_REMOVE("group remove"),
     PURCHASE("purchase"),
+    RECURRING("recurring"),
     REPAY("repay"),
     SECRET_SANTA("secretSanta"),
+    STATS("stats"),
+    STATEMENT("statement"),
+    TENANT("tenant"),
     WRITE_OFF("writeOff");
 
     private final String value;
@@ -0,0 +1,49 @@
+package splitter.diagnostics;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CommandTraceTest {
+
+    @Test
+    void countsTheStatementsOfCommandsThatAreNotExplained(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("commands.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(CommandEvent.class);
+            recording.start();
+
+            CommandTrace.begin("statement", false);
+            CommandTrace.recordStatement("SELECT 1");
+            CommandTrace.recordStatement("SELECT 2");
+            CommandTrace trace = CommandTrace.end(false);
+
+            recording.stop();
+            recording.dump(file);
+            assertThat(trace.getStatements()).isEmpty();
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals("splitter.Command"))
+                .toList();
+        assertThat(events).hasSize(1);
+        assertThat(events.get(0).getInt("sqlStatements")).isEqualTo(2);
+    }
+
+    @Test
+    void keepsTheStatementsOfExplainedCommands() {
+        CommandTrace.begin("balance", true);
+        CommandTrace.recordStatement("SELECT 1");
+        CommandTrace trace = CommandTrace.end(false);
+
+        assertThat(trace.getStatements()).containsExactly("SELECT 1");
+    }
+}
@@ -0,0 +1,86 @@
+package splitter.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import splitter.model.Transaction;
+import splitter.model.User;
+import splitter.store.InMemoryLedgerStore;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AnalyticsServiceTest {
+    private InMemoryLedgerStore ledgerStore;
+    private LedgerVersion ledgerVersion;
+    private AnalyticsService analyticsService;
+    private User ann;
+    private User bob;
+    private User cid;
+
+    @BeforeEach
+    void createLedger() {
+        ledgerStore = new InMemoryLedgerStore();
+        ledgerVersion = new LedgerVersion();
+        analyticsService = new AnalyticsService(ledgerStore, ledgerVersion);
+        ann = ledgerStore.saveUser(new User("Ann"));
+        bob = ledgerStore.saveUser(new User("Bob"));
+        cid = ledgerStore.saveUser(new User("Cid"));
+        ledgerStore.saveTransactions(List.of(
+                transaction(ann, bob, "10.00", LocalDate.of(2020, 1, 1)),
+                transaction(ann, bob, "2.50", LocalDate.of(2020, 1, 2)),
+                transaction(bob, cid, "4.00", LocalDate.of(2020, 1, 2)),
+                transaction(cid, ann, "1.00", LocalDate.of(2020, 2, 1))));
+    }
+
+    @Test
+    void sumsDebtsByPairUpToADate() {
+        List<String> debts = analyticsService.getDebtsForUsers(Set.of(), LocalDate.of(2020, 1, 31)).stream()
+                .map(debt -> debt.getBorrower().getName() + ">" + debt.getLender().getName() + " " + debt.getAmount())
+                .toList();
+
+        assertThat(debts).containsExactlyInAnyOrder("Ann>Bob 12.50", "Bob>Cid 4.00");
+        assertThat(analyticsService.getDebtsForUsers(Set.of(bob), LocalDate.of(2020, 1, 31)))
+                .extracting(debt -> debt.getLender().getName())
+                .containsExactly("Cid");
+    }
+
+    @Test
+    void computesNetBalances() {
+        Map<String, BigDecimal> balances = analyticsService.getNetBalances(LocalDate.of(2020, 12, 31));
+
+        assertThat(balances).containsExactly(
+                Map.entry("Ann", new BigDecimal("-11.50")),
+                Map.entry("Bob", new BigDecimal("8.50")),
+                Map.entry("Cid", new BigDecimal("3.00")));
+    }
+
+    @Test
+    void servesTheLoadedCopyUntilReloaded() {
+        analyticsService.reload();
+        ledgerStore.saveTransaction(transaction(bob, ann, "12.50", LocalDate.of(2020, 1, 3)));
+
+        LocalDate date = LocalDate.of(2020, 1, 31);
+        assertThat(analyticsService.getNetBalances(date)).containsEntry("Ann", new BigDecimal("-12.50"));
+        analyticsService.reload();
+        assertThat(analyticsService.getNetBalances(date)).doesNotContainKey("Ann");
+    }
+
+    @Test
+    void reloadsTheCopyOnceTheLedgerVersionMoves() {
+        LocalDate date = LocalDate.of(2020, 1, 31);
+        assertThat(analyticsService.getNetBalances(date)).containsEntry("Ann", new BigDecimal("-12.50"));
+        ledgerStore.saveTransaction(transaction(bob, ann, "12.50", LocalDate.of(2020, 1, 3)));
+        ledgerVersion.increment();
+
+        assertThat(analyticsService.getNetBalances(date)).doesNotContainKey("Ann");
+    }
+
+    private static Transaction transaction(User borrower, User lender, String amount, LocalDate date) {
+        return new Transaction(borrower, lender, new BigDecimal(amount), date);
+    }
+}
@@ -0,0 +1,149 @@
+package splitter.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import splitter.model.Debt;
+import splitter.model.Transaction;
+import splitter.model.User;
+import splitter.store.InMemoryLedgerStore;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BalanceIndexTest {
+    private static final LocalDate FIRST_DAY = LocalDate.of(2020, 1, 1);
+    private static final Comparator<Debt> KEY_ORDER =
+            Comparator.comparing(Debt::getBorrower).thenComparing(Debt::getLender);
+
+    private final Random random = new Random(42);
+    private InMemoryLedgerStore ledgerStore;
+    private BalanceIndex balanceIndex;
+    private List<User> users;
+
+    @BeforeEach
+    void createLedger() {
+        ledgerStore = new InMemoryLedgerStore();
+        users = new ArrayList<>();
+        for (String name : List.of("Kim", "Ann", "Zoe", "Bob", "Eve", "Cid", "Dan", "Lou", "Max", "Ivy")) {
+            users.add(ledgerStore.saveUser(new User(name)));
+        }
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            transactions.add(randomTransaction(60));
+        }
+        ledgerStore.saveTransactions(transactions);
+        balanceIndex = new BalanceIndex(ledgerStore, true);
+        balanceIndex.build();
+    }
+
+    @Test
+    void pagesAfterAKeyThroughEveryDebtInKeyOrder() {
+        for (Set<User> filter : filters()) {
+            for (int day : new int[]{0, 20, 60}) {
+                LocalDate date = FIRST_DAY.plusDays(day);
+                List<Debt> expected = sorted(balanceIndex.getDebtsForUsers(filter, date, List.of()));
+
+                List<Debt> paged = new ArrayList<>();
+                List<Debt> page = balanceIndex.getDebtPage(filter, date, List.of(), null, null, 0, 7);
+                while (!page.isEmpty()) {
+                    assertThat(page.size()).isLessThanOrEqualTo(7);
+                    paged.addAll(page);
+                    Debt last = page.get(page.size() - 1);
+                    page = balanceIndex.getDebtPage(filter, date, List.of(),
+                            new User(last.getBorrower().getName()), new User(last.getLender().getName()), 0, 7);
+                }
+
+                assertThat(paged).isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    void pagesByNumberThroughEveryDebtInKeyOrder() {
+        LocalDate date = FIRST_DAY.plusDays(45);
+        for (Set<User> filter : filters()) {
+            List<Debt> expected = sorted(balanceIndex.getDebtsForUsers(filter, date, List.of()));
+            for (int size : new int[]{1, 4, 100}) {
+                List<Debt> paged = new ArrayList<>();
+                for (long skip = 0; skip <= expected.size(); skip += size) {
+                    paged.addAll(balanceIndex.getDebtPage(filter, date, List.of(), null, null, skip, size));
+                }
+
+                assertThat(paged).isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    void pagesIncludeAccruedAmounts() {
+        LocalDate date = FIRST_DAY.plusDays(30);
+        User outsider = ledgerStore.saveUser(new User("Abe"));
+        List<Transaction> accrued = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            accrued.add(randomTransaction(30));
+        }
+        accrued.add(new Transaction(outsider, users.get(0), new BigDecimal("3.00"), date));
+
+        List<Debt> expected = sorted(balanceIndex.getDebtsForUsers(Set.of(), date, accrued));
+        List<Debt> paged = new ArrayList<>();
+        for (long skip = 0; skip <= expected.size(); skip += 5) {
+            paged.addAll(balanceIndex.getDebtPage(Set.of(), date, accrued, null, null, skip, 5));
+        }
+
+        assertThat(paged).isEqualTo(expected);
+        assertThat(paged.get(0).getBorrower()).isEqualTo(outsider);
+    }
+
+    @Test
+    void forgetsPairsWrittenOff() {
+        balanceIndex.removeBefore(FIRST_DAY.plusDays(61));
+
+        assertThat(balanceIndex.getDebtPage(Set.of(), FIRST_DAY.plusDays(90), List.of(), null, null, 0, 10))
+                .isEmpty();
+    }
+
+    @Test
+    void appliesChangesOnlyOnceTheirTransactionCommits() {
+        LocalDate date = FIRST_DAY.plusDays(90);
+        List<Debt> before = sorted(balanceIndex.getDebtsForUsers(Set.of(), date, List.of()));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            balanceIndex.removeBefore(date);
+            balanceIndex.add(new Transaction(users.get(0), users.get(1), new BigDecimal("1.00"), FIRST_DAY));
+            assertThat(sorted(balanceIndex.getDebtsForUsers(Set.of(), date, List.of()))).isEqualTo(before);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertThat(sorted(balanceIndex.getDebtsForUsers(Set.of(), date, List.of()))).isEqualTo(before);
+    }
+
+    private List<Set<User>> filters() {
+        return List.of(Set.of(), Set.of(users.get(0)), Set.of(users.get(1), users.get(3), users.get(6)));
+    }
+
+    private Transaction randomTransaction(int days) {
+        User borrower = users.get(random.nextInt(users.size()));
+        User lender = users.get(random.nextInt(users.size()));
+        while (lender.equals(borrower)) {
+            lender = users.get(random.nextInt(users.size()));
+        }
+        BigDecimal amount = BigDecimal.valueOf(1 + random.nextInt(5000), 2);
+        return new Transaction(borrower, lender, amount, FIRST_DAY.plusDays(random.nextInt(days + 1)));
+    }
+
+    private static List<Debt> sorted(List<Debt> debts) {
+        List<Debt> sorted = new ArrayList<>(debts);
+        sorted.sort(KEY_ORDER);
+        return sorted;
+    }
+}
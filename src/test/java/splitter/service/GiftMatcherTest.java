@@ -0,0 +1,141 @@
+package splitter.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GiftMatcherTest {
+
+    @Test
+    void findsAMaximumMatchingOnSmallRandomInstances() {
+        SplittableRandom instances = new SplittableRandom(42);
+        for (int instance = 0; instance < 2000; instance++) {
+            int size = 2 + instances.nextInt(6);
+            int[] colors = randomColors(size, instances);
+            long[] excludedPairs = randomExcludedPairs(size, instances);
+
+            int[] receivers = GiftMatcher.match(colors, excludedPairs, new SplittableRandom(instance));
+
+            String description = "colors " + Arrays.toString(colors) + ", excluded " + describe(excludedPairs);
+            assertValid(receivers, colors, excludedPairs, description);
+            assertThat(matched(receivers))
+                    .as(description)
+                    .isEqualTo(maximumMatching(colors, toSet(excludedPairs), 0, new boolean[size]));
+        }
+    }
+
+    @Test
+    void matchesEveryoneWhenTheRulesAllowIt() {
+        int[] colors = {0, 0, 1, 1, 2, 2, 3};
+        long[] excludedPairs = {pair(4, 6), pair(6, 4), pair(0, 2)};
+
+        for (int seed = 0; seed < 100; seed++) {
+            int[] receivers = GiftMatcher.match(colors, excludedPairs, new SplittableRandom(seed));
+
+            assertValid(receivers, colors, excludedPairs, "seed " + seed);
+            assertThat(matched(receivers)).isEqualTo(colors.length);
+        }
+    }
+
+    @Test
+    void drawsDifferentMatchingsFromDifferentSeeds() {
+        int[] colors = {0, 1, 2, 3, 4, 5};
+        Set<String> draws = new HashSet<>();
+
+        for (int seed = 0; seed < 200; seed++) {
+            draws.add(Arrays.toString(GiftMatcher.match(colors, new long[0], new SplittableRandom(seed))));
+        }
+
+        assertThat(draws).hasSizeGreaterThan(50);
+    }
+
+    @Test
+    void leavesMembersUnmatchedWhenEveryoneShareAColor() {
+        int[] receivers = GiftMatcher.match(new int[]{0, 0, 0}, new long[0], new SplittableRandom(1));
+
+        assertThat(receivers).containsOnly(-1);
+    }
+
+    private static void assertValid(int[] receivers, int[] colors, long[] excludedPairs, String description) {
+        Set<Long> excluded = toSet(excludedPairs);
+        boolean[] received = new boolean[colors.length];
+        for (int giver = 0; giver < colors.length; giver++) {
+            int receiver = receivers[giver];
+            if (receiver == -1) {
+                continue;
+            }
+            assertThat(colors[receiver]).as(description).isNotEqualTo(colors[giver]);
+            assertThat(excluded).as(description).doesNotContain(pair(giver, receiver));
+            assertThat(received[receiver]).as(description).isFalse();
+            received[receiver] = true;
+        }
+    }
+
+    /**
+     * Tries every receiver, or none, for every giver in turn.
+     */
+    private static int maximumMatching(int[] colors, Set<Long> excluded, int giver, boolean[] received) {
+        if (giver == colors.length) {
+            return 0;
+        }
+        int best = maximumMatching(colors, excluded, giver + 1, received);
+        for (int receiver = 0; receiver < colors.length; receiver++) {
+            if (!received[receiver] && colors[receiver] != colors[giver]
+                    && !excluded.contains(pair(giver, receiver))) {
+                received[receiver] = true;
+                best = Math.max(best, 1 + maximumMatching(colors, excluded, giver + 1, received));
+                received[receiver] = false;
+            }
+        }
+        return best;
+    }
+
+    private static int[] randomColors(int size, SplittableRandom random) {
+        int[] colors = new int[size];
+        int colorCount = 1 + random.nextInt(size);
+        for (int i = 0; i < size; i++) {
+            colors[i] = i < colorCount ? i : random.nextInt(colorCount);
+        }
+        return colors;
+    }
+
+    private static long[] randomExcludedPairs(int size, SplittableRandom random) {
+        int count = random.nextInt(size * size);
+        long[] excludedPairs = new long[count];
+        for (int i = 0; i < count; i++) {
+            int giver = random.nextInt(size);
+            int receiver = random.nextInt(size - 1);
+            excludedPairs[i] = pair(giver, receiver >= giver ? receiver + 1 : receiver);
+        }
+        return excludedPairs;
+    }
+
+    private static int matched(int[] receivers) {
+        return (int) Arrays.stream(receivers).filter(receiver -> receiver != -1).count();
+    }
+
+    private static Set<Long> toSet(long[] excludedPairs) {
+        Set<Long> set = new HashSet<>();
+        for (long excludedPair : excludedPairs) {
+            set.add(excludedPair);
+        }
+        return set;
+    }
+
+    private static String describe(long[] excludedPairs) {
+        StringBuilder description = new StringBuilder();
+        for (long excludedPair : excludedPairs) {
+            description.append(excludedPair >>> 32).append('>').append((int) excludedPair).append(' ');
+        }
+        return description.toString().trim();
+    }
+
+    private static long pair(int giver, int receiver) {
+        return (long) giver << 32 | receiver;
+    }
+}
@@ -0,0 +1,90 @@
+package splitter.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import splitter.model.Debt;
+import splitter.model.Group;
+import splitter.model.Transaction;
+import splitter.model.User;
+import splitter.store.LedgerStore;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:version",
+        "splitter.ledger.engine=jpa",
+        "splitter.balance-index.enabled=false"
+})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class LedgerVersionTest {
+    private static final LocalDate JAN_1 = LocalDate.of(2020, 1, 1);
+    private static final LocalDate FEB_1 = LocalDate.of(2020, 2, 1);
+
+    @Autowired
+    private LedgerVersion ledgerVersion;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private GroupService groupService;
+
+    @Autowired
+    private LedgerStore ledgerStore;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void bumpsTheVersionOnlyOnceTheWriteCommits() {
+        User ann = ledgerStore.saveUser(new User("Ann"));
+        Group team = groupService.getOrCreateGroupByName("TEAM");
+        long before = ledgerVersion.current();
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            groupService.addUsersToGroup(team, Set.of(ann));
+            assertThat(ledgerVersion.current()).isEqualTo(before);
+        });
+
+        assertThat(ledgerVersion.current()).isEqualTo(before + 1);
+    }
+
+    @Test
+    void keepsTheVersionWhenTheWriteRollsBack() {
+        long before = ledgerVersion.current();
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            groupService.deleteByName("TEAM");
+            status.setRollbackOnly();
+        });
+
+        assertThat(ledgerVersion.current()).isEqualTo(before);
+    }
+
+    @Test
+    void doesNotCacheBalancesReadBeforeAWriteCommits() {
+        User ann = ledgerStore.saveUser(new User("Ann"));
+        User bob = ledgerStore.saveUser(new User("Bob"));
+        transactionService.createTransaction(new Transaction(ann, bob, new BigDecimal("10.00"), JAN_1));
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            transactionService.deleteTransactionsBeforeDate(FEB_1);
+            // read through the transaction's own uncommitted delete
+            assertThat(transactionService.getDebtsForUsers(Set.of(ann), FEB_1)).isEmpty();
+            status.setRollbackOnly();
+        });
+
+        assertThat(ledgerStore.findTransactionsUpTo(FEB_1)).hasSize(1);
+        assertThat(transactionService.getDebtsForUsers(Set.of(ann), FEB_1))
+                .extracting(Debt::getAmount)
+                .containsExactly(new BigDecimal("10.00"));
+    }
+}
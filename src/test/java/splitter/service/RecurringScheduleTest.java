@@ -0,0 +1,90 @@
+package splitter.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import splitter.model.RecurrencePeriod;
+import splitter.model.RecurringTransaction;
+import splitter.model.Transaction;
+import splitter.model.User;
+import splitter.store.LedgerStore;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:recurring",
+        "splitter.ledger.engine=jpa"
+})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class RecurringScheduleTest {
+    private static final LocalDate JAN_1 = LocalDate.of(2020, 1, 1);
+    private static final LocalDate APR_1 = LocalDate.of(2020, 4, 1);
+
+    @Autowired
+    private RecurringSchedule recurringSchedule;
+
+    @Autowired
+    private LedgerStore ledgerStore;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+    private User ann;
+    private User bob;
+
+    @BeforeEach
+    void createUsers() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        ann = ledgerStore.saveUser(new User("Ann"));
+        bob = ledgerStore.saveUser(new User("Bob"));
+    }
+
+    @Test
+    void countsADefinitionOnlyOnceItIsCommitted() {
+        transactionTemplate.executeWithoutResult(status -> {
+            recurringSchedule.add(rent());
+            assertThat(recurringSchedule.getAccruedTransactions(APR_1, Set.of())).isEmpty();
+            status.setRollbackOnly();
+        });
+
+        assertThat(recurringSchedule.getAccruedTransactions(APR_1, Set.of())).isEmpty();
+        assertThat(ledgerStore.findRecurringTransactions()).isEmpty();
+
+        transactionTemplate.executeWithoutResult(status -> recurringSchedule.add(rent()));
+
+        assertThat(recurringSchedule.getAccruedTransactions(APR_1, Set.of()))
+                .extracting(Transaction::getAmount)
+                .containsExactly(new BigDecimal("400.00"));
+    }
+
+    @Test
+    void keepsOccurrencesPendingWhenMarkingThemRollsBack() {
+        transactionTemplate.executeWithoutResult(status -> recurringSchedule.add(rent()));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            recurringSchedule.markMaterializedUntil(APR_1);
+            status.setRollbackOnly();
+        });
+
+        assertThat(recurringSchedule.getPendingOccurrences(APR_1)).hasSize(4);
+        assertThat(ledgerStore.findRecurringTransactions().get(0).getMaterializedUntil()).isNull();
+
+        transactionTemplate.executeWithoutResult(status -> recurringSchedule.markMaterializedUntil(APR_1));
+
+        assertThat(recurringSchedule.getPendingOccurrences(APR_1)).isEmpty();
+        assertThat(ledgerStore.findRecurringTransactions().get(0).getMaterializedUntil()).isEqualTo(APR_1);
+    }
+
+    private RecurringTransaction rent() {
+        return new RecurringTransaction(ann, bob, new BigDecimal("100.00"), RecurrencePeriod.MONTHLY, JAN_1, null);
+    }
+}
@@ -0,0 +1,94 @@
+package splitter.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import splitter.model.Debt;
+import splitter.model.Transaction;
+import splitter.model.User;
+import splitter.store.LedgerStore;
+import splitter.tenant.TenantContext;
+import splitter.tenant.TenantStateHolder;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:tenants",
+        "splitter.ledger.engine=jdbc",
+        "splitter.tenants.idle-timeout-seconds=60"
+})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class TenantServiceTest {
+    private static final LocalDate JAN_1 = LocalDate.of(2020, 1, 1);
+    private static final long IDLE = TimeUnit.SECONDS.toNanos(61);
+
+    @Autowired
+    private TenantService tenantService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private LedgerVersion ledgerVersion;
+
+    @Autowired
+    private LedgerStore ledgerStore;
+
+    @Autowired
+    private List<TenantStateHolder> stateHolders;
+
+    @AfterEach
+    void leaveTenant() {
+        tenantService.leave();
+    }
+
+    @Test
+    void reloadsAnEvictedTenantWhenItIsEnteredAgain() {
+        tenantService.enter("acme");
+        User ann = ledgerStore.saveUser(new User("Ann"));
+        User bob = ledgerStore.saveUser(new User("Bob"));
+        transactionService.createTransaction(new Transaction(ann, bob, new BigDecimal("10.00"), JAN_1));
+        long version = ledgerVersion.current();
+        tenantService.leave();
+
+        assertThat(tenantService.evictIdleTenants(System.nanoTime() + IDLE)).containsExactly("acme");
+
+        // stored behind the back of the balance index, which only sees it if it is loaded again
+        TenantContext.set("acme");
+        ledgerStore.saveTransaction(new Transaction(ann, bob, new BigDecimal("5.00"), JAN_1));
+        TenantContext.clear();
+
+        tenantService.enter("acme");
+        assertThat(transactionService.getDebtsForUsers(Set.of(), JAN_1))
+                .extracting(Debt::getAmount)
+                .containsExactly(new BigDecimal("15.00"));
+        assertThat(ledgerVersion.current()).isGreaterThanOrEqualTo(version);
+    }
+
+    @Test
+    void evictsTheUsersCachedByTheJdbcStore() {
+        assertThat(ledgerStore).isInstanceOf(TenantStateHolder.class);
+        assertThat(stateHolders).contains((TenantStateHolder) ledgerStore);
+    }
+
+    @Test
+    void keepsTenantsThatAThreadIsIn() {
+        tenantService.enter("acme");
+        tenantService.enter(TenantContext.DEFAULT);
+        tenantService.enter("busy");
+
+        assertThat(tenantService.evictIdleTenants(System.nanoTime() + IDLE)).containsExactly("acme");
+
+        tenantService.leave();
+        assertThat(tenantService.evictIdleTenants(System.nanoTime())).isEmpty();
+        assertThat(tenantService.evictIdleTenants(System.nanoTime() + IDLE)).containsExactly("busy");
+    }
+}
@@ -0,0 +1,83 @@
+package splitter.store;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import splitter.model.Gift;
+import splitter.model.RecurrencePeriod;
+import splitter.model.RecurringTransaction;
+import splitter.model.Transaction;
+import splitter.model.User;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InMemoryLedgerStoreTest extends LedgerStoreContractTest {
+    private static final LocalDate JAN_1 = LocalDate.of(2020, 1, 1);
+
+    @TempDir
+    Path directory;
+
+    private InMemoryLedgerStore store;
+
+    @BeforeEach
+    void createStore() {
+        store = new InMemoryLedgerStore();
+    }
+
+    @Override
+    protected LedgerStore store() {
+        return store;
+    }
+
+    @Test
+    void restoresRecurringTransactionsAndGiftsFromASnapshot() throws IOException {
+        User ann = store.saveUser(new User("Ann"));
+        User bob = store.saveUser(new User("Bob"));
+        store.saveTransaction(new Transaction(ann, bob, new BigDecimal("10.00"), JAN_1));
+        store.saveRecurringTransaction(new RecurringTransaction(ann, bob, new BigDecimal("2.50"),
+                RecurrencePeriod.MONTHLY, JAN_1, null));
+        Gift gift = new Gift();
+        gift.setGiver(ann);
+        gift.setReceiver(bob);
+        gift.setYear(2020);
+        store.saveGift(gift);
+        Path snapshot = directory.resolve("ledger.snapshot");
+        store.writeSnapshot(snapshot, 42);
+
+        InMemoryLedgerStore restored = new InMemoryLedgerStore();
+        assertThat(restored.readSnapshot(snapshot)).isEqualTo(42);
+
+        assertThat(restored.findTransactionsUpTo(JAN_1))
+                .extracting(transaction -> transaction.getBorrower().getName() + " " + transaction.getAmount())
+                .containsExactly("Ann 10.00");
+        assertThat(restored.findRecurringTransactions())
+                .extracting(recurring -> recurring.getLender().getName() + " " + recurring.getAmount())
+                .containsExactly("Bob 2.50");
+        assertThat(restored.findGiftsFrom(2020))
+                .extracting(given -> given.getGiver().getName() + ">" + given.getReceiver().getName())
+                .containsExactly("Ann>Bob");
+    }
+
+    @Test
+    void rejectsFilesThatAreNotSnapshotsOfThisFormat() throws IOException {
+        Path snapshot = directory.resolve("ledger.snapshot");
+        store.writeSnapshot(snapshot, 0);
+        byte[] bytes = Files.readAllBytes(snapshot);
+        // the magic of the layout that counted gifts without storing them
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putLong(0, 0x534e4150534c4732L);
+        Files.write(snapshot, bytes);
+
+        assertThatThrownBy(() -> new InMemoryLedgerStore().readSnapshot(snapshot))
+                .isInstanceOf(IOException.class)
+                .hasMessageStartingWith("Not a ledger snapshot");
+    }
+}
@@ -0,0 +1,98 @@
+package splitter.store;
+
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import splitter.model.Transaction;
+import splitter.model.User;
+import splitter.repository.*;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@TestPropertySource(properties = "splitter.ledger.engine=jdbc")
+class JdbcLedgerStoreTest extends SpringLedgerStoreContractTest {
+    private static final LocalDate FIRST_DAY = LocalDate.of(2020, 1, 1);
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private GroupRepository groupRepository;
+
+    @Autowired
+    private UserGroupRepository userGroupRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private GiftRepository giftRepository;
+
+    @Autowired
+    private RecurringTransactionRepository recurringTransactionRepository;
+
+    @Autowired
+    private PrometheusMeterRegistry meterRegistry;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    void sumsAndVisitsTransactionsLikeTheJpaQueries() {
+        LedgerStore jpa = new JpaLedgerStore(userRepository, groupRepository, userGroupRepository,
+                transactionRepository, giftRepository, recurringTransactionRepository, meterRegistry, 100, dataSource);
+        Random random = new Random(7);
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            users.add(store().saveUser(new User("User" + i)));
+        }
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            User borrower = users.get(random.nextInt(users.size()));
+            User lender = users.get((users.indexOf(borrower) + 1 + random.nextInt(users.size() - 1)) % users.size());
+            transactions.add(new Transaction(borrower, lender, BigDecimal.valueOf(1 + random.nextInt(100_000), 2),
+                    FIRST_DAY.plusDays(random.nextInt(90))));
+        }
+        store().saveTransactions(transactions.subList(0, 200));
+        store().saveTransaction(transactions.get(200));
+        store().saveTransactions(transactions.subList(201, transactions.size()));
+
+        List<LocalDate> dates = List.of(FIRST_DAY.minusDays(1), FIRST_DAY, FIRST_DAY.plusDays(45),
+                FIRST_DAY.plusDays(89));
+        List<Set<User>> filters = List.of(Set.of(), Set.of(users.get(0)), Set.of(users.get(3), users.get(7)));
+        for (LocalDate date : dates) {
+            for (Set<User> borrowers : filters) {
+                assertThat(inTransaction(() -> describe(store().sumTransactionsUpTo(date, borrowers))))
+                        .as("sums up to %s for %s", date, borrowers)
+                        .containsExactlyInAnyOrderElementsOf(
+                                inTransaction(() -> describe(jpa.sumTransactionsUpTo(date, borrowers))));
+            }
+        }
+        assertThat(inTransaction(() -> visit(store())))
+                .hasSize(transactions.size())
+                .containsExactlyElementsOf(inTransaction(() -> visit(jpa)));
+    }
+
+    private static List<String> visit(LedgerStore store) {
+        List<String> visited = new ArrayList<>();
+        store.forEachTransaction((borrower, lender, cents, epochDay) ->
+                visited.add(borrower.getId() + ">" + lender.getId() + " " + cents + " " + epochDay));
+        return visited;
+    }
+
+    private static List<String> describe(List<Transaction> sums) {
+        return sums.stream()
+                .map(sum -> sum.getBorrower().getId() + ">" + sum.getLender().getId() + " "
+                        + sum.getAmount().toPlainString() + " " + sum.getDate())
+                .toList();
+    }
+}
@@ -0,0 +1,63 @@
+package splitter.store;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import splitter.model.Transaction;
+import splitter.model.User;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JournalLedgerStoreTest extends LedgerStoreContractTest {
+    @TempDir
+    Path directory;
+
+    private JournalLedgerStore store;
+
+    @BeforeEach
+    void openStore() throws IOException {
+        store = open();
+    }
+
+    @AfterEach
+    void closeStore() throws IOException {
+        store.close();
+    }
+
+    @Override
+    protected LedgerStore store() {
+        return store;
+    }
+
+    @Test
+    void restoresTheLedgerWhenReopened() throws IOException {
+        User ann = store.saveUser(new User("Ann"));
+        User bob = store.saveUser(new User("Bob"));
+        store.saveTransactions(List.of(
+                new Transaction(ann, bob, new BigDecimal("10.00"), LocalDate.of(2020, 1, 1)),
+                new Transaction(bob, ann, new BigDecimal("4.00"), LocalDate.of(2020, 2, 1))));
+        store.deleteTransactionsBefore(LocalDate.of(2020, 1, 15));
+
+        store.close();
+        store = open();
+
+        assertThat(store.findUserByName("Ann")).contains(ann);
+        assertThat(store.findTransactionsUpTo(LocalDate.of(2020, 12, 31)))
+                .extracting(transaction -> transaction.getBorrower().getName() + " " + transaction.getAmount())
+                .containsExactly("Bob 4.00");
+    }
+
+    private JournalLedgerStore open() throws IOException {
+        JournalLedgerStore journal =
+                new JournalLedgerStore(directory.resolve("ledger.journal").toString(), 1, false, 1000);
+        journal.open();
+        return journal;
+    }
+}
@@ -0,0 +1,267 @@
+package splitter.store;
+
+import org.junit.jupiter.api.Test;
+import splitter.model.Gift;
+import splitter.model.Group;
+import splitter.model.RecurrencePeriod;
+import splitter.model.RecurringTransaction;
+import splitter.model.Transaction;
+import splitter.model.User;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Behaviour every {@link LedgerStore} engine must have, run once per engine by its subclasses.
+ * Each test starts from an empty ledger.
+ */
+abstract class LedgerStoreContractTest {
+    private static final LocalDate JAN_1 = LocalDate.of(2020, 1, 1);
+    private static final LocalDate JAN_15 = LocalDate.of(2020, 1, 15);
+    private static final LocalDate FEB_1 = LocalDate.of(2020, 2, 1);
+    private static final LocalDate MAR_1 = LocalDate.of(2020, 3, 1);
+
+    /**
+     * Returns the engine under test, holding an empty ledger.
+     *
+     * @return the store.
+     */
+    protected abstract LedgerStore store();
+
+    /**
+     * Runs reads that the engine only serves inside a transaction, such as the streams of the jpa engine.
+     *
+     * @param work the reads.
+     * @param <T>  the type of the result.
+     * @return the result of the reads.
+     */
+    protected <T> T inTransaction(Supplier<T> work) {
+        return work.get();
+    }
+
+    @Test
+    void savesAndFindsUsersByName() {
+        User ann = user("Ann");
+
+        assertThat(ann.getId()).isNotNull();
+        assertThat(store().findUserByName("Ann")).contains(ann);
+        assertThat(store().findUserByName("Bob")).isEmpty();
+    }
+
+    @Test
+    void savesGroupsAndTheirMembers() {
+        User ann = user("Ann");
+        User bob = user("Bob");
+        User cid = user("Cid");
+        Group team = store().saveGroup(new Group("TEAM"));
+        store().saveGroup(new Group("CLUB"));
+
+        assertThat(store().groupExists("TEAM")).isTrue();
+        assertThat(store().groupExists("NONE")).isFalse();
+        assertThat(store().findGroupByName("TEAM")).map(Group::getName).contains("TEAM");
+        assertThat(store().findGroups()).extracting(Group::getName).containsExactly("CLUB", "TEAM");
+
+        assertThat(store().addUsersToGroup(team, Set.of(ann, bob, cid))).isEqualTo(3);
+        assertThat(store().findUsersByGroupName("TEAM")).containsExactlyInAnyOrder(ann, bob, cid);
+        assertThat(store().removeUsersFromGroup(team, Set.of(bob))).isEqualTo(1);
+        assertThat(store().findUsers(store().findGroupByName("TEAM").orElseThrow()))
+                .containsExactlyInAnyOrder(ann, cid);
+
+        store().deleteGroupsByName("TEAM");
+        assertThat(store().groupExists("TEAM")).isFalse();
+        assertThat(store().findGroups()).extracting(Group::getName).containsExactly("CLUB");
+    }
+
+    @Test
+    void findsTransactionsAsOfADate() {
+        User ann = user("Ann");
+        User bob = user("Bob");
+        store().saveTransaction(transaction(ann, bob, "10.00", JAN_1));
+        store().saveTransactions(List.of(
+                transaction(bob, ann, "2.50", JAN_15),
+                transaction(ann, bob, "7.25", FEB_1)));
+
+        assertThat(describe(store().findTransactionsUpTo(JAN_15)))
+                .containsExactlyInAnyOrder("Ann>Bob 10.00 2020-01-01", "Bob>Ann 2.50 2020-01-15");
+        assertThat(describe(store().findTransactionsUpTo(JAN_1.minusDays(1)))).isEmpty();
+        assertThat(store().findTransactionsUpTo(MAR_1)).hasSize(3);
+    }
+
+    @Test
+    void filtersTransactionsByBorrower() {
+        User ann = user("Ann");
+        User bob = user("Bob");
+        User cid = user("Cid");
+        store().saveTransactions(List.of(
+                transaction(ann, bob, "10.00", JAN_1),
+                transaction(bob, cid, "4.00", JAN_1),
+                transaction(cid, ann, "1.00", JAN_15),
+                transaction(ann, cid, "3.00", FEB_1)));
+
+        assertThat(describe(store().findTransactionsUpToForBorrowers(JAN_15, Set.of(ann, cid))))
+                .containsExactlyInAnyOrder("Ann>Bob 10.00 2020-01-01", "Cid>Ann 1.00 2020-01-15");
+        assertThat(describe(store().findTransactionsUpToForBorrowers(MAR_1, Set.of(bob))))
+                .containsExactly("Bob>Cid 4.00 2020-01-01");
+    }
+
+    @Test
+    void sumsTransactionsByBorrowerAndLender() {
+        User ann = user("Ann");
+        User bob = user("Bob");
+        User cid = user("Cid");
+        store().saveTransactions(List.of(
+                transaction(ann, bob, "10.00", JAN_1),
+                transaction(ann, bob, "5.50", JAN_15),
+                transaction(bob, ann, "3.00", JAN_15),
+                transaction(cid, bob, "1.00", JAN_15),
+                transaction(ann, bob, "100.00", FEB_1)));
+
+        assertThat(describe(store().sumTransactionsUpTo(JAN_15, Set.of()))).containsExactlyInAnyOrder(
+                "Ann>Bob 15.50 2020-01-15", "Bob>Ann 3.00 2020-01-15", "Cid>Bob 1.00 2020-01-15");
+        assertThat(describe(store().sumTransactionsUpTo(JAN_15, Set.of(ann, cid)))).containsExactlyInAnyOrder(
+                "Ann>Bob 15.50 2020-01-15", "Cid>Bob 1.00 2020-01-15");
+    }
+
+    @Test
+    void writesOffTransactionsBeforeADate() {
+        User ann = user("Ann");
+        User bob = user("Bob");
+        store().saveTransactions(List.of(
+                transaction(ann, bob, "10.00", JAN_1),
+                transaction(bob, ann, "2.00", JAN_15),
+                transaction(ann, bob, "7.00", FEB_1)));
+
+        assertThat(store().deleteTransactionsBefore(FEB_1)).isEqualTo(2);
+        assertThat(describe(store().findTransactionsUpTo(MAR_1))).containsExactly("Ann>Bob 7.00 2020-02-01");
+        assertThat(store().deleteTransactionsBefore(FEB_1)).isZero();
+    }
+
+    @Test
+    void replacesTransactionsBeforeADate() {
+        User ann = user("Ann");
+        User bob = user("Bob");
+        store().saveTransactions(List.of(
+                transaction(ann, bob, "10.00", JAN_1),
+                transaction(bob, ann, "2.00", JAN_15),
+                transaction(ann, bob, "7.00", FEB_1)));
+
+        int replaced = store().replaceTransactionsBefore(FEB_1,
+                List.of(transaction(ann, bob, "8.00", FEB_1.minusDays(1))));
+
+        assertThat(replaced).isEqualTo(2);
+        assertThat(describe(store().findTransactionsUpTo(MAR_1)))
+                .containsExactlyInAnyOrder("Ann>Bob 8.00 2020-01-31", "Ann>Bob 7.00 2020-02-01");
+    }
+
+    @Test
+    void streamsTransactionsOfOneUserInDateOrder() {
+        User ann = user("Ann");
+        User bob = user("Bob");
+        User cid = user("Cid");
+        store().saveTransactions(List.of(
+                transaction(ann, bob, "3.00", FEB_1),
+                transaction(ann, cid, "1.00", JAN_1),
+                transaction(bob, ann, "4.00", JAN_15),
+                transaction(ann, bob, "2.00", JAN_15),
+                transaction(ann, bob, "9.00", MAR_1)));
+
+        List<String> borrowed = inTransaction(() -> {
+            try (Stream<Transaction> stream = store().streamTransactionsOfBorrower(ann, JAN_1, FEB_1)) {
+                return describe(stream.toList());
+            }
+        });
+        List<String> lent = inTransaction(() -> {
+            try (Stream<Transaction> stream = store().streamTransactionsOfLender(bob, JAN_15, MAR_1)) {
+                return describe(stream.toList());
+            }
+        });
+
+        assertThat(borrowed).containsExactly(
+                "Ann>Cid 1.00 2020-01-01", "Ann>Bob 2.00 2020-01-15", "Ann>Bob 3.00 2020-02-01");
+        assertThat(lent).containsExactly(
+                "Ann>Bob 2.00 2020-01-15", "Ann>Bob 3.00 2020-02-01", "Ann>Bob 9.00 2020-03-01");
+    }
+
+    @Test
+    void visitsTransactionsInInsertionOrder() {
+        User ann = user("Ann");
+        User bob = user("Bob");
+        store().saveTransaction(transaction(ann, bob, "3.10", FEB_1));
+        store().saveTransactions(List.of(
+                transaction(bob, ann, "0.05", JAN_1),
+                transaction(ann, bob, "12.00", JAN_15)));
+
+        List<String> visited = new ArrayList<>();
+        store().forEachTransaction((borrower, lender, cents, epochDay) -> visited.add(
+                borrower.getName() + ">" + lender.getName() + " " + cents + " " + LocalDate.ofEpochDay(epochDay)));
+
+        assertThat(visited).containsExactly(
+                "Ann>Bob 310 2020-02-01", "Bob>Ann 5 2020-01-01", "Ann>Bob 1200 2020-01-15");
+    }
+
+    @Test
+    void savesRecurringTransactionsInCreationOrder() {
+        User ann = user("Ann");
+        User bob = user("Bob");
+        RecurringTransaction rent = store().saveRecurringTransaction(new RecurringTransaction(ann, bob,
+                new BigDecimal("500.00"), RecurrencePeriod.MONTHLY, JAN_1, null));
+        store().saveRecurringTransaction(new RecurringTransaction(bob, ann,
+                new BigDecimal("20.00"), RecurrencePeriod.WEEKLY, JAN_15, MAR_1));
+
+        rent.setMaterializedUntil(FEB_1);
+        store().saveRecurringTransaction(rent);
+
+        List<RecurringTransaction> found = store().findRecurringTransactions();
+        assertThat(found).extracting(RecurringTransaction::getAmount)
+                .containsExactly(new BigDecimal("500.00"), new BigDecimal("20.00"));
+        assertThat(found.get(0).getId()).isEqualTo(rent.getId());
+        assertThat(found.get(0).getMaterializedUntil()).isEqualTo(FEB_1);
+        assertThat(found.get(1).getMaterializedUntil()).isNull();
+    }
+
+    @Test
+    void savesAndFindsGiftsByYear() {
+        User ann = user("Ann");
+        User bob = user("Bob");
+        User cid = user("Cid");
+        store().saveGift(gift(ann, bob, 2019));
+        store().saveGifts(List.of(gift(bob, cid, 2020), gift(cid, ann, 2020)));
+
+        assertThat(store().findGiftsFrom(2020))
+                .extracting(gift -> gift.getGiver().getName() + ">" + gift.getReceiver().getName()
+                        + " " + gift.getYear())
+                .containsExactlyInAnyOrder("Bob>Cid 2020", "Cid>Ann 2020");
+        assertThat(store().findGiftsFrom(2019)).hasSize(3);
+        assertThat(store().findGiftsFrom(2021)).isEmpty();
+    }
+
+    private User user(String name) {
+        return store().saveUser(new User(name));
+    }
+
+    private static Transaction transaction(User borrower, User lender, String amount, LocalDate date) {
+        return new Transaction(borrower, lender, new BigDecimal(amount), date);
+    }
+
+    private static Gift gift(User giver, User receiver, int year) {
+        Gift gift = new Gift();
+        gift.setGiver(giver);
+        gift.setReceiver(receiver);
+        gift.setYear(year);
+        return gift;
+    }
+
+    private static List<String> describe(List<Transaction> transactions) {
+        return transactions.stream()
+                .map(transaction -> transaction.getBorrower().getName() + ">" + transaction.getLender().getName()
+                        + " " + transaction.getAmount().toPlainString() + " " + transaction.getDate())
+                .toList();
+    }
+}
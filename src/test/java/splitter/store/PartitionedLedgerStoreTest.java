@@ -0,0 +1,7 @@
+package splitter.store;
+
+import org.springframework.test.context.TestPropertySource;
+
+@TestPropertySource(properties = "splitter.ledger.engine=partitioned")
+class PartitionedLedgerStoreTest extends SpringLedgerStoreContractTest {
+}
@@ -0,0 +1,36 @@
+package splitter.store;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.function.Supplier;
+
+/**
+ * Runs the contract against an engine of the application context, on an in-memory database that is dropped
+ * after every test.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:contract",
+        "splitter.partitions.url=jdbc:h2:mem:contract-partition-{partition}"
+})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+abstract class SpringLedgerStoreContractTest extends LedgerStoreContractTest {
+    @Autowired
+    private LedgerStore store;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Override
+    protected LedgerStore store() {
+        return store;
+    }
+
+    @Override
+    protected <T> T inTransaction(Supplier<T> work) {
+        return new TransactionTemplate(transactionManager).execute(status -> work.get());
+    }
+}
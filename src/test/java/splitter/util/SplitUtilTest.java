@@ -0,0 +1,113 @@
+package splitter.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SplitUtilTest {
+
+    @Test
+    void splitsExactlyLikeTheLargestRemainderMethod() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int instance = 0; instance < 5000; instance++) {
+            long[] weights = new long[1 + random.nextInt(12)];
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = random.nextInt(4) == 0 ? random.nextInt(3) : 1 + random.nextLong(1_000_000);
+            }
+            if (Arrays.stream(weights).sum() == 0) {
+                weights[0] = 1;
+            }
+            long totalCents = random.nextInt(3) == 0 ? random.nextInt(100) : random.nextLong(1_000_000_000_000L);
+
+            long[] shares = new long[weights.length];
+            SplitUtil.allocate(totalCents, weights, shares);
+
+            assertThat(shares)
+                    .as("%d cents by %s", totalCents, Arrays.toString(weights))
+                    .containsExactly(largestRemainder(totalCents, weights));
+        }
+    }
+
+    @Test
+    void givesTiedCentsToEarlierMembers() {
+        long[] shares = new long[4];
+
+        SplitUtil.allocate(10_00 + 2, new long[]{1, 1, 1, 1}, shares);
+        assertThat(shares).containsExactly(251, 251, 250, 250);
+
+        SplitUtil.allocate(1_01, new long[]{1, 2, 1, 0}, shares);
+        assertThat(shares).containsExactly(25, 51, 25, 0);
+
+        SplitUtil.allocate(1_02, new long[]{1, 2, 1, 3}, shares);
+        assertThat(shares).containsExactly(15, 29, 14, 44);
+    }
+
+    @Test
+    void splitsTheLargestAmountThatFitsItsWeights() {
+        long[] weights = {3, 1, 1};
+        long totalCents = Long.MAX_VALUE / 5;
+        long[] shares = new long[weights.length];
+
+        SplitUtil.allocate(totalCents, weights, shares);
+
+        assertThat(shares).containsExactly(largestRemainder(totalCents, weights));
+        assertThat(Arrays.stream(shares).sum()).isEqualTo(totalCents);
+    }
+
+    @Test
+    void rejectsAmountsAndWeightsThatOverflow() {
+        long[] shares = new long[2];
+
+        assertThatThrownBy(() -> SplitUtil.allocate(Long.MAX_VALUE / 5 + 1, new long[]{4, 1}, shares))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SplitUtil.allocate(100_000_000, new long[]{99_999_999_999_999L, 1}, shares))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SplitUtil.allocate(1, new long[]{Long.MAX_VALUE, 1}, shares))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsInvalidWeightsAndAmounts() {
+        long[] shares = new long[2];
+
+        assertThatThrownBy(() -> SplitUtil.allocate(100, new long[]{0, 0}, shares))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SplitUtil.allocate(100, new long[]{2, -1}, shares))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SplitUtil.allocate(-100, new long[]{1, 1}, shares))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * Floors every exact share, then hands the cents left over to the largest remainders, earlier members first.
+     */
+    private static long[] largestRemainder(long totalCents, long[] weights) {
+        BigInteger totalWeight = BigInteger.valueOf(Arrays.stream(weights).sum());
+        long[] shares = new long[weights.length];
+        BigInteger[] remainders = new BigInteger[weights.length];
+        long leftover = totalCents;
+        for (int i = 0; i < weights.length; i++) {
+            BigInteger[] division = BigInteger.valueOf(totalCents).multiply(BigInteger.valueOf(weights[i]))
+                    .divideAndRemainder(totalWeight);
+            shares[i] = division[0].longValueExact();
+            remainders[i] = division[1];
+            leftover -= shares[i];
+        }
+        for (; leftover > 0; leftover--) {
+            int largest = 0;
+            for (int i = 1; i < weights.length; i++) {
+                if (remainders[i].compareTo(remainders[largest]) > 0) {
+                    largest = i;
+                }
+            }
+            shares[largest]++;
+            remainders[largest] = BigInteger.ONE.negate();
+        }
+        return shares;
+    }
+}